@@ -0,0 +1,231 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Minimal JMH-style benchmark runner with no dependencies
+ * Each benchmark runs warm-up iterations, then timed iterations that report
+ * throughput, latency percentiles and bytes allocated per call. Throughput
+ * and allocation come from a tight loop with no per-call timers. Latency is
+ * measured in a separate pass that times every call into a LatencyHistogram.
+ *
+ * Like JMH, every benchmark runs in a freshly forked JVM by default: in a
+ * shared JVM the harness's op.run() call site turns megamorphic after the
+ * first benchmark, and every later benchmark pays for a virtual call the
+ * first one did not.
+ *
+ * Options: -w warm-up seconds, -m measurement seconds per iteration,
+ * -i iterations, -f forks (0 runs everything in this JVM); any other
+ * argument is a substring filter on benchmark names.
+ */
+public class BenchHarness {
+
+    /**
+     * One benchmark operation; return something derived from the result so
+     * the JIT cannot discard the call
+     */
+    public interface Op {
+        long run() throws Exception;
+    }
+
+    private static final int CHECK_INTERVAL = 64;
+
+    private final Class<?> mainClass;
+    private final double warmupSeconds;
+    private final double measureSeconds;
+    private final int iterations;
+    private final int forks;
+    private final List<String> filters;
+    // Set in a forked JVM: the one benchmark it should run
+    private final String childBenchmark;
+
+    // Results are folded into this field so they are never dead code
+    private volatile long sink;
+
+    public BenchHarness(Class<?> mainClass, double warmupSeconds, double measureSeconds,
+                        int iterations, int forks, List<String> filters, String childBenchmark) {
+        this.mainClass = mainClass;
+        this.warmupSeconds = warmupSeconds;
+        this.measureSeconds = measureSeconds;
+        this.iterations = iterations;
+        this.forks = forks;
+        this.filters = filters;
+        this.childBenchmark = childBenchmark;
+    }
+
+    /**
+     * @param mainClass the benchmark's main class, re-launched for each fork
+     */
+    public static BenchHarness fromArgs(Class<?> mainClass, String[] args) {
+        double warmup = 2, measure = 2;
+        int iterations = 3, forks = 1;
+        String child = null;
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-w": warmup = Double.parseDouble(args[++i]); break;
+                case "-m": measure = Double.parseDouble(args[++i]); break;
+                case "-i": iterations = Integer.parseInt(args[++i]); break;
+                case "-f": forks = Integer.parseInt(args[++i]); break;
+                case "--child": child = args[++i]; break;
+                default: filters.add(args[i]);
+            }
+        }
+        return new BenchHarness(mainClass, warmup, measure, iterations, forks, filters, child);
+    }
+
+    /**
+     * @return true if this JVM is a fork running a single benchmark
+     */
+    public boolean isChild() {
+        return childBenchmark != null;
+    }
+
+    /**
+     * @return true if the benchmark matches the command-line filters
+     */
+    public boolean selected(String name) {
+        if (childBenchmark != null) {
+            return childBenchmark.equals(name);
+        }
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Run a benchmark and print its result line, if it is selected
+     * @return the result, or null if the benchmark was filtered out or ran
+     *         in a forked JVM (which prints the result itself)
+     */
+    public Result run(String name, Op op) throws Exception {
+        if (!selected(name)) {
+            return null;
+        }
+        if (childBenchmark == null && forks > 0) {
+            for (int f = 0; f < forks; f++) {
+                fork(name);
+            }
+            return null;
+        }
+        loop(op, seconds(warmupSeconds));
+
+        long totalOps = 0, totalNanos = 0, totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = loop(op, seconds(measureSeconds));
+            totalNanos += System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+            totalOps += ops;
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        long deadline = System.nanoTime() + seconds(measureSeconds);
+        long acc = 0;
+        while (true) {
+            long start = System.nanoTime();
+            acc += op.run();
+            long end = System.nanoTime();
+            latency.record(end - start);
+            if (end >= deadline) {
+                break;
+            }
+        }
+        sink += acc;
+
+        Result result = new Result(name, totalOps * 1e9 / totalNanos,
+            latency.getValueAtPercentile(50), latency.getValueAtPercentile(99),
+            latency.getValueAtPercentile(99.9), totalBytes < 0 ? -1 : (double) totalBytes / totalOps);
+        System.out.println(result);
+        return result;
+    }
+
+    private void fork(String name) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(Arrays.asList("--child", name,
+            "-w", String.valueOf(warmupSeconds), "-m", String.valueOf(measureSeconds),
+            "-i", String.valueOf(iterations)));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            System.out.println(name + ": forked JVM exited with " + process.exitValue());
+        }
+    }
+
+    /**
+     * Print the column header, except in forked JVMs whose parent already did
+     */
+    public void printHeader() {
+        if (childBenchmark != null) {
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT, "%-44s %14s %11s %11s %11s %10s",
+            "Benchmark", "ops/s", "p50(ns)", "p99(ns)", "p99.9(ns)", "B/op"));
+    }
+
+    private long loop(Op op, long durationNanos) throws Exception {
+        long deadline = System.nanoTime() + durationNanos;
+        long ops = 0, acc = 0;
+        do {
+            for (int i = 0; i < CHECK_INTERVAL; i++) {
+                acc += op.run();
+            }
+            ops += CHECK_INTERVAL;
+        } while (System.nanoTime() < deadline);
+        sink += acc;
+        return ops;
+    }
+
+    private static long seconds(double s) {
+        return (long) (s * 1e9);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Outcome of one benchmark
+     */
+    public static class Result {
+        public final String name;
+        public final double opsPerSecond;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        public final long p999Nanos;
+        public final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, long p50Nanos, long p99Nanos, long p999Nanos, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-44s %14.0f %11d %11d %11d %10.1f",
+                name, opsPerSecond, p50Nanos, p99Nanos, p999Nanos, bytesPerOp);
+        }
+    }
+}
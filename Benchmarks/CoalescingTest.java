@@ -0,0 +1,120 @@
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput test for CoalescingCalcService: many threads calling
+ * calculateTax one value at a time, over the plain RMI stub and through
+ * the coalescing proxy
+ * The service is exported from this JVM and called over the loopback
+ * socket. For each thread count, closed-loop threads call for a few seconds;
+ * the test prints calls per second, the latency percentiles and, for the
+ * proxy, the average number of calls per batch.
+ *
+ * Options: -d seconds per step (3), -u window in microseconds (100),
+ * -b largest batch (256), -c thread counts (1,4,16,64).
+ */
+public class CoalescingTest {
+
+    public static void main(String[] args) throws Exception {
+        double seconds = 3;
+        long windowMicros = 100;
+        int maxBatch = 256;
+        String threadCounts = "1,4,16,64";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-d": seconds = Double.parseDouble(args[++i]); break;
+                case "-u": windowMicros = Long.parseLong(args[++i]); break;
+                case "-b": maxBatch = Integer.parseInt(args[++i]); break;
+                case "-c": threadCounts = args[++i]; break;
+                default:
+                    System.err.println("Usage: java CoalescingTest [-d seconds] [-u micros] [-b batch]"
+                        + " [-c 1,4,16,...]");
+                    System.exit(1);
+            }
+        }
+
+        CalcServiceImpl service = new CalcServiceImpl();
+        int port = ServiceBenchmark.freePort();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind("CalcService", service);
+        CalcService stub = (CalcService) LocateRegistry.getRegistry("localhost", port).lookup("CalcService");
+        CoalescingCalcService coalescing = new CoalescingCalcService(stub, windowMicros, maxBatch);
+
+        System.out.printf(Locale.ROOT, "Window %d us, batches of at most %d; %d processor(s)%n",
+            windowMicros, maxBatch, Runtime.getRuntime().availableProcessors());
+        System.out.printf(Locale.ROOT, "%-10s %8s %10s %10s %10s %10s%n",
+            "mode", "threads", "calls/s", "p50 us", "p99 us", "per batch");
+        for (String mode : new String[] {"rmi", "coalesced"}) {
+            CalcService target = mode.equals("rmi") ? stub : coalescing;
+            step(target, 4, 1.0); // warm-up
+            for (String count : threadCounts.split(",")) {
+                int threads = Integer.parseInt(count.trim());
+                long batches = coalescing.getBatchCount();
+                long batched = coalescing.getBatchedCallCount();
+                Step result = step(target, threads, seconds);
+                batches = coalescing.getBatchCount() - batches;
+                batched = coalescing.getBatchedCallCount() - batched;
+                System.out.printf(Locale.ROOT, "%-10s %8d %10.0f %10.1f %10.1f %10s%n",
+                    mode, threads, result.calls / seconds,
+                    result.latency.getValueAtPercentile(50) / 1000.0,
+                    result.latency.getValueAtPercentile(99) / 1000.0,
+                    batches == 0 ? "-" : String.format(Locale.ROOT, "%.1f", (double) batched / batches));
+            }
+        }
+
+        coalescing.close();
+        UnicastRemoteObject.unexportObject(service, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    static final class Step {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long calls;
+    }
+
+    /**
+     * Run closed-loop callers against the service for the given time
+     */
+    static Step step(CalcService service, int threads, double seconds) throws Exception {
+        Step step = new Step();
+        LongAdder calls = new LongAdder();
+        List<Throwable> failures = new ArrayList<>();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            double base = 100_000 * (t + 1);
+            Thread thread = new Thread(() -> {
+                double income = base;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        service.calculateTax(income++);
+                    } catch (RemoteException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                        return;
+                    }
+                    step.latency.record(System.nanoTime() - start);
+                    calls.increment();
+                }
+            });
+            started.add(thread);
+            thread.start();
+        }
+        for (Thread thread : started) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new RemoteException("Caller failed", failures.get(0));
+        }
+        step.calls = calls.sum();
+        return step;
+    }
+}
@@ -0,0 +1,483 @@
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator and soak test for CalcService and RoomService
+ * Clients call a weighted mix of operations at a fixed total rate. Each
+ * client has its own schedule (rate / clients calls per second, staggered
+ * against the others) and does not wait for a slow call before the next
+ * one is due: if it falls behind, it calls back to back until it has caught
+ * up. Latency is measured from when a call was due, not from when it could
+ * start, so time spent waiting behind a slow call counts (this corrects
+ * for coordinated omission, which makes a closed-loop test hide stalls).
+ * The time of the call alone is reported too, as "service time".
+ *
+ * By default both services run in this JVM, bound in a registry on a free
+ * localhost port exactly as Server and RMIServer bind them (ServiceMetrics
+ * and BoundedDispatcher, set up from the same properties), and the room
+ * service is given extra rooms first. --calc PORT and --rooms PORT use the
+ * service bound in a registry already running on that localhost port
+ * instead. room.update adds and removes a load-test occupant, so point it
+ * at a primary, or leave it out of the mix.
+ *
+ * Every interval it prints the calls done, rejected (server overloaded) and
+ * failed per second, the corrected latency percentiles of that interval and
+ * the heap in use; at the end, per operation, the percentiles over the
+ * whole run. Calls that were due during the warm-up are left out of the
+ * latencies, even when they finish later. Histograms have a fixed size, so a soak test can run for hours.
+ *
+ * Options: -r calls per second (2000), -c clients (32), -t platform|virtual
+ * threads (virtual threads need Java 21), -d seconds (30), -w warm-up
+ * seconds (5), -i report interval seconds (5), -n rooms to add (1000),
+ * -m mix (calc.tax=30,calc.cgpa=15,calc.taxBatch=5,room.get=30,room.page=5,
+ * room.find=10,room.update=5), --calc PORT, --rooms PORT.
+ */
+public class LoadGenerator {
+
+    private static final String DEFAULT_MIX =
+        "calc.tax=30,calc.cgpa=15,calc.taxBatch=5,room.get=30,room.page=5,room.find=10,room.update=5";
+    private static final int TAX_BATCH = 100;
+    private static final int PAGE_SIZE = 50;
+    private static final int FIND_LIMIT = 10;
+
+    /**
+     * One call of an operation, made by a client
+     */
+    interface Call {
+        void run(Client client) throws RemoteException;
+    }
+
+    static final class Op {
+        final String name;
+        final double weight;
+        final Call call;
+        final LatencyHistogram corrected = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicBoolean errorPrinted = new AtomicBoolean();
+
+        Op(String name, double weight, Call call) {
+            this.name = name;
+            this.weight = weight;
+            this.call = call;
+        }
+    }
+
+    // Targets and test data shared by every client
+    private static CalcService calc;
+    private static RoomService rooms;
+    private static String[] roomNumbers;
+    private static String[] occupantPrefixes;
+    private static final String RUN_ID = Long.toString(System.currentTimeMillis() % 1_000_000, 36);
+
+    // Totals of the current report interval; swapped by the reporter
+    private static volatile LatencyHistogram intervalLatency = new LatencyHistogram();
+    private static final LongAdder intervalDone = new LongAdder();
+    private static final LongAdder intervalRejected = new LongAdder();
+    private static final LongAdder intervalErrors = new LongAdder();
+    private static final LongAdder missed = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        double rate = 2000;
+        int clients = 32;
+        boolean virtual = false;
+        double seconds = 30;
+        double warmup = 5;
+        double interval = 5;
+        int addRooms = 1000;
+        String mix = DEFAULT_MIX;
+        int calcPort = -1;
+        int roomsPort = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-r": rate = Double.parseDouble(args[++i]); break;
+                case "-c": clients = Integer.parseInt(args[++i]); break;
+                case "-t": virtual = args[++i].equals("virtual"); break;
+                case "-d": seconds = Double.parseDouble(args[++i]); break;
+                case "-w": warmup = Double.parseDouble(args[++i]); break;
+                case "-i": interval = Double.parseDouble(args[++i]); break;
+                case "-n": addRooms = Integer.parseInt(args[++i]); break;
+                case "-m": mix = args[++i]; break;
+                case "--calc": calcPort = Integer.parseInt(args[++i]); break;
+                case "--rooms": roomsPort = Integer.parseInt(args[++i]); break;
+                default:
+                    System.err.println("Usage: java LoadGenerator [-r rate] [-c clients] [-t platform|virtual]"
+                        + " [-d seconds] [-w seconds] [-i seconds] [-n rooms] [-m op=weight,...]"
+                        + " [--calc port] [--rooms port]");
+                    System.exit(1);
+            }
+        }
+        if (rate <= 0 || clients <= 0) {
+            System.err.println("Rate and clients must be positive");
+            System.exit(1);
+        }
+        if (System.getProperty("hostel.requestLog") == null) {
+            System.setProperty("hostel.requestLog", "false");
+        }
+
+        List<Op> ops = parseMix(mix);
+        connect(calcPort, roomsPort, addRooms);
+        loadRoomData();
+
+        long period = (long) (1e9 * clients / rate);
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        long measureStart = start + (long) (warmup * 1e9);
+        long end = measureStart + (long) (seconds * 1e9);
+        List<Thread> threads = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            Client client = new Client(c, ops, start + period * c / clients, period, measureStart, end);
+            Thread thread = virtual ? newVirtualThread(client) : new Thread(client);
+            thread.setName("load-client-" + c);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        System.out.printf(Locale.ROOT, "Target %.0f calls/s from %d %s clients for %.0f s (after %.0f s warm-up);"
+            + " %d processor(s); mix %s%n", rate, clients, virtual ? "virtual-thread" : "platform-thread",
+            seconds, warmup, Runtime.getRuntime().availableProcessors(), mix);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        report(measureStart, end, (long) (interval * 1e9), rate);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        summary(ops, seconds);
+        System.exit(0);
+    }
+
+    /**
+     * Make a client call each operation of the mix, in proportion to its weight
+     */
+    static final class Client implements Runnable {
+        final int id;
+        final List<Op> ops;
+        final double[] cumulative;
+        final long period;
+        final long measureStart;
+        final long end;
+        final Random random = new Random(ThreadLocalRandom.current().nextLong());
+        final String occupant;
+        final String room;
+        long due;
+        boolean allocated;
+
+        Client(int id, List<Op> ops, long firstDue, long period, long measureStart, long end) {
+            this.id = id;
+            this.ops = ops;
+            this.period = period;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.due = firstDue;
+            this.occupant = "Load " + RUN_ID + "-" + id;
+            this.room = roomNumbers.length == 0 ? null : roomNumbers[id % roomNumbers.length];
+            cumulative = new double[ops.size()];
+            double total = 0;
+            for (int i = 0; i < cumulative.length; i++) {
+                total += ops.get(i).weight;
+                cumulative[i] = total;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= end) {
+                    if (due < end) {
+                        missed.add((end - due + period - 1) / period);
+                    }
+                    return;
+                }
+                if (now < due) {
+                    LockSupport.parkNanos(due - now);
+                    continue;
+                }
+                Op op = pick();
+                long begin = System.nanoTime();
+                boolean ok = false;
+                try {
+                    op.call.run(this);
+                    ok = true;
+                } catch (RemoteException | RuntimeException e) {
+                    boolean overload = ServerOverloadedException.isOverload(e);
+                    if (due >= measureStart) {
+                        (overload ? op.rejected : op.errors).increment();
+                    }
+                    if (System.nanoTime() >= measureStart) {
+                        (overload ? intervalRejected : intervalErrors).increment();
+                    }
+                    if (!overload && op.errorPrinted.compareAndSet(false, true)) {
+                        System.err.println(op.name + " failed: " + e.getMessage());
+                    }
+                }
+                long done = System.nanoTime();
+                if (ok && due >= measureStart) {
+                    op.corrected.record(done - due);
+                    op.serviceTime.record(done - begin);
+                    intervalLatency.record(done - due);
+                }
+                if (ok && done >= measureStart) {
+                    intervalDone.increment();
+                }
+                due += period;
+            }
+        }
+
+        private Op pick() {
+            double r = random.nextDouble() * cumulative[cumulative.length - 1];
+            for (int i = 0; i < cumulative.length - 1; i++) {
+                if (r < cumulative[i]) {
+                    return ops.get(i);
+                }
+            }
+            return ops.get(cumulative.length - 1);
+        }
+
+        String randomRoom() {
+            return roomNumbers[random.nextInt(roomNumbers.length)];
+        }
+    }
+
+    /**
+     * @return the operations named in "op=weight,..." with their calls
+     */
+    static List<Op> parseMix(String mix) {
+        List<Op> ops = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameWeight = part.trim().split("=");
+            String name = nameWeight[0].trim();
+            double weight = nameWeight.length > 1 ? Double.parseDouble(nameWeight[1].trim()) : 1;
+            Call call = callFor(name);
+            if (call == null) {
+                System.err.println("Unknown operation " + name + "; known: " + DEFAULT_MIX.replaceAll("=\\d+", ""));
+                System.exit(1);
+            }
+            if (weight > 0) {
+                ops.add(new Op(name, weight, call));
+            }
+        }
+        if (ops.isEmpty()) {
+            System.err.println("The mix has no operations");
+            System.exit(1);
+        }
+        return ops;
+    }
+
+    private static Call callFor(String name) {
+        switch (name) {
+            case "calc.tax":
+                return c -> calc.calculateTax(c.random.nextInt(2_000_000));
+            case "calc.cgpa":
+                return c -> {
+                    int[] marks = new int[5];
+                    for (int i = 0; i < marks.length; i++) {
+                        marks[i] = c.random.nextInt(101);
+                    }
+                    calc.calculateCGPA(marks);
+                };
+            case "calc.taxBatch":
+                return c -> {
+                    double[] incomes = new double[TAX_BATCH];
+                    for (int i = 0; i < incomes.length; i++) {
+                        incomes[i] = c.random.nextInt(2_000_000);
+                    }
+                    calc.calculateTaxBatch(incomes);
+                };
+            case "room.get":
+                return c -> rooms.getRoomInfo(c.randomRoom());
+            case "room.page":
+                return c -> rooms.getAllRooms(c.random.nextInt(roomNumbers.length), PAGE_SIZE);
+            case "room.find":
+                return c -> rooms.findRoomsByOccupant(
+                    occupantPrefixes[c.random.nextInt(occupantPrefixes.length)], FIND_LIMIT);
+            case "room.update":
+                return c -> {
+                    // Each client moves its own occupant in and out of its own room
+                    if (c.allocated) {
+                        rooms.vacateRoom(c.room, c.occupant);
+                    } else {
+                        rooms.allocateRoom(c.room, c.occupant);
+                    }
+                    c.allocated = !c.allocated;
+                };
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Look up both services, from this JVM's own registry unless a port is given
+     */
+    static void connect(int calcPort, int roomsPort, int addRooms) throws Exception {
+        Registry local = null;
+        if (calcPort < 0 || roomsPort < 0) {
+            int port = ServiceBenchmark.freePort();
+            local = LocateRegistry.createRegistry(port);
+            if (calcPort < 0) {
+                local.rebind("CalcService", ServiceMetrics.export(CalcService.class,
+                    BoundedDispatcher.wrapFromProperties(CalcService.class, new CalcServiceImpl())));
+                calcPort = port;
+            }
+            if (roomsPort < 0) {
+                RoomServiceImpl roomImpl = new RoomServiceImpl();
+                addRooms(roomImpl, addRooms);
+                local.rebind("RoomService", ServiceMetrics.export(RoomService.class,
+                    BoundedDispatcher.wrapFromProperties(RoomService.class, roomImpl)));
+                roomsPort = port;
+            }
+        }
+        calc = (CalcService) LocateRegistry.getRegistry("localhost", calcPort).lookup("CalcService");
+        rooms = (RoomService) LocateRegistry.getRegistry("localhost", roomsPort).lookup("RoomService");
+    }
+
+    /**
+     * Add rooms of two occupants each, 50 to a floor from floor 11 up, so
+     * they do not clash with the sample rooms
+     */
+    private static void addRooms(RoomServiceImpl service, int count) throws RemoteException {
+        Random random = new Random(24);
+        for (int i = 0; i < count; i++) {
+            String number = (11 + i / 50) + String.format("%02d", i % 50 + 1);
+            List<String> occupants = Arrays.asList(
+                "Student " + random.nextInt(100_000), "Student " + random.nextInt(100_000));
+            service.upsertRoom(new RoomInfo(number, occupants, "+91-98765" + String.format("%05d", i / 50)));
+        }
+    }
+
+    /**
+     * Collect the room numbers and occupant name prefixes the calls pick from
+     */
+    private static void loadRoomData() throws RemoteException {
+        List<String> numbers = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        int offset = 0;
+        while (offset >= 0) {
+            RoomPage page = rooms.getAllRooms(offset, 500);
+            for (RoomInfo info : page.getRooms()) {
+                numbers.add(info.getRoomNumber());
+                for (String name : info.getOccupantNames()) {
+                    prefixes.add(name.substring(0, Math.min(name.length(), 9)));
+                }
+            }
+            offset = page.getNextOffset();
+        }
+        if (numbers.isEmpty()) {
+            System.err.println("The room service has no rooms");
+            System.exit(1);
+        }
+        if (prefixes.isEmpty()) {
+            prefixes.add("A");
+        }
+        roomNumbers = numbers.toArray(new String[0]);
+        occupantPrefixes = prefixes.toArray(new String[0]);
+    }
+
+    /**
+     * Print one line per interval until the run ends
+     */
+    private static void report(long measureStart, long end, long intervalNanos, double rate) {
+        sleepUntil(measureStart);
+        intervalLatency = new LatencyHistogram();
+        intervalDone.reset();
+        intervalRejected.reset();
+        intervalErrors.reset();
+        System.out.printf(Locale.ROOT, "%8s %10s %10s %10s %10s %10s %10s %10s %10s %8s%n",
+            "time s", "target/s", "done/s", "rejected/s", "errors/s",
+            "p50 us", "p90 us", "p99 us", "max us", "heap MB");
+        long last = measureStart;
+        while (last < end) {
+            long next = Math.min(end, last + intervalNanos);
+            sleepUntil(next);
+            LatencyHistogram latency = intervalLatency;
+            intervalLatency = new LatencyHistogram();
+            double elapsed = (next - last) / 1e9;
+            Runtime runtime = Runtime.getRuntime();
+            System.out.printf(Locale.ROOT, "%8.0f %10.0f %10.0f %10.0f %10.0f %10.1f %10.1f %10.1f %10.1f %8d%n",
+                (next - measureStart) / 1e9, rate,
+                intervalDone.sumThenReset() / elapsed,
+                intervalRejected.sumThenReset() / elapsed,
+                intervalErrors.sumThenReset() / elapsed,
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(90) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getMax() / 1000.0,
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+            last = next;
+        }
+    }
+
+    private static void summary(List<Op> ops, double seconds) {
+        System.out.println();
+        System.out.println("Whole run; corrected latency counts from when each call was due, service time"
+            + " from when it started");
+        System.out.printf(Locale.ROOT, "%-14s %10s %10s %8s %10s %10s %10s %10s %12s %12s%n",
+            "operation", "done/s", "rejected", "errors", "p50 us", "p99 us", "p99.9 us", "max us",
+            "svc p50 us", "svc p99 us");
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram allService = new LatencyHistogram();
+        long rejected = 0;
+        long errors = 0;
+        for (Op op : ops) {
+            printOp(op.name, op.corrected, op.serviceTime, op.rejected.sum(), op.errors.sum(), seconds);
+            all.add(op.corrected);
+            allService.add(op.serviceTime);
+            rejected += op.rejected.sum();
+            errors += op.errors.sum();
+        }
+        printOp("all", all, allService, rejected, errors, seconds);
+        if (missed.sum() > 0) {
+            System.out.printf(Locale.ROOT, "%d calls were still due when the run ended: the clients could"
+                + " not keep up with the target rate%n", missed.sum());
+        }
+    }
+
+    private static void printOp(String name, LatencyHistogram corrected, LatencyHistogram serviceTime,
+                                long rejected, long errors, double seconds) {
+        System.out.printf(Locale.ROOT, "%-14s %10.0f %10d %8d %10.1f %10.1f %10.1f %10.1f %12.1f %12.1f%n",
+            name, corrected.getTotalCount() / seconds, rejected, errors,
+            corrected.getValueAtPercentile(50) / 1000.0,
+            corrected.getValueAtPercentile(99) / 1000.0,
+            corrected.getValueAtPercentile(99.9) / 1000.0,
+            corrected.getMax() / 1000.0,
+            serviceTime.getValueAtPercentile(50) / 1000.0,
+            serviceTime.getValueAtPercentile(99) / 1000.0);
+    }
+
+    private static void sleepUntil(long deadline) {
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            LockSupport.parkNanos(deadline - now);
+        }
+    }
+
+    /**
+     * Thread.ofVirtual().unstarted(task), looked up at run time so the
+     * benchmarks still compile and run on Java versions without it
+     */
+    private static Thread newVirtualThread(Runnable task) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads need Java 21 or later; this is Java "
+                + System.getProperty("java.version"));
+            System.exit(1);
+            return null;
+        }
+    }
+}
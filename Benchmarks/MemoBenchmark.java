@@ -0,0 +1,66 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Random;
+
+/**
+ * Compares computing calculateCGPA and calculateTax on every call with
+ * looking the result up in CalcServiceImpl's memo tables (MemoCache).
+ * Each runs on a "repeat" workload, 1024 inputs used over and over so
+ * nearly every lookup hits, and on a "unique" workload, 1M random inputs
+ * against a table of 64K slots so nearly every lookup misses and pays for
+ * both the lookup and the store.
+ * The calls go straight to the implementation: over RMI the few
+ * nanoseconds at stake here are lost in the cost of the call.
+ */
+public class MemoBenchmark {
+
+    private static final int REPEAT_INPUTS = 1024;
+    private static final int UNIQUE_INPUTS = 1 << 20;
+    private static final int MEMO_ENTRIES = 1 << 16;
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness harness = BenchHarness.fromArgs(MemoBenchmark.class, args);
+
+        CalcServiceImpl plain = new CalcServiceImpl(TaxRuleEngine.load(), 0);
+        CalcServiceImpl memo = new CalcServiceImpl(TaxRuleEngine.load(), MEMO_ENTRIES);
+
+        Random random = new Random(42);
+        int[][] marks = new int[UNIQUE_INPUTS][5];
+        double[] incomes = new double[UNIQUE_INPUTS];
+        for (int n = 0; n < UNIQUE_INPUTS; n++) {
+            for (int j = 0; j < 5; j++) {
+                marks[n][j] = random.nextInt(101);
+            }
+            incomes[n] = random.nextInt(3_000_000);
+        }
+        int[] flatMarks = new int[REPEAT_INPUTS * 5];
+        for (int n = 0; n < REPEAT_INPUTS; n++) {
+            System.arraycopy(marks[n], 0, flatMarks, n * 5, 5);
+        }
+
+        int[] i = new int[1];
+        harness.printHeader();
+        harness.run("memo.calculateCGPA.off-repeat",
+            () -> Double.doubleToRawLongBits(plain.calculateCGPA(marks[i[0]++ & (REPEAT_INPUTS - 1)])));
+        harness.run("memo.calculateCGPA.off-unique",
+            () -> Double.doubleToRawLongBits(plain.calculateCGPA(marks[i[0]++ & (UNIQUE_INPUTS - 1)])));
+        harness.run("memo.calculateCGPA.on-repeat",
+            () -> Double.doubleToRawLongBits(memo.calculateCGPA(marks[i[0]++ & (REPEAT_INPUTS - 1)])));
+        harness.run("memo.calculateCGPA.on-unique",
+            () -> Double.doubleToRawLongBits(memo.calculateCGPA(marks[i[0]++ & (UNIQUE_INPUTS - 1)])));
+        harness.run("memo.calculateTax.off-repeat",
+            () -> Double.doubleToRawLongBits(plain.calculateTax(incomes[i[0]++ & (REPEAT_INPUTS - 1)])));
+        harness.run("memo.calculateTax.off-unique",
+            () -> Double.doubleToRawLongBits(plain.calculateTax(incomes[i[0]++ & (UNIQUE_INPUTS - 1)])));
+        harness.run("memo.calculateTax.on-repeat",
+            () -> Double.doubleToRawLongBits(memo.calculateTax(incomes[i[0]++ & (REPEAT_INPUTS - 1)])));
+        harness.run("memo.calculateTax.on-unique",
+            () -> Double.doubleToRawLongBits(memo.calculateTax(incomes[i[0]++ & (UNIQUE_INPUTS - 1)])));
+        harness.run("memo.calculateCGPABatch" + REPEAT_INPUTS + ".off-repeat",
+            () -> plain.calculateCGPABatch(flatMarks).length);
+        harness.run("memo.calculateCGPABatch" + REPEAT_INPUTS + ".on-repeat",
+            () -> memo.calculateCGPABatch(flatMarks).length);
+
+        UnicastRemoteObject.unexportObject(plain, true);
+        UnicastRemoteObject.unexportObject(memo, true);
+    }
+}
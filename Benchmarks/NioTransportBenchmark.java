@@ -0,0 +1,63 @@
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the RMI stub of CalcService with the NIO transport
+ * (Calculate/CalcNioServer.java and CalcNioClient.java), both served from
+ * this JVM over the loopback socket.
+ * The pipelined benchmark sends 64 calculateTax requests before waiting for
+ * any answer, so its ops/s counts groups of 64 calls; multiply by 64 to
+ * compare it with the one-at-a-time calls.
+ */
+public class NioTransportBenchmark {
+
+    private static final int INPUTS = 1024;
+    private static final int PIPELINE = 64;
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness harness = BenchHarness.fromArgs(NioTransportBenchmark.class, args);
+
+        CalcServiceImpl calcImpl = new CalcServiceImpl();
+        int port = ServiceBenchmark.freePort();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind("CalcService", calcImpl);
+        CalcService rmi = (CalcService) LocateRegistry.getRegistry("localhost", port).lookup("CalcService");
+        CalcNioServer server = new CalcNioServer(calcImpl, 0, 1);
+        CalcNioClient nio = CalcNioClient.connect("localhost", server.getPort());
+
+        Random random = new Random(42);
+        double[] incomes = new double[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            incomes[i] = random.nextInt(1_000_000);
+        }
+
+        harness.printHeader();
+        int[] i = new int[1];
+        harness.run("calc.calculateTax.rmi",
+            () -> Double.doubleToRawLongBits(rmi.calculateTax(incomes[i[0]++ & (INPUTS - 1)])));
+        harness.run("calc.calculateTax.nio",
+            () -> Double.doubleToRawLongBits(nio.calculateTax(incomes[i[0]++ & (INPUTS - 1)])));
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Double>[] inFlight = (CompletableFuture<Double>[]) new CompletableFuture<?>[PIPELINE];
+        harness.run("calc.calculateTax.nio-pipelined" + PIPELINE, () -> {
+            for (int k = 0; k < PIPELINE; k++) {
+                inFlight[k] = nio.calculateTaxAsync(incomes[i[0]++ & (INPUTS - 1)]);
+            }
+            long sum = 0;
+            for (CompletableFuture<Double> answer : inFlight) {
+                sum += Double.doubleToRawLongBits(answer.get());
+            }
+            return sum;
+        });
+        harness.run("calc.calculateTaxBatch" + INPUTS + ".rmi", () -> rmi.calculateTaxBatch(incomes).length);
+        harness.run("calc.calculateTaxBatch" + INPUTS + ".nio", () -> nio.calculateTaxBatch(incomes).length);
+
+        nio.close();
+        server.close();
+        UnicastRemoteObject.unexportObject(calcImpl, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+}
@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test for BoundedDispatcher: what happens to latency once the offered
+ * load is more than the server can handle
+ * A CalcService whose calculateTax burns a fixed amount of CPU is exported
+ * twice in this JVM: as is ("unbounded", RMI runs every call at once on its
+ * connection thread) and behind a BoundedDispatcher ("bounded"). For each
+ * client count, closed-loop client threads call one of them for a few
+ * seconds. A client that is turned away backs off before its next call,
+ * as a real client should: from 1 ms, doubling with each rejection in a
+ * row, with random jitter.
+ *
+ * Unbounded, every extra client adds to the time of every call, so p99
+ * grows with the load. Bounded, calls beyond workers + queue are rejected
+ * and the p99 of the calls that are served stays flat.
+ * A rejection is not free: the RMI client closes its connection after any
+ * RemoteException, so the next call opens a new one, and a rejected call
+ * costs about ten times a successful one. On a machine shared with the
+ * clients, this lowers the rate of served calls past saturation. Without
+ * client back-off, rejected retries alone can use up the CPU.
+ *
+ * Options: -d seconds per step (3), -s CPU microseconds per call (200),
+ * -w workers (number of processors), -q queue capacity (4 x workers),
+ * -c client counts (1,2,4,8,16,32,64).
+ */
+public class OverloadTest {
+
+    // A turned-away client waits 1 ms, doubling on each further rejection up to 1 s
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * CalcService whose calculateTax costs a fixed amount of CPU time
+     */
+    static class SlowCalcService extends CalcServiceImpl {
+        private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+        private final long cpuNanos;
+
+        SlowCalcService(long cpuNanos) throws RemoteException {
+            this.cpuNanos = cpuNanos;
+        }
+
+        @Override
+        public double calculateTax(double income) throws RemoteException {
+            // CPU time rather than wall time, so calls sharing the CPU really slow each other down
+            long end = THREADS.getCurrentThreadCpuTime() + cpuNanos;
+            while (THREADS.getCurrentThreadCpuTime() < end) {
+                income += 1e-9;
+            }
+            return super.calculateTax(income);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        double seconds = 3;
+        long serviceMicros = 200;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        String clientCounts = "1,2,4,8,16,32,64";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-d": seconds = Double.parseDouble(args[++i]); break;
+                case "-s": serviceMicros = Long.parseLong(args[++i]); break;
+                case "-w": workers = Integer.parseInt(args[++i]); break;
+                case "-q": queue = Integer.parseInt(args[++i]); break;
+                case "-c": clientCounts = args[++i]; break;
+                default:
+                    System.err.println("Usage: java OverloadTest [-d seconds] [-s micros] [-w workers]"
+                        + " [-q queue] [-c 1,2,4,...]");
+                    System.exit(1);
+            }
+        }
+        if (queue < 0) {
+            queue = 4 * workers;
+        }
+
+        SlowCalcService service = new SlowCalcService(TimeUnit.MICROSECONDS.toNanos(serviceMicros));
+        BoundedDispatcher.Settings settings = new BoundedDispatcher.Settings(workers, queue, false, new HashMap<>());
+        CalcService bounded = BoundedDispatcher.wrap(CalcService.class, service, settings);
+
+        int port = ServiceBenchmark.freePort();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind("unbounded", service);
+        registry.rebind("bounded", UnicastRemoteObject.exportObject(bounded, 0));
+        Registry client = LocateRegistry.getRegistry("localhost", port);
+
+        System.out.printf(Locale.ROOT, "Each call costs %d us of CPU; bounded: %s; %d processor(s)%n",
+            serviceMicros, settings, Runtime.getRuntime().availableProcessors());
+        System.out.printf(Locale.ROOT, "%-10s %8s %10s %12s %10s %10s %10s%n",
+            "mode", "clients", "ok/s", "rejected/s", "p50 us", "p99 us", "p99.9 us");
+        for (String mode : new String[] {"unbounded", "bounded"}) {
+            CalcService stub = (CalcService) client.lookup(mode);
+            step(stub, 4, 1.0); // warm-up
+            for (String count : clientCounts.split(",")) {
+                int clients = Integer.parseInt(count.trim());
+                Step result = step(stub, clients, seconds);
+                System.out.printf(Locale.ROOT, "%-10s %8d %10.0f %12.0f %10.1f %10.1f %10.1f%n",
+                    mode, clients, result.ok / seconds, result.rejected / seconds,
+                    result.latency.getValueAtPercentile(50) / 1000.0,
+                    result.latency.getValueAtPercentile(99) / 1000.0,
+                    result.latency.getValueAtPercentile(99.9) / 1000.0);
+            }
+        }
+
+        UnicastRemoteObject.unexportObject(bounded, true);
+        UnicastRemoteObject.unexportObject(service, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    static final class Step {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long ok;
+        long rejected;
+    }
+
+    /**
+     * Run closed-loop clients against the service for the given time
+     */
+    static Step step(CalcService service, int clients, double seconds) throws Exception {
+        Step step = new Step();
+        LongAdder ok = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        List<Throwable> failures = new ArrayList<>();
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Thread thread = new Thread(() -> {
+                double income = 300_000;
+                long backoff = MIN_BACKOFF_NANOS;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        service.calculateTax(income);
+                        step.latency.record(System.nanoTime() - start);
+                        ok.increment();
+                        backoff = MIN_BACKOFF_NANOS;
+                    } catch (RemoteException e) {
+                        if (!ServerOverloadedException.isOverload(e)) {
+                            synchronized (failures) {
+                                failures.add(e);
+                            }
+                            return;
+                        }
+                        rejected.increment();
+                        LockSupport.parkNanos(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2));
+                        backoff = Math.min(2 * backoff, MAX_BACKOFF_NANOS);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new RemoteException("Client failed", failures.get(0));
+        }
+        step.ok = ok.sum();
+        step.rejected = rejected.sum();
+        return step;
+    }
+}
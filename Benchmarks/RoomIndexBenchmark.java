@@ -0,0 +1,97 @@
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the occupant and warden searches of RoomServiceImpl over a
+ * hostel of 35,000 rooms with three students each (105,000 occupants),
+ * called directly. For comparison, the scan benchmark answers the same
+ * occupant query the way a client had to before the indexes existed: by
+ * reading every room a page at a time and checking each one.
+ * The allocateVacate benchmark shows what keeping the indexes current adds
+ * to a write.
+ */
+public class RoomIndexBenchmark {
+
+    private static final int ROOMS = 35_000;
+    private static final int OCCUPANTS_PER_ROOM = 3;
+    private static final int WARDENS = 500;
+    private static final int QUERIES = 1024;
+    private static final int PAGE_SIZE = 500;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("hostel.requestLog") == null) {
+            System.setProperty("hostel.requestLog", "false");
+        }
+        BenchHarness harness = BenchHarness.fromArgs(RoomIndexBenchmark.class, args);
+
+        RoomServiceImpl service = new RoomServiceImpl(null);
+        Random random = new Random(12);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < ROOMS; i++) {
+            List<String> occupants = new ArrayList<>();
+            for (int j = 0; j < OCCUPANTS_PER_ROOM; j++) {
+                String name = randomWord(random) + " " + randomWord(random);
+                occupants.add(name);
+                names.add(name);
+            }
+            service.upsertRoom(new RoomInfo(String.format("R%05d", i), occupants,
+                "Warden " + random.nextInt(WARDENS)));
+        }
+
+        // Prefixes of existing names: the first name plus one letter of the surname
+        String[] prefixes = new String[QUERIES];
+        String[] wardens = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String name = names.get(random.nextInt(names.size()));
+            prefixes[i] = name.substring(0, name.indexOf(' ') + 2);
+            wardens[i] = "Warden " + random.nextInt(WARDENS);
+        }
+
+        int[] i = new int[1];
+        harness.printHeader();
+        harness.run("room.findRoomsByOccupant.index",
+            () -> service.findRoomsByOccupant(prefixes[i[0]++ & (QUERIES - 1)], 50).size());
+        harness.run("room.findRoomsByOccupant.scan",
+            () -> scanForOccupant(service, prefixes[i[0]++ & (QUERIES - 1)], 50));
+        harness.run("room.findRoomsByWarden.index",
+            () -> service.findRoomsByWarden(wardens[i[0]++ & (QUERIES - 1)]).size());
+        harness.run("room.allocateVacate",
+            () -> {
+                String room = String.format("R%05d", i[0]++ % ROOMS);
+                service.allocateRoom(room, "Bench Student");
+                return service.vacateRoom(room, "Bench Student").getVersion();
+            });
+
+        UnicastRemoteObject.unexportObject(service, true);
+    }
+
+    /**
+     * The client-side alternative: page through every room and test each
+     */
+    static long scanForOccupant(RoomService service, String prefix, int limit) throws Exception {
+        int found = 0;
+        int offset = 0;
+        while (offset >= 0 && found < limit) {
+            RoomPage page = service.getAllRooms(offset, PAGE_SIZE);
+            for (RoomInfo info : page.getRooms()) {
+                if (found < limit && RoomIndex.hasOccupantWithPrefix(info, prefix)) {
+                    found++;
+                }
+            }
+            offset = page.getNextOffset();
+        }
+        return found;
+    }
+
+    private static String randomWord(Random random) {
+        int length = 4 + random.nextInt(5);
+        StringBuilder word = new StringBuilder(length);
+        word.append((char) ('A' + random.nextInt(26)));
+        for (int i = 1; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+}
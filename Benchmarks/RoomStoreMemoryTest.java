@@ -0,0 +1,147 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Memory and GC comparison of the two RoomTable backends: HeapRoomTable
+ * (RoomInfo objects in a ConcurrentHashMap) and PackedRoomTable (rooms
+ * encoded off the heap)
+ * Each table is filled with the same rooms, three occupants each and
+ * warden contacts drawn from a few hundred. With the table still live, the
+ * test prints the heap it retains after a full GC, the direct memory it
+ * uses, the time of a full GC (which has to trace every object the table
+ * holds) and the GC time spent while filling it. Last, it times get() on
+ * random rooms, which for the packed table includes decoding a RoomInfo.
+ * The tables are measured on their own: a RoomStore adds its sorted room
+ * numbers and version index on the heap, the same for both.
+ *
+ * Options: -r rooms (1000000), -d seconds of get() calls (2).
+ * Give the JVM room for the heap table, e.g. java -Xmx2g RoomStoreMemoryTest.
+ */
+public class RoomStoreMemoryTest {
+
+    private static final int OCCUPANTS_PER_ROOM = 3;
+    private static final int WARDENS = 500;
+    private static final int FULL_GCS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int rooms = 1_000_000;
+        double seconds = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-r": rooms = Integer.parseInt(args[++i]); break;
+                case "-d": seconds = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("Usage: java RoomStoreMemoryTest [-r rooms] [-d seconds]");
+                    System.exit(1);
+            }
+        }
+
+        System.out.printf(Locale.ROOT, "%,d rooms, %d occupants each; max heap %d MB; %s%n",
+            rooms, OCCUPANTS_PER_ROOM, Runtime.getRuntime().maxMemory() >> 20, collectorNames());
+        System.out.printf(Locale.ROOT, "%-8s %10s %10s %10s %12s %12s %12s%n",
+            "table", "heap MB", "direct MB", "B/room", "full GC ms", "fill GC ms", "gets/s");
+        for (String kind : new String[] {"heap", "packed"}) {
+            measure(kind, rooms, seconds);
+        }
+    }
+
+    private static void measure(String kind, int rooms, double seconds) {
+        long heapBefore = heapAfterGc();
+        long directBefore = directBytes();
+        long gcBefore = gcMillis();
+
+        RoomTable table = kind.equals("heap") ? new HeapRoomTable() : new PackedRoomTable(rooms);
+        Random random = new Random(21);
+        for (int i = 0; i < rooms; i++) {
+            List<String> occupants = new ArrayList<>(OCCUPANTS_PER_ROOM);
+            for (int j = 0; j < OCCUPANTS_PER_ROOM; j++) {
+                occupants.add(randomWord(random) + " " + randomWord(random));
+            }
+            RoomInfo room = new RoomInfo(roomNumber(i), occupants,
+                "+91-98765" + String.format("%05d", random.nextInt(WARDENS)), i + 1);
+            table.compute(room.getRoomNumber(), (number, current) -> room);
+        }
+        long fillGcMillis = gcMillis() - gcBefore;
+
+        long heap = heapAfterGc() - heapBefore;
+        long direct = directBytes() - directBefore;
+        long gcStart = System.nanoTime();
+        for (int i = 0; i < FULL_GCS; i++) {
+            System.gc();
+        }
+        double fullGcMillis = (System.nanoTime() - gcStart) / 1e6 / FULL_GCS;
+
+        String[] numbers = new String[1 << 16];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = roomNumber(random.nextInt(rooms));
+        }
+        long gets = 0;
+        long checksum = 0;
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        long start = System.nanoTime();
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1024; i++) {
+                checksum += table.get(numbers[(int) (gets++ & (numbers.length - 1))]).getVersion();
+            }
+        }
+        double getsPerSecond = gets / ((System.nanoTime() - start) / 1e9);
+        if (checksum == 0) {
+            System.out.println("no rooms read");
+        }
+
+        System.out.printf(Locale.ROOT, "%-8s %10.1f %10.1f %10.0f %12.1f %12d %12.0f%n",
+            kind, heap / 1048576.0, direct / 1048576.0, (double) (heap + direct) / rooms,
+            fullGcMillis, fillGcMillis, getsPerSecond);
+    }
+
+    private static String roomNumber(int i) {
+        return String.format("R%07d", i);
+    }
+
+    private static String randomWord(Random random) {
+        int length = 4 + random.nextInt(6);
+        StringBuilder word = new StringBuilder(length);
+        word.append((char) ('A' + random.nextInt(26)));
+        for (int i = 1; i < length; i++) {
+            word.append((char) ('a' + random.nextInt(26)));
+        }
+        return word.toString();
+    }
+
+    private static long heapAfterGc() {
+        System.gc();
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directBytes() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static String collectorNames() {
+        List<String> names = new ArrayList<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            names.add(gc.getName());
+        }
+        return String.join(", ", names);
+    }
+}
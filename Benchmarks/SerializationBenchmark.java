@@ -0,0 +1,138 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compares default Java serialization of rooms (the format RoomInfo and
+ * RoomPage used before RoomWireFormat) with the compact wire format, for a
+ * single 3-occupant room and for a 500-room page.
+ * Each operation serializes through a fresh ObjectOutputStream, the way RMI
+ * marshals every call, and the roundTrip benchmarks read the bytes back.
+ * The old format is reproduced by OldRoomInfo/OldRoomPage, which have the
+ * same fields as the old classes; their names are 3 characters longer, so
+ * the old byte counts are overstated by 3 bytes per class descriptor.
+ */
+public class SerializationBenchmark {
+
+    private static final int PAGE_SIZE = 500;
+    private static final String[] WARDENS = {
+        "Mr. Ramesh Singh - 9876543210",
+        "Mrs. Lakshmi Iyer - 9876543211",
+        "Mr. Suresh Patel - 9876543212",
+        "Mrs. Anjali Desai - 9876543213"
+    };
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness harness = BenchHarness.fromArgs(SerializationBenchmark.class, args);
+
+        RoomInfo room = new RoomInfo("101",
+            Arrays.asList("Rajesh Kumar", "Amit Sharma", "Vikram Rao"), WARDENS[0], 42);
+        List<RoomInfo> rooms = new ArrayList<>();
+        List<OldRoomInfo> oldRooms = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            List<String> names = Arrays.asList("Student " + (3 * i), "Student " + (3 * i + 1),
+                "Student " + (3 * i + 2));
+            String warden = WARDENS[i / 125];
+            rooms.add(new RoomInfo(String.valueOf(100 + i), names, warden, i + 1));
+            oldRooms.add(new OldRoomInfo(String.valueOf(100 + i), names, warden, i + 1));
+        }
+        OldRoomInfo oldRoom = new OldRoomInfo(room.getRoomNumber(), room.getOccupantNames(),
+            room.getWardenContact(), room.getVersion());
+        RoomPage page = new RoomPage(rooms, 0, PAGE_SIZE);
+        OldRoomPage oldPage = new OldRoomPage(oldRooms, 0, PAGE_SIZE);
+
+        if (!harness.isChild()) {
+            System.out.println("Serialized size (bytes):");
+            System.out.printf("  %-22s %8d -> %8d%n", "room (3 occupants)",
+                serialize(oldRoom).length, serialize(room).length);
+            System.out.printf("  %-22s %8d -> %8d%n", "page of " + PAGE_SIZE + " rooms",
+                serialize(oldPage).length, serialize(page).length);
+            System.out.println();
+        }
+
+        harness.printHeader();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        harness.run("room.write.default", () -> write(buffer, oldRoom));
+        harness.run("room.write.compact", () -> write(buffer, room));
+        byte[] oldRoomBytes = serialize(oldRoom);
+        byte[] roomBytes = serialize(room);
+        harness.run("room.roundTrip.default", () -> write(buffer, oldRoom) + read(oldRoomBytes));
+        harness.run("room.roundTrip.compact", () -> write(buffer, room) + read(roomBytes));
+        harness.run("page" + PAGE_SIZE + ".write.default", () -> write(buffer, oldPage));
+        harness.run("page" + PAGE_SIZE + ".write.compact", () -> write(buffer, page));
+        byte[] oldPageBytes = serialize(oldPage);
+        byte[] pageBytes = serialize(page);
+        harness.run("page" + PAGE_SIZE + ".roundTrip.default", () -> write(buffer, oldPage) + read(oldPageBytes));
+        harness.run("page" + PAGE_SIZE + ".roundTrip.compact", () -> write(buffer, page) + read(pageBytes));
+    }
+
+    static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(bytes, value);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    static long write(ByteArrayOutputStream buffer, Object value) throws IOException {
+        buffer.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(value);
+        }
+        return buffer.size();
+    }
+
+    static long read(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject().hashCode();
+        }
+    }
+}
+
+/**
+ * RoomInfo as it was serialized before the compact wire format
+ */
+class OldRoomInfo implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String roomNumber;
+    private final List<String> occupantNames;
+    private final String wardenContact;
+    private final long version;
+
+    OldRoomInfo(String roomNumber, List<String> occupantNames, String wardenContact, long version) {
+        this.roomNumber = roomNumber;
+        this.occupantNames = Collections.unmodifiableList(new ArrayList<>(occupantNames));
+        this.wardenContact = wardenContact;
+        this.version = version;
+    }
+
+    private Object readResolve() {
+        return new OldRoomInfo(roomNumber, occupantNames, wardenContact, version);
+    }
+}
+
+/**
+ * RoomPage as it was serialized before the compact wire format
+ */
+class OldRoomPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<OldRoomInfo> rooms;
+    private final int offset;
+    private final int totalRooms;
+
+    OldRoomPage(List<OldRoomInfo> rooms, int offset, int totalRooms) {
+        this.rooms = rooms;
+        this.offset = offset;
+        this.totalRooms = totalRooms;
+    }
+}
@@ -0,0 +1,115 @@
+import java.net.ServerSocket;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks CalcService and RoomService as direct calls on the
+ * implementation, and through real RMI stubs looked up from a registry
+ * created in this JVM. The difference between the two is the cost of RMI
+ * (stub dispatch, serialization and the loopback socket).
+ * The "metered" variants go through the ServiceMetrics proxy the servers
+ * bind, so comparing them with the plain ones gives the cost of metrics.
+ *
+ * Allocation for the rmi benchmarks counts the calling thread only; the
+ * server side of each call runs on RMI's own threads.
+ */
+public class ServiceBenchmark {
+
+    private static final int INPUTS = 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (System.getProperty("hostel.requestLog") == null) {
+            System.setProperty("hostel.requestLog", "false");
+        }
+        BenchHarness harness = BenchHarness.fromArgs(ServiceBenchmark.class, args);
+
+        CalcServiceImpl calcImpl = new CalcServiceImpl();
+        RoomServiceImpl roomImpl = new RoomServiceImpl();
+
+        int port = freePort();
+        Registry registry = LocateRegistry.createRegistry(port);
+        registry.rebind("CalcService", calcImpl);
+        registry.rebind("RoomService", roomImpl);
+        CalcService calcMetered = ServiceMetrics.instrument(CalcService.class, calcImpl);
+        RoomService roomMetered = ServiceMetrics.instrument(RoomService.class, roomImpl);
+        registry.rebind("CalcServiceMetered", UnicastRemoteObject.exportObject(calcMetered, 0));
+        registry.rebind("RoomServiceMetered", UnicastRemoteObject.exportObject(roomMetered, 0));
+        Registry client = LocateRegistry.getRegistry("localhost", port);
+        CalcService calcStub = (CalcService) client.lookup("CalcService");
+        RoomService roomStub = (RoomService) client.lookup("RoomService");
+
+        harness.printHeader();
+        runCalc(harness, "direct", calcImpl);
+        runCalc(harness, "direct-metered", calcMetered);
+        runCalc(harness, "rmi", calcStub);
+        runCalc(harness, "rmi-metered", (CalcService) client.lookup("CalcServiceMetered"));
+        runRooms(harness, "direct", roomImpl);
+        runRooms(harness, "direct-metered", roomMetered);
+        runRooms(harness, "rmi", roomStub);
+        runRooms(harness, "rmi-metered", (RoomService) client.lookup("RoomServiceMetered"));
+
+        UnicastRemoteObject.unexportObject(calcMetered, true);
+        UnicastRemoteObject.unexportObject(roomMetered, true);
+        UnicastRemoteObject.unexportObject(calcImpl, true);
+        UnicastRemoteObject.unexportObject(roomImpl, true);
+        UnicastRemoteObject.unexportObject(registry, true);
+    }
+
+    static void runCalc(BenchHarness harness, String mode, CalcService service) throws Exception {
+        Random random = new Random(42);
+        double[] incomes = new double[INPUTS];
+        int[][] marks = new int[INPUTS][5];
+        int[] ages = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            incomes[i] = random.nextInt(1_000_000);
+            for (int j = 0; j < 5; j++) {
+                marks[i][j] = random.nextInt(101);
+            }
+            ages[i] = random.nextInt(40);
+        }
+
+        int[] i = new int[1];
+        harness.run("calc.calculateTax." + mode,
+            () -> Double.doubleToRawLongBits(service.calculateTax(incomes[i[0]++ & (INPUTS - 1)])));
+        harness.run("calc.calculateCGPA." + mode,
+            () -> Double.doubleToRawLongBits(service.calculateCGPA(marks[i[0]++ & (INPUTS - 1)])));
+        harness.run("calc.isEligibleToVote." + mode,
+            () -> service.isEligibleToVote(ages[i[0]++ & (INPUTS - 1)]) ? 1 : 0);
+
+        // Batch endpoints: one call covers all INPUTS records
+        int[] flatMarks = new int[INPUTS * 5];
+        for (int r = 0; r < INPUTS; r++) {
+            System.arraycopy(marks[r], 0, flatMarks, r * 5, 5);
+        }
+        harness.run("calc.calculateTaxBatch" + INPUTS + "." + mode,
+            () -> service.calculateTaxBatch(incomes).length);
+        harness.run("calc.calculateCGPABatch" + INPUTS + "." + mode,
+            () -> service.calculateCGPABatch(flatMarks).length);
+        harness.run("calc.isEligibleToVoteBatch" + INPUTS + "." + mode,
+            () -> service.isEligibleToVoteBatch(ages).length);
+    }
+
+    static void runRooms(BenchHarness harness, String mode, RoomService service) throws Exception {
+        List<String> known = service.getAllRoomNumbers();
+        String[] lookups = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            // One lookup in eight misses, to include the not-found path
+            lookups[i] = i % 8 == 7 ? "999" : known.get(i % known.size());
+        }
+
+        int[] i = new int[1];
+        harness.run("room.getRoomInfo." + mode,
+            () -> service.getRoomInfo(lookups[i[0]++ & (INPUTS - 1)]) == null ? 0 : 1);
+        harness.run("room.getAllRoomNumbers." + mode,
+            () -> service.getAllRoomNumbers().size());
+    }
+
+    static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
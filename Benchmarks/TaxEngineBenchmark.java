@@ -0,0 +1,66 @@
+import java.util.Random;
+
+/**
+ * Compares the original hard-coded if/else tax chain with TaxRegime's
+ * sorted-threshold binary search, for the 3-slab default regime and for a
+ * 24-slab regime (where the chain is written as a linear scan, the way an
+ * if/else chain with 24 branches behaves).
+ */
+public class TaxEngineBenchmark {
+
+    private static final int INPUTS = 4096;
+    private static final int SLABS = 24;
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness harness = BenchHarness.fromArgs(TaxEngineBenchmark.class, args);
+
+        Random random = new Random(7);
+        double[] incomes = new double[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            incomes[i] = random.nextInt(3_000_000);
+        }
+
+        TaxRegime defaultRegime = TaxRuleEngine.builtInDefault();
+        double[] limits = new double[SLABS - 1];
+        double[] rates = new double[SLABS];
+        for (int i = 0; i < SLABS; i++) {
+            if (i < SLABS - 1) {
+                limits[i] = (i + 1) * 120_000.0;
+            }
+            rates[i] = i * 0.0125;
+        }
+        TaxRegime manySlabs = new TaxRegime("many", TaxRegime.Type.FLAT, limits, rates);
+
+        int[] i = new int[1];
+        harness.printHeader();
+        harness.run("tax.3slabs.ifElseChain",
+            () -> Double.doubleToRawLongBits(chainTax(incomes[i[0]++ & (INPUTS - 1)])));
+        harness.run("tax.3slabs.engine",
+            () -> Double.doubleToRawLongBits(defaultRegime.taxFor(incomes[i[0]++ & (INPUTS - 1)])));
+        harness.run("tax." + SLABS + "slabs.linearChain",
+            () -> Double.doubleToRawLongBits(linearTax(limits, rates, incomes[i[0]++ & (INPUTS - 1)])));
+        harness.run("tax." + SLABS + "slabs.engine",
+            () -> Double.doubleToRawLongBits(manySlabs.taxFor(incomes[i[0]++ & (INPUTS - 1)])));
+    }
+
+    /**
+     * The original CalcServiceImpl.calculateTax body
+     */
+    static double chainTax(double income) {
+        if (income <= 250000) {
+            return 0.0;
+        } else if (income <= 500000) {
+            return income * 0.05; // 5%
+        } else {
+            return income * 0.10; // 10%
+        }
+    }
+
+    static double linearTax(double[] limits, double[] rates, double income) {
+        int slab = 0;
+        while (slab < limits.length && income > limits[slab]) {
+            slab++;
+        }
+        return income * rates[slab];
+    }
+}
@@ -0,0 +1,321 @@
+//client stub for the NIO transport: the same CalcService interface, without RMI
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CalcService over one TCP connection to a CalcNioServer
+ * Callers use it like the RMI stub. Requests are pipelined: each call
+ * writes its frame and waits only for its own answer, so any number of
+ * threads can share the connection, and the ...Async methods let a single
+ * thread keep many requests in flight. A background thread reads the
+ * answers and completes the matching calls.
+ * If the connection breaks, every waiting call and every later call fails
+ * with a RemoteException; connect again to recover.
+ */
+public class CalcNioClient implements CalcService, Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Writes a request body
+     */
+    private interface BodyWriter {
+        void write(ByteBuffer out);
+    }
+
+    /**
+     * Reads an answer body
+     */
+    private interface BodyReader<T> {
+        T read(ByteBuffer in);
+    }
+
+    /**
+     * A request waiting for its answer
+     */
+    private static final class Pending<T> {
+        final BodyReader<T> reader;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Pending(BodyReader<T> reader) {
+            this.reader = reader;
+        }
+
+        void complete(ByteBuffer body) {
+            try {
+                future.complete(reader.read(body));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(new RemoteException("Malformed answer from server", e));
+            }
+        }
+    }
+
+    private final String address;
+    private final SocketChannel channel;
+    private final Object writeLock = new Object();
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final Map<Integer, Pending<?>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private volatile RemoteException failure;
+
+    private CalcNioClient(String host, int port) throws IOException {
+        this.address = host + ":" + port;
+        this.channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Thread reader = new Thread(this::readLoop, "calc-nio-client-" + address);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Connect to a CalcNioServer
+     */
+    public static CalcNioClient connect(String host, int port) throws RemoteException {
+        try {
+            return new CalcNioClient(host, port);
+        } catch (IOException e) {
+            throw new RemoteException("Could not connect to " + host + ":" + port, e);
+        }
+    }
+
+    @Override
+    public double calculateTax(double income) throws RemoteException {
+        return await(calculateTaxAsync(income));
+    }
+
+    /**
+     * Send a calculateTax request without waiting for the answer
+     */
+    public CompletableFuture<Double> calculateTaxAsync(double income) {
+        return send(CalcWireProtocol.TAX, 8, out -> out.putDouble(income), ByteBuffer::getDouble);
+    }
+
+    @Override
+    public double calculateTax(double income, String regime) throws RemoteException {
+        return await(send(CalcWireProtocol.TAX_IN_REGIME, 8 + CalcWireProtocol.stringBytes(regime), out -> {
+            out.putDouble(income);
+            CalcWireProtocol.putString(out, regime);
+        }, ByteBuffer::getDouble));
+    }
+
+    @Override
+    public List<String> getTaxRegimes() throws RemoteException {
+        return await(send(CalcWireProtocol.TAX_REGIMES, 0, out -> { }, in -> {
+            int count = in.getInt();
+            List<String> names = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                names.add(CalcWireProtocol.getString(in));
+            }
+            return Collections.unmodifiableList(names);
+        }));
+    }
+
+    @Override
+    public double calculateCGPA(int[] marks) throws RemoteException {
+        return await(calculateCGPAAsync(marks));
+    }
+
+    /**
+     * Send a calculateCGPA request without waiting for the answer
+     */
+    public CompletableFuture<Double> calculateCGPAAsync(int[] marks) {
+        return send(CalcWireProtocol.CGPA, CalcWireProtocol.intArrayBytes(marks),
+            out -> CalcWireProtocol.putIntArray(out, marks), ByteBuffer::getDouble);
+    }
+
+    @Override
+    public boolean isEligibleToVote(int age) throws RemoteException {
+        return await(isEligibleToVoteAsync(age));
+    }
+
+    /**
+     * Send an isEligibleToVote request without waiting for the answer
+     */
+    public CompletableFuture<Boolean> isEligibleToVoteAsync(int age) {
+        return send(CalcWireProtocol.VOTE, 4, out -> out.putInt(age), in -> in.get() != 0);
+    }
+
+    @Override
+    public double[] calculateTaxBatch(double[] incomes) throws RemoteException {
+        return calculateTaxBatch(incomes, null);
+    }
+
+    @Override
+    public double[] calculateTaxBatch(double[] incomes, String regime) throws RemoteException {
+        int bytes = CalcWireProtocol.stringBytes(regime) + CalcWireProtocol.doubleArrayBytes(incomes);
+        return await(send(CalcWireProtocol.TAX_BATCH, bytes, out -> {
+            CalcWireProtocol.putString(out, regime);
+            CalcWireProtocol.putDoubleArray(out, incomes);
+        }, CalcWireProtocol::getDoubleArray));
+    }
+
+    @Override
+    public double[] calculateCGPABatch(int[] flatMarks) throws RemoteException {
+        return await(send(CalcWireProtocol.CGPA_BATCH, CalcWireProtocol.intArrayBytes(flatMarks),
+            out -> CalcWireProtocol.putIntArray(out, flatMarks), CalcWireProtocol::getDoubleArray));
+    }
+
+    @Override
+    public long[] isEligibleToVoteBatch(int[] ages) throws RemoteException {
+        return await(send(CalcWireProtocol.VOTE_BATCH, CalcWireProtocol.intArrayBytes(ages),
+            out -> CalcWireProtocol.putIntArray(out, ages), CalcWireProtocol::getLongArray));
+    }
+
+    @Override
+    public CalcStream openStream(int maxBufferedChunks) throws RemoteException {
+        throw new RemoteException("Streaming sessions are only available over RMI; use the batch methods instead.");
+    }
+
+    @Override
+    public void close() {
+        fail(new RemoteException("Connection to " + address + " closed"));
+    }
+
+    /**
+     * Write a request frame and register for its answer
+     */
+    private <T> CompletableFuture<T> send(byte op, int bodyBytes, BodyWriter body, BodyReader<T> reader) {
+        Pending<T> request = new Pending<>(reader);
+        RemoteException failed = failure;
+        if (failed != null) {
+            request.future.completeExceptionally(failed);
+            return request.future;
+        }
+        int frameBytes = CalcWireProtocol.HEADER_BYTES + bodyBytes;
+        if (frameBytes - 4 > CalcWireProtocol.MAX_FRAME_BYTES) {
+            request.future.completeExceptionally(new RemoteException("Request too large: " + frameBytes + " bytes"));
+            return request.future;
+        }
+        int id = nextId.incrementAndGet();
+        try {
+            synchronized (writeLock) {
+                if (writeBuffer.capacity() < frameBytes) {
+                    writeBuffer = ByteBuffer.allocateDirect(Math.max(frameBytes, 2 * writeBuffer.capacity()));
+                }
+                ByteBuffer out = writeBuffer;
+                out.clear();
+                out.putInt(frameBytes - 4).putInt(id).put(op);
+                try {
+                    body.write(out);
+                } catch (IllegalArgumentException e) {
+                    // Nothing was sent, e.g. a string too long for the wire
+                    request.future.completeExceptionally(new RemoteException("Request could not be encoded: "
+                        + e.getMessage(), e));
+                    return request.future;
+                }
+                // Registered only once the request is encoded, but before the
+                // server can see it
+                pending.put(id, request);
+                out.flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+        } catch (IOException e) {
+            fail(new RemoteException("Connection to " + address + " lost", e));
+        }
+        if (failure != null) {
+            // fail() may have run before this request was registered
+            pending.remove(id);
+            request.future.completeExceptionally(failure);
+        }
+        return request.future;
+    }
+
+    /**
+     * Read answers until the connection closes, completing waiting calls
+     */
+    private void readLoop() {
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int start = in.position();
+                    int length = in.getInt(start);
+                    if (length < CalcWireProtocol.HEADER_BYTES - 4 || length > CalcWireProtocol.MAX_FRAME_BYTES) {
+                        throw new IOException("Malformed frame from server");
+                    }
+                    if (in.remaining() < 4 + length) {
+                        if (4 + length > in.capacity()) {
+                            ByteBuffer bigger = ByteBuffer.allocate(Math.max(4 + length, 2 * in.capacity()));
+                            bigger.put(in);
+                            in = bigger;
+                            in.flip();
+                        }
+                        break;
+                    }
+                    Pending<?> request = pending.remove(in.getInt(start + 4));
+                    byte status = in.get(start + 8);
+                    ByteBuffer body = in.duplicate();
+                    body.position(start + CalcWireProtocol.HEADER_BYTES).limit(start + 4 + length);
+                    body = body.slice();
+                    in.position(start + 4 + length);
+                    if (request == null) {
+                        continue; // answer to a request that already failed
+                    }
+                    if (status == CalcWireProtocol.OK) {
+                        request.complete(body);
+                    } else {
+                        request.future.completeExceptionally(new RemoteException(CalcWireProtocol.getString(body)));
+                    }
+                }
+                in.compact();
+            }
+            fail(new RemoteException("Connection to " + address + " closed by the server"));
+        } catch (IOException e) {
+            fail(new RemoteException("Connection to " + address + " lost", e));
+        }
+    }
+
+    /**
+     * Close the connection and fail every waiting call; later calls fail at once
+     */
+    private void fail(RemoteException error) {
+        synchronized (pending) {
+            if (failure == null) {
+                failure = error;
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // already broken
+        }
+        for (Integer id : pending.keySet()) {
+            Pending<?> request = pending.remove(id);
+            if (request != null) {
+                request.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                throw (RemoteException) cause;
+            }
+            throw new RemoteException("Call failed: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the server");
+        }
+    }
+}
@@ -0,0 +1,333 @@
+//non-RMI transport: serves CalcService over plain TCP with java.nio
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Serves a CalcService over TCP with the framing of CalcWireProtocol
+ * The calculations take nanoseconds, so over RMI almost all of a call's
+ * time goes to stub dispatch, JRMP and object streams. This transport
+ * reads fixed-width frames straight from a ByteBuffer, runs the call on the
+ * I/O thread and writes the answer into the connection's output buffer.
+ * All the requests that arrive in one read are answered with one write, so
+ * a pipelining client (CalcNioClient) gets many answers per system call.
+ *
+ * One acceptor thread hands new connections round-robin to a few I/O
+ * threads, each with its own Selector. A connection whose unsent answers
+ * pile up (a client that sends but does not read) is not read from until
+ * they drain. Streaming sessions (openStream) are only offered over RMI.
+ */
+public class CalcNioServer implements Closeable {
+
+    // Initial size of each connection's buffers; they grow up to a frame's size
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // Stop reading from a connection while this much output is unsent
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+
+    private final CalcService service;
+    private final ServerSocketChannel acceptChannel;
+    private final List<IoLoop> loops = new ArrayList<>();
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    /**
+     * Start serving on the port (0 picks a free one)
+     * @param ioThreads number of I/O threads (selectors)
+     */
+    public CalcNioServer(CalcService service, int port, int ioThreads) throws IOException {
+        this.service = service;
+        this.acceptChannel = ServerSocketChannel.open();
+        acceptChannel.bind(new InetSocketAddress(port));
+        for (int i = 0; i < ioThreads; i++) {
+            IoLoop loop = new IoLoop(Selector.open());
+            Thread thread = new Thread(loop, "calc-nio-" + (i + 1));
+            thread.setDaemon(true);
+            loops.add(loop);
+            thread.start();
+        }
+        this.acceptor = new Thread(this::acceptLoop, "calc-nio-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return acceptChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        acceptChannel.close();
+        for (IoLoop loop : loops) {
+            loop.selector.wakeup();
+        }
+    }
+
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = acceptChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                loops.get(next++ % loops.size()).add(channel);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("NIO accept failed: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * One connection's buffers; only touched by its I/O thread
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);   // filling: position = end of data
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);  // filling: position = end of unsent data
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final class IoLoop implements Runnable {
+        final Selector selector;
+        final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void add(SocketChannel channel) {
+            added.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = added.poll()) != null) {
+                        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable() && !read(connection)) {
+                                close(key);
+                                continue;
+                            }
+                            flush(connection, key);
+                        } catch (IOException e) {
+                            close(key);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("NIO I/O loop stopped: " + e);
+                }
+            } finally {
+                // Closing the connections tells their clients the server is gone
+                for (SelectionKey key : selector.keys()) {
+                    close(key);
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // nothing left to release
+                }
+            }
+        }
+
+        private void close(SelectionKey key) {
+            key.cancel();
+            try {
+                key.channel().close();
+            } catch (IOException ignored) {
+                // already closing
+            }
+        }
+    }
+
+    /**
+     * Read what has arrived and answer every complete request in it
+     * @return false if the connection should be closed
+     */
+    private boolean read(Connection c) throws IOException {
+        if (c.channel.read(c.in) < 0) {
+            return false;
+        }
+        c.in.flip();
+        while (c.in.remaining() >= 4) {
+            int start = c.in.position();
+            int length = c.in.getInt(start);
+            if (length < CalcWireProtocol.HEADER_BYTES - 4 || length > CalcWireProtocol.MAX_FRAME_BYTES) {
+                return false; // not our protocol
+            }
+            if (c.in.remaining() < 4 + length) {
+                if (4 + length > c.in.capacity()) {
+                    c.in.compact();
+                    c.in = grow(c.in, 4 + length);
+                    return true;
+                }
+                break;
+            }
+            int id = c.in.getInt(start + 4);
+            byte op = c.in.get(start + 8);
+            ByteBuffer body = c.in.duplicate();
+            body.position(start + CalcWireProtocol.HEADER_BYTES).limit(start + 4 + length);
+            body = body.slice();
+            c.in.position(start + 4 + length);
+            answer(c, id, op, body);
+        }
+        c.in.compact();
+        return true;
+    }
+
+    /**
+     * Write as much unsent output as the socket takes, then choose what to
+     * wait for next
+     */
+    private void flush(Connection c, SelectionKey key) throws IOException {
+        if (c.out.position() > 0) {
+            c.out.flip();
+            c.channel.write(c.out);
+            c.out.compact();
+        }
+        int pending = c.out.position();
+        int interest = pending > 0 ? SelectionKey.OP_WRITE : 0;
+        if (pending < MAX_PENDING_OUTPUT) {
+            interest |= SelectionKey.OP_READ;
+        }
+        key.interestOps(interest);
+    }
+
+    /**
+     * Run one request and append its answer to the connection's output
+     */
+    private void answer(Connection c, int id, byte op, ByteBuffer body) {
+        int start = c.out.position();
+        try {
+            switch (op) {
+                case CalcWireProtocol.TAX: {
+                    double tax = service.calculateTax(body.getDouble());
+                    reserve(c, 8).putDouble(tax);
+                    break;
+                }
+                case CalcWireProtocol.TAX_IN_REGIME: {
+                    double income = body.getDouble();
+                    double tax = service.calculateTax(income, CalcWireProtocol.getString(body));
+                    reserve(c, 8).putDouble(tax);
+                    break;
+                }
+                case CalcWireProtocol.TAX_REGIMES: {
+                    List<String> names = service.getTaxRegimes();
+                    int bytes = 4;
+                    for (String name : names) {
+                        bytes += CalcWireProtocol.stringBytes(name);
+                    }
+                    ByteBuffer out = reserve(c, bytes);
+                    out.putInt(names.size());
+                    for (String name : names) {
+                        CalcWireProtocol.putString(out, name);
+                    }
+                    break;
+                }
+                case CalcWireProtocol.CGPA: {
+                    double cgpa = service.calculateCGPA(CalcWireProtocol.getIntArray(body));
+                    reserve(c, 8).putDouble(cgpa);
+                    break;
+                }
+                case CalcWireProtocol.VOTE: {
+                    boolean eligible = service.isEligibleToVote(body.getInt());
+                    reserve(c, 1).put((byte) (eligible ? 1 : 0));
+                    break;
+                }
+                case CalcWireProtocol.TAX_BATCH: {
+                    String regime = CalcWireProtocol.getString(body);
+                    double[] taxes = service.calculateTaxBatch(CalcWireProtocol.getDoubleArray(body), regime);
+                    CalcWireProtocol.putDoubleArray(reserve(c, CalcWireProtocol.doubleArrayBytes(taxes)), taxes);
+                    break;
+                }
+                case CalcWireProtocol.CGPA_BATCH: {
+                    double[] cgpas = service.calculateCGPABatch(CalcWireProtocol.getIntArray(body));
+                    CalcWireProtocol.putDoubleArray(reserve(c, CalcWireProtocol.doubleArrayBytes(cgpas)), cgpas);
+                    break;
+                }
+                case CalcWireProtocol.VOTE_BATCH: {
+                    long[] bits = service.isEligibleToVoteBatch(CalcWireProtocol.getIntArray(body));
+                    CalcWireProtocol.putLongArray(reserve(c, CalcWireProtocol.longArrayBytes(bits)), bits);
+                    break;
+                }
+                default:
+                    throw new RemoteException("Unknown operation " + op);
+            }
+            finishFrame(c.out, start, id, CalcWireProtocol.OK);
+        } catch (RemoteException | RuntimeException e) {
+            c.out.position(start);
+            String message = e instanceof BufferUnderflowException ? "Malformed request"
+                : e.getMessage() != null ? e.getMessage() : e.toString();
+            if (message.length() > 1000) {
+                message = message.substring(0, 1000);
+            }
+            CalcWireProtocol.putString(reserve(c, CalcWireProtocol.stringBytes(message)), message);
+            finishFrame(c.out, start, id, CalcWireProtocol.ERROR);
+        }
+    }
+
+    /**
+     * Make room for the header (the first time) and bodyBytes more bytes
+     * @return the output buffer, positioned after the header
+     */
+    private static ByteBuffer reserve(Connection c, int bodyBytes) {
+        int start = c.out.position();
+        if (c.out.remaining() < CalcWireProtocol.HEADER_BYTES + bodyBytes) {
+            c.out = grow(c.out, start + CalcWireProtocol.HEADER_BYTES + bodyBytes);
+        }
+        c.out.position(start + CalcWireProtocol.HEADER_BYTES);
+        return c.out;
+    }
+
+    /**
+     * Fill in the header of the frame that starts at start; the body is
+     * written by then, unless the frame has no body at all
+     */
+    private static void finishFrame(ByteBuffer out, int start, int id, byte status) {
+        if (out.position() < start + CalcWireProtocol.HEADER_BYTES) {
+            out.position(start + CalcWireProtocol.HEADER_BYTES);
+        }
+        out.putInt(start, out.position() - start - 4);
+        out.putInt(start + 4, id);
+        out.put(start + 8, status);
+    }
+
+    /**
+     * @return a buffer holding the same data (up to position) with room for
+     *         at least minCapacity bytes
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(minCapacity, 2 * buffer.capacity()));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+}
@@ -2,10 +2,12 @@
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 public interface CalcService extends Remote {
     /**
-     * Calculate tax according to:
+     * Calculate tax with the server's default regime, which unless
+     * configured otherwise is:
      * ≤ 250000 -> 0
      * 250001 - 500000 -> 5% on income (as a value)
      * > 500000 -> 10% on income (as a value)
@@ -15,6 +17,20 @@ public interface CalcService extends Remote {
      */
     double calculateTax(double income) throws RemoteException;
 
+    /**
+     * Calculate tax with a named regime from the server's tax configuration.
+     *
+     * @param income Income in rupees
+     * @param regime regime name, see getTaxRegimes(); null selects the default
+     * @return tax amount (in rupees)
+     */
+    double calculateTax(double income, String regime) throws RemoteException;
+
+    /**
+     * @return names of the tax regimes the server can apply
+     */
+    List<String> getTaxRegimes() throws RemoteException;
+
     /**
      * Calculate CGPA from marks of 5 subjects.
      * CGPA = (totalMarks / maxMarks) * 10, where maxMarks = 500.
@@ -31,4 +47,54 @@ public interface CalcService extends Remote {
      * @return true if eligible, otherwise false
      */
     boolean isEligibleToVote(int age) throws RemoteException;
+
+    /**
+     * Calculate tax for many incomes in one remote call, using the same
+     * rules as calculateTax.
+     *
+     * @param incomes incomes in rupees
+     * @return tax amounts, result[i] belongs to incomes[i]
+     */
+    double[] calculateTaxBatch(double[] incomes) throws RemoteException;
+
+    /**
+     * Calculate tax for many incomes in one remote call with a named regime.
+     *
+     * @param incomes incomes in rupees
+     * @param regime regime name, see getTaxRegimes(); null selects the default
+     * @return tax amounts, result[i] belongs to incomes[i]
+     */
+    double[] calculateTaxBatch(double[] incomes, String regime) throws RemoteException;
+
+    /**
+     * Calculate CGPA for many students in one remote call.
+     * Marks are passed flat with a stride of 5: student i's marks are
+     * flatMarks[5*i] .. flatMarks[5*i + 4].
+     * A student with a mark outside 0-100 gets NaN instead of failing the
+     * whole batch.
+     *
+     * @param flatMarks marks of all students, length must be a multiple of 5
+     * @return CGPA per student, or NaN for students with invalid marks
+     */
+    double[] calculateCGPABatch(int[] flatMarks) throws RemoteException;
+
+    /**
+     * Check voting eligibility for many ages in one remote call.
+     * The answer is packed as a bitset: age i is eligible if bit (i % 64) of
+     * result[i / 64] is set (the layout of java.util.BitSet.toLongArray()).
+     *
+     * @param ages ages in years
+     * @return packed eligibility bits
+     */
+    long[] isEligibleToVoteBatch(int[] ages) throws RemoteException;
+
+    /**
+     * Open a streaming session for datasets too large to send as one batch.
+     * See CalcStream for how chunks are pushed and results polled.
+     *
+     * @param maxBufferedChunks how many chunks the session may buffer in each
+     *                          direction before push calls block (1-1024)
+     * @return the new session
+     */
+    CalcStream openStream(int maxBufferedChunks) throws RemoteException;
 }
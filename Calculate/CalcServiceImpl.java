@@ -2,23 +2,93 @@
 
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.RemoteException;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Results can be memoized in MemoCache tables, one for CGPA (keyed on the
+ * five marks packed 7 bits each) and one per tax regime (keyed on the
+ * income's bits). This is off unless -Dcalc.memo.entries=N gives the slots
+ * per table; see Benchmarks/MemoBenchmark.java for when it pays.
+ *
+ * Streaming sessions share a small pool of workers, and at most
+ * -Dcalc.stream.maxSessions (default 64) are open at a time; more are
+ * turned away with a ServerOverloadedException. -Dcalc.stream.workers sets
+ * the pool size (default: one per processor).
+ */
 public class CalcServiceImpl extends UnicastRemoteObject implements CalcService {
 
+    // Slots per memo table; 0, the default, turns memoization off
+    static final String MEMO_ENTRIES_PROPERTY = "calc.memo.entries";
+
+    private final TaxRuleEngine taxRules;
+    private final MemoCache cgpaMemo;                 // null when memoization is off
+    private final Map<TaxRegime, MemoCache> taxMemos; // null when memoization is off
+
+    private final int maxStreams;
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final ExecutorService streamWorkers;
+    // What stream sessions call to calculate; this unless setStreamCalls was called
+    private volatile CalcService streamCalls = this;
+
     protected CalcServiceImpl() throws RemoteException {
+        this(loadTaxRules());
+    }
+
+    protected CalcServiceImpl(TaxRuleEngine taxRules) throws RemoteException {
+        this(taxRules, Integer.getInteger(MEMO_ENTRIES_PROPERTY, 0));
+    }
+
+    /**
+     * @param memoEntries slots per memo table, or 0 to compute every result
+     */
+    protected CalcServiceImpl(TaxRuleEngine taxRules, int memoEntries) throws RemoteException {
         super();
+        this.taxRules = taxRules;
+        this.maxStreams = Integer.getInteger("calc.stream.maxSessions", 64);
+        int workers = Integer.getInteger("calc.stream.workers", Runtime.getRuntime().availableProcessors());
+        AtomicInteger count = new AtomicInteger();
+        // A session has at most one task queued or running, so the queue is
+        // bounded by maxStreams
+        this.streamWorkers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "calc-stream-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        if (memoEntries > 0) {
+            this.cgpaMemo = new MemoCache("cgpa", memoEntries).register();
+            this.taxMemos = new IdentityHashMap<>();
+            for (String name : taxRules.regimeNames()) {
+                TaxRegime regime = taxRules.regime(name);
+                taxMemos.put(regime, new MemoCache("tax." + name, memoEntries).register());
+            }
+        } else {
+            this.cgpaMemo = null;
+            this.taxMemos = null;
+        }
     }
 
     @Override
     public double calculateTax(double income) throws RemoteException {
-        if (income <= 250000) {
-            return 0.0;
-        } else if (income <= 500000) {
-            return income * 0.05; // 5%
-        } else {
-            return income * 0.10; // 10%
-        }
+        return taxOf(taxRules.defaultRegime(), income);
+    }
+
+    @Override
+    public double calculateTax(double income, String regime) throws RemoteException {
+        return taxOf(regimeFor(regime), income);
+    }
+
+    @Override
+    public List<String> getTaxRegimes() throws RemoteException {
+        return taxRules.regimeNames();
     }
 
     @Override
@@ -26,16 +96,12 @@ public class CalcServiceImpl extends UnicastRemoteObject implements CalcService
         if (marks == null || marks.length != 5) {
             throw new RemoteException("Marks array must have exactly 5 elements.");
         }
-        int total = 0;
         for (int m : marks) {
             if (m < 0 || m > 100) {
                 throw new RemoteException("Each mark must be between 0 and 100. Found: " + m);
             }
-            total += m;
         }
-        double cgpa = ((double) total / 500.0) * 10.0;
-        // round to two decimal places for nicer display
-        return Math.round(cgpa * 100.0) / 100.0;
+        return cgpaOf(marks, 0);
     }
 
     @Override
@@ -43,6 +109,167 @@ public class CalcServiceImpl extends UnicastRemoteObject implements CalcService
         return age >= 18;
     }
 
+    @Override
+    public double[] calculateTaxBatch(double[] incomes) throws RemoteException {
+        return calculateTaxBatch(incomes, null);
+    }
+
+    @Override
+    public double[] calculateTaxBatch(double[] incomes, String regime) throws RemoteException {
+        if (incomes == null) {
+            throw new RemoteException("Incomes array must not be null.");
+        }
+        TaxRegime rules = regimeFor(regime);
+        double[] taxes = new double[incomes.length];
+        if (taxMemos == null) {
+            for (int i = 0; i < incomes.length; i++) {
+                taxes[i] = rules.taxFor(incomes[i]);
+            }
+        } else {
+            for (int i = 0; i < incomes.length; i++) {
+                taxes[i] = taxOf(rules, incomes[i]);
+            }
+        }
+        return taxes;
+    }
+
+    @Override
+    public double[] calculateCGPABatch(int[] flatMarks) throws RemoteException {
+        if (flatMarks == null || flatMarks.length % 5 != 0) {
+            throw new RemoteException("Marks array length must be a multiple of 5.");
+        }
+        double[] cgpas = new double[flatMarks.length / 5];
+        for (int i = 0; i < cgpas.length; i++) {
+            cgpas[i] = cgpaOf(flatMarks, i * 5);
+        }
+        return cgpas;
+    }
+
+    @Override
+    public long[] isEligibleToVoteBatch(int[] ages) throws RemoteException {
+        if (ages == null) {
+            throw new RemoteException("Ages array must not be null.");
+        }
+        long[] bits = new long[(ages.length + 63) >>> 6];
+        for (int i = 0; i < ages.length; i++) {
+            if (ages[i] >= 18) {
+                bits[i >>> 6] |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public CalcStream openStream(int maxBufferedChunks) throws RemoteException {
+        if (maxBufferedChunks < 1 || maxBufferedChunks > 1024) {
+            throw new RemoteException("Buffered chunks must be between 1 and 1024.");
+        }
+        int open;
+        do {
+            open = openStreams.get();
+            if (open >= maxStreams) {
+                throw new ServerOverloadedException("Already " + maxStreams
+                    + " streams open, try again later.");
+            }
+        } while (!openStreams.compareAndSet(open, open + 1));
+        try {
+            return new CalcStreamImpl(this, streamWorkers, maxBufferedChunks);
+        } catch (RemoteException | RuntimeException e) {
+            openStreams.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Have stream sessions calculate through service, e.g. the metrics and
+     * dispatcher proxy the server exports, so their calls are counted and
+     * limited like any other
+     */
+    public void setStreamCalls(CalcService service) {
+        this.streamCalls = service;
+    }
+
+    CalcService getStreamCalls() {
+        return streamCalls;
+    }
+
+    /**
+     * Called once by each session as it closes
+     */
+    void streamClosed() {
+        openStreams.decrementAndGet();
+    }
+
+    private TaxRegime regimeFor(String regime) throws RemoteException {
+        try {
+            return taxRules.regime(regime);
+        } catch (IllegalArgumentException e) {
+            throw new RemoteException(e.getMessage());
+        }
+    }
+
+    private static TaxRuleEngine loadTaxRules() throws RemoteException {
+        try {
+            return TaxRuleEngine.load();
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RemoteException("Could not load tax regimes: " + e.getMessage(), e);
+        }
+    }
+
+    private double taxOf(TaxRegime regime, double income) {
+        if (taxMemos == null) {
+            return regime.taxFor(income);
+        }
+        MemoCache memo = taxMemos.get(regime);
+        long key = Double.doubleToRawLongBits(income);
+        double tax = memo.get(key);
+        if (Double.isNaN(tax)) {
+            tax = regime.taxFor(income);
+            memo.put(key, tax);
+        }
+        return tax;
+    }
+
+    /**
+     * cgpaFor through the memo table, when there is one
+     */
+    private double cgpaOf(int[] marks, int offset) {
+        if (cgpaMemo == null) {
+            return cgpaFor(marks, offset);
+        }
+        long key = 0;
+        for (int i = offset; i < offset + 5; i++) {
+            int m = marks[i];
+            if (m < 0 || m > 100) {
+                return Double.NaN;
+            }
+            key = key << 7 | m;
+        }
+        double cgpa = cgpaMemo.get(key);
+        if (Double.isNaN(cgpa)) {
+            cgpa = cgpaFor(marks, offset);
+            cgpaMemo.put(key, cgpa);
+        }
+        return cgpa;
+    }
+
+    /**
+     * CGPA of the 5 marks starting at offset, or NaN if any mark is outside 0-100
+     */
+    static double cgpaFor(int[] marks, int offset) {
+        int total = 0;
+        for (int i = offset; i < offset + 5; i++) {
+            int m = marks[i];
+            if (m < 0 || m > 100) {
+                return Double.NaN;
+            }
+            total += m;
+        }
+        double cgpa = ((double) total / 500.0) * 10.0;
+        // round to two decimal places for nicer display
+        return Math.round(cgpa * 100.0) / 100.0;
+    }
+
     // Optional: for quick sanity logging
     @Override
     public String toString() {
@@ -0,0 +1,52 @@
+//remote interface for a streaming session
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * A streaming calculation session opened with CalcService.openStream.
+ * The client pushes chunks of input from one thread and polls result chunks
+ * from another, so data flows in both directions at once. The session only
+ * buffers a fixed number of chunks: when that many results are waiting to be
+ * polled, push calls block until the client catches up (backpressure).
+ * Results come back in the same order as the chunks were pushed.
+ */
+public interface CalcStream extends Remote {
+    /**
+     * Queue a chunk of incomes for tax calculation.
+     * Blocks while the session's input buffer is full.
+     *
+     * @param incomes incomes in rupees
+     * @return sequence number of the chunk (0, 1, 2, ...)
+     */
+    long pushTax(double[] incomes) throws RemoteException;
+
+    /**
+     * Queue a chunk of marks for CGPA calculation, with a stride of 5 as in
+     * CalcService.calculateCGPABatch.
+     * Blocks while the session's input buffer is full.
+     *
+     * @param flatMarks marks of all students, length must be a multiple of 5
+     * @return sequence number of the chunk
+     */
+    long pushMarks(int[] flatMarks) throws RemoteException;
+
+    /**
+     * Wait for the next result chunk.
+     *
+     * @param timeoutMillis maximum time to wait
+     * @return the next chunk, a chunk with isEndOfStream() set once finish()
+     *         was called and every result was returned, or null on timeout
+     */
+    ResultChunk poll(long timeoutMillis) throws RemoteException;
+
+    /**
+     * Signal that no more chunks will be pushed.
+     */
+    void finish() throws RemoteException;
+
+    /**
+     * Abort the session and release its resources.
+     */
+    void close() throws RemoteException;
+}
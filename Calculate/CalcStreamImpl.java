@@ -0,0 +1,218 @@
+//server-side implementation of a streaming session
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.rmi.server.Unreferenced;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server side of a CalcStream session
+ * A session has no thread of its own: whenever there is input and room for
+ * its result, a task on the service's shared stream workers works through
+ * the input, at most one task per session at a time. The calculations go
+ * through the service's stream calls (see CalcServiceImpl.setStreamCalls),
+ * so they are counted and bounded like any other call.
+ */
+public class CalcStreamImpl extends UnicastRemoteObject implements CalcStream, Unreferenced {
+
+    private static final long serialVersionUID = 1L;
+
+    // Pause before trying a calculation again that was turned away as overload
+    private static final long OVERLOAD_RETRY_MILLIS = 10;
+
+    // Marks the end of input in the input queue
+    private static final Object END = new Object();
+
+    // Put in the output queue after the last result when processing fails,
+    // so a waiting poll returns at once
+    private static final ResultChunk FAILED = new ResultChunk(-1, new double[0], false);
+
+    private final CalcServiceImpl service;
+    private final Executor workers;
+    private final BlockingQueue<Object> input;
+    private final BlockingQueue<ResultChunk> output;
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Set while a task is processing this session's input
+    private final AtomicBoolean processing = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean finished;
+    private volatile Exception failure;
+    // Only touched by the task in progress
+    private long resultSequence;
+
+    protected CalcStreamImpl(CalcServiceImpl service, Executor workers, int maxBufferedChunks)
+            throws RemoteException {
+        super();
+        this.service = service;
+        this.workers = workers;
+        this.input = new ArrayBlockingQueue<>(maxBufferedChunks);
+        // One extra slot so the end-of-stream marker always fits
+        this.output = new ArrayBlockingQueue<>(maxBufferedChunks + 1);
+    }
+
+    @Override
+    public long pushTax(double[] incomes) throws RemoteException {
+        if (incomes == null) {
+            throw new RemoteException("Incomes array must not be null.");
+        }
+        return push(incomes);
+    }
+
+    @Override
+    public long pushMarks(int[] flatMarks) throws RemoteException {
+        if (flatMarks == null || flatMarks.length % 5 != 0) {
+            throw new RemoteException("Marks array length must be a multiple of 5.");
+        }
+        return push(flatMarks);
+    }
+
+    @Override
+    public ResultChunk poll(long timeoutMillis) throws RemoteException {
+        if (closed.get()) {
+            checkOpen();
+        }
+        try {
+            // Results computed before a failure are still handed out, without
+            // waiting; the failure is raised once they are all taken
+            ResultChunk chunk = output.poll(failure != null ? 0 : timeoutMillis, TimeUnit.MILLISECONDS);
+            if (chunk == null || chunk == FAILED) {
+                checkOpen();
+                return null;
+            }
+            if (chunk.isEndOfStream()) {
+                close();
+            } else {
+                schedule(); // there is room for another result
+            }
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for results.", e);
+        }
+    }
+
+    @Override
+    public synchronized void finish() throws RemoteException {
+        checkOpen();
+        if (!finished) {
+            finished = true;
+            put(END);
+            schedule();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        input.clear();
+        output.clear();
+        service.streamClosed();
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // already unexported
+        }
+    }
+
+    /**
+     * Called by the RMI runtime when no client holds a reference any more,
+     * e.g. because the client crashed; frees the session
+     */
+    @Override
+    public void unreferenced() {
+        close();
+    }
+
+    private synchronized long push(Object chunk) throws RemoteException {
+        checkOpen();
+        if (finished) {
+            throw new RemoteException("Stream already finished.");
+        }
+        put(chunk);
+        schedule();
+        return nextSequence.getAndIncrement();
+    }
+
+    private void put(Object item) throws RemoteException {
+        try {
+            while (!input.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                checkOpen();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for buffer space.", e);
+        }
+    }
+
+    private void checkOpen() throws RemoteException {
+        if (failure != null) {
+            throw new RemoteException("Stream failed: " + failure.getMessage(), failure);
+        }
+        if (closed.get()) {
+            throw new RemoteException("Stream is closed.");
+        }
+    }
+
+    /**
+     * Start a task for this session unless one is running
+     */
+    private void schedule() {
+        if (!closed.get() && failure == null && processing.compareAndSet(false, true)) {
+            workers.execute(this::process);
+        }
+    }
+
+    /**
+     * Work through the input while each result has room in the output, so
+     * a client that does not poll never holds up a shared worker
+     */
+    private void process() {
+        try {
+            while (!closed.get() && output.remainingCapacity() > 0) {
+                Object chunk = input.poll();
+                if (chunk == null) {
+                    break;
+                }
+                if (chunk == END) {
+                    output.offer(new ResultChunk(resultSequence, new double[0], true));
+                    return;
+                }
+                output.offer(new ResultChunk(resultSequence++, calculate(chunk), false));
+            }
+        } catch (Exception e) {
+            failure = e;
+            output.offer(FAILED);
+            return;
+        } finally {
+            processing.set(false);
+        }
+        // Input or room may have arrived after the loop looked
+        if (!input.isEmpty() && output.remainingCapacity() > 0) {
+            schedule();
+        }
+    }
+
+    private double[] calculate(Object chunk) throws RemoteException, InterruptedException {
+        CalcService calls = service.getStreamCalls();
+        while (true) {
+            try {
+                return chunk instanceof double[]
+                    ? calls.calculateTaxBatch((double[]) chunk)
+                    : calls.calculateCGPABatch((int[]) chunk);
+            } catch (ServerOverloadedException e) {
+                if (closed.get()) {
+                    throw e;
+                }
+                Thread.sleep(OVERLOAD_RETRY_MILLIS);
+            }
+        }
+    }
+}
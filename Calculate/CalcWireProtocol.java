@@ -0,0 +1,146 @@
+//frame layout shared by the NIO server and client
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary framing of the NIO transport for CalcService
+ * Every frame starts with the same fixed-width header (big-endian):
+ *   int   length of the rest of the frame (request id, code and body)
+ *   int   request id, chosen by the client and echoed in the response
+ *   byte  operation code in a request, status in a response
+ * The body holds fixed-width numbers. Arrays are an int count followed by
+ * the elements; strings are a short byte count followed by UTF-8 bytes.
+ * A count of -1 stands for null, so the server sees the same arguments as
+ * over RMI. The server answers the requests of a connection in the order
+ * they arrive, so a client can send many before reading any answer.
+ */
+final class CalcWireProtocol {
+
+    // length + request id + code
+    static final int HEADER_BYTES = 9;
+    // Largest frame either side accepts, to bound buffer growth
+    static final int MAX_FRAME_BYTES = 16 << 20;
+
+    // Operation codes
+    static final byte TAX = 1;
+    static final byte TAX_IN_REGIME = 2;
+    static final byte TAX_REGIMES = 3;
+    static final byte CGPA = 4;
+    static final byte VOTE = 5;
+    static final byte TAX_BATCH = 6;
+    static final byte CGPA_BATCH = 7;
+    static final byte VOTE_BATCH = 8;
+
+    // Response status; an ERROR body is the message as a string
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private CalcWireProtocol() {
+    }
+
+    static int stringBytes(String s) {
+        return 2 + (s == null ? 0 : s.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    static void putString(ByteBuffer out, String s) {
+        if (s == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("String too long for the wire: " + bytes.length + " bytes");
+        }
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes); // throws BufferUnderflowException if the frame is too short
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int intArrayBytes(int[] values) {
+        return 4 + (values == null ? 0 : 4 * values.length);
+    }
+
+    static void putIntArray(ByteBuffer out, int[] values) {
+        if (values == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(values.length);
+        out.asIntBuffer().put(values);
+        out.position(out.position() + 4 * values.length);
+    }
+
+    static int[] getIntArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining() / 4) {
+            throw new BufferUnderflowException();
+        }
+        int[] values = new int[length];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * length);
+        return values;
+    }
+
+    static int doubleArrayBytes(double[] values) {
+        return 4 + (values == null ? 0 : 8 * values.length);
+    }
+
+    static void putDoubleArray(ByteBuffer out, double[] values) {
+        if (values == null) {
+            out.putInt(-1);
+            return;
+        }
+        out.putInt(values.length);
+        out.asDoubleBuffer().put(values);
+        out.position(out.position() + 8 * values.length);
+    }
+
+    static double[] getDoubleArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining() / 8) {
+            throw new BufferUnderflowException();
+        }
+        double[] values = new double[length];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * length);
+        return values;
+    }
+
+    static int longArrayBytes(long[] values) {
+        return 4 + 8 * values.length;
+    }
+
+    static void putLongArray(ByteBuffer out, long[] values) {
+        out.putInt(values.length);
+        out.asLongBuffer().put(values);
+        out.position(out.position() + 8 * values.length);
+    }
+
+    static long[] getLongArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining() / 8) {
+            throw new BufferUnderflowException();
+        }
+        long[] values = new long[length];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+}
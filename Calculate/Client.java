@@ -1,11 +1,14 @@
-import java.rmi.Naming;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class Client {
     public static void main(String[] args) {
         try {
-            String name = "rmi://localhost/CalcService";
-            CalcService service = (CalcService) Naming.lookup(name);
+            // -Dcalc.servers=host:port,... lists fallback servers; calls survive a
+            // server restart and move to the next server (see Common/StubManager.java)
+            String servers = System.getProperty("calc.servers", "localhost:1099");
+            CalcService service = StubManager.connect(CalcService.class, "CalcService",
+                Arrays.asList(servers.split(",")));
 
             Scanner sc = new Scanner(System.in);
             while (true) {
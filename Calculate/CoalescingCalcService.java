@@ -0,0 +1,324 @@
+//client-side proxy that merges concurrent single calls into batch calls
+
+import java.io.Closeable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CalcService that sends concurrent single calls as one batch call
+ * calculateTax, calculateCGPA and isEligibleToVote do not go to the server
+ * one by one. The first call of a batch opens a window of windowMicros;
+ * every call of the same kind that arrives during the window joins the
+ * batch, which is then sent with calculateTaxBatch, calculateCGPABatch or
+ * isEligibleToVoteBatch. A batch that reaches maxBatch calls is sent at
+ * once by the thread that filled it. Each caller blocks until the batch
+ * returns and gets its own result, so call sites do not change.
+ *
+ * A single caller gains nothing and waits up to one window longer per
+ * call; the proxy pays off when many threads call at the same time.
+ * Taxes are batched per regime. A CGPA that the batch reports as invalid
+ * (NaN) is asked again with calculateCGPA, so the caller gets the server's
+ * own error. If a batch call fails, every call in it fails with that error.
+ * The other methods go straight to the wrapped service.
+ */
+public class CoalescingCalcService implements CalcService, Closeable {
+
+    // Named regimes batched separately; calls for further names are not batched
+    private static final int MAX_REGIMES = 64;
+
+    /**
+     * A single call waiting for its batch
+     */
+    private static final class Pending<I, O> {
+        final I input;
+        final CompletableFuture<O> result = new CompletableFuture<>();
+
+        Pending(I input) {
+            this.input = input;
+        }
+    }
+
+    /**
+     * Sends a batch as one remote call and completes each of its calls
+     */
+    private interface BatchCall<I, O> {
+        void send(List<Pending<I, O>> batch) throws RemoteException;
+    }
+
+    private final CalcService delegate;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("calc-coalesce-timer"));
+    private final ExecutorService senders = Executors.newCachedThreadPool(daemon("calc-coalesce-send"));
+    private final Batcher<Double, Double> defaultTax;
+    private final Map<String, Batcher<Double, Double>> regimeTax = new ConcurrentHashMap<>();
+    private final Batcher<int[], Double> cgpa;
+    private final Batcher<Integer, Boolean> vote;
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedCalls = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param windowMicros how long a batch stays open for more calls
+     * @param maxBatch most calls per batch (at least 1)
+     */
+    public CoalescingCalcService(CalcService delegate, long windowMicros, int maxBatch) {
+        if (windowMicros < 0 || maxBatch < 1) {
+            throw new IllegalArgumentException("Window must be >= 0 and batch size >= 1");
+        }
+        this.delegate = delegate;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+        this.defaultTax = taxBatcher(null);
+        this.cgpa = new Batcher<>(batch -> {
+            int[] flatMarks = new int[5 * batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                System.arraycopy(batch.get(i).input, 0, flatMarks, 5 * i, 5);
+            }
+            double[] cgpas = delegate.calculateCGPABatch(flatMarks);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(cgpas[i]);
+            }
+        });
+        this.vote = new Batcher<>(batch -> {
+            int[] ages = new int[batch.size()];
+            for (int i = 0; i < ages.length; i++) {
+                ages[i] = batch.get(i).input;
+            }
+            long[] bits = delegate.isEligibleToVoteBatch(ages);
+            for (int i = 0; i < ages.length; i++) {
+                batch.get(i).result.complete((bits[i >>> 6] & (1L << i)) != 0);
+            }
+        });
+    }
+
+    @Override
+    public double calculateTax(double income) throws RemoteException {
+        if (closed) {
+            return delegate.calculateTax(income);
+        }
+        return await(defaultTax.submit(income));
+    }
+
+    @Override
+    public double calculateTax(double income, String regime) throws RemoteException {
+        if (regime == null) {
+            return calculateTax(income);
+        }
+        Batcher<Double, Double> batcher = regimeTax.get(regime);
+        if (batcher == null && regimeTax.size() < MAX_REGIMES) {
+            batcher = regimeTax.computeIfAbsent(regime, this::taxBatcher);
+        }
+        if (batcher == null || closed) {
+            return delegate.calculateTax(income, regime);
+        }
+        return await(batcher.submit(income));
+    }
+
+    @Override
+    public List<String> getTaxRegimes() throws RemoteException {
+        return delegate.getTaxRegimes();
+    }
+
+    @Override
+    public double calculateCGPA(int[] marks) throws RemoteException {
+        if (marks == null || marks.length != 5 || closed) {
+            return delegate.calculateCGPA(marks);
+        }
+        double result = await(cgpa.submit(marks));
+        if (Double.isNaN(result)) {
+            return delegate.calculateCGPA(marks); // the server explains what is wrong
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEligibleToVote(int age) throws RemoteException {
+        if (closed) {
+            return delegate.isEligibleToVote(age);
+        }
+        return await(vote.submit(age));
+    }
+
+    @Override
+    public double[] calculateTaxBatch(double[] incomes) throws RemoteException {
+        return delegate.calculateTaxBatch(incomes);
+    }
+
+    @Override
+    public double[] calculateTaxBatch(double[] incomes, String regime) throws RemoteException {
+        return delegate.calculateTaxBatch(incomes, regime);
+    }
+
+    @Override
+    public double[] calculateCGPABatch(int[] flatMarks) throws RemoteException {
+        return delegate.calculateCGPABatch(flatMarks);
+    }
+
+    @Override
+    public long[] isEligibleToVoteBatch(int[] ages) throws RemoteException {
+        return delegate.isEligibleToVoteBatch(ages);
+    }
+
+    @Override
+    public CalcStream openStream(int maxBufferedChunks) throws RemoteException {
+        return delegate.openStream(maxBufferedChunks);
+    }
+
+    /**
+     * @return number of batch calls sent so far
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return number of single calls sent as part of a batch so far
+     */
+    public long getBatchedCallCount() {
+        return batchedCalls.sum();
+    }
+
+    /**
+     * Send the open batches and stop batching; later calls go straight to
+     * the wrapped service
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdown(); // flushes already scheduled still run
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        senders.shutdown();
+    }
+
+    private Batcher<Double, Double> taxBatcher(String regime) {
+        return new Batcher<>(batch -> {
+            double[] incomes = new double[batch.size()];
+            for (int i = 0; i < incomes.length; i++) {
+                incomes[i] = batch.get(i).input;
+            }
+            double[] taxes = delegate.calculateTaxBatch(incomes, regime);
+            for (int i = 0; i < incomes.length; i++) {
+                batch.get(i).result.complete(taxes[i]);
+            }
+        });
+    }
+
+    /**
+     * Collects the calls of one kind into batches
+     */
+    private final class Batcher<I, O> {
+        private final BatchCall<I, O> call;
+        private List<Pending<I, O>> open; // guarded by this; null when no batch is open
+
+        Batcher(BatchCall<I, O> call) {
+            this.call = call;
+        }
+
+        CompletableFuture<O> submit(I input) {
+            Pending<I, O> pending = new Pending<>(input);
+            List<Pending<I, O>> full = null;
+            boolean maxed = false;
+            synchronized (this) {
+                if (open == null) {
+                    open = new ArrayList<>();
+                    if (maxBatch > 1 && !schedule(open)) {
+                        maxed = true; // closed meanwhile: send this call on its own
+                    }
+                }
+                open.add(pending);
+                if (maxed || open.size() >= maxBatch) {
+                    full = open;
+                    open = null;
+                }
+            }
+            if (full != null) {
+                send(full);
+            }
+            return pending.result;
+        }
+
+        /**
+         * @return false if the proxy was closed and no flush can be scheduled
+         */
+        private boolean schedule(List<Pending<I, O>> batch) {
+            try {
+                timer.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+
+        /**
+         * End of the window: send the batch unless it was sent when it filled up
+         */
+        private void flush(List<Pending<I, O>> batch) {
+            synchronized (this) {
+                if (open != batch) {
+                    return;
+                }
+                open = null;
+            }
+            try {
+                senders.execute(() -> send(batch));
+            } catch (RejectedExecutionException e) {
+                send(batch); // closing
+            }
+        }
+
+        private void send(List<Pending<I, O>> batch) {
+            batches.increment();
+            batchedCalls.add(batch.size());
+            try {
+                call.send(batch);
+            } catch (RemoteException | RuntimeException e) {
+                RemoteException error = e instanceof RemoteException ? (RemoteException) e
+                    : new RemoteException("Batch call failed", e);
+                for (Pending<I, O> pending : batch) {
+                    pending.result.completeExceptionally(error);
+                }
+            }
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RemoteException) {
+                // Shared by every call in the batch, so wrap it to give this caller its own trace
+                throw new RemoteException("Batched call failed", cause);
+            }
+            throw new RemoteException("Batched call failed: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the batch");
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
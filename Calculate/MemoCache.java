@@ -0,0 +1,159 @@
+//bounded memo table for calculations keyed by a packed long
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Fixed-size cache from a long key to a double result, for calculations
+ * whose inputs pack into 64 bits (a mark vector, the bits of an income)
+ * Keys and results are stored unboxed in one AtomicLongArray, three longs
+ * per slot: a sequence number, the key and the result. A key can live in
+ * only one slot, chosen by hashing it, so the cache never holds more than
+ * its capacity and a new key simply replaces the one in its slot.
+ *
+ * Slots are guarded by a seqlock, so lookups take no lock and never see a
+ * key paired with another key's result: a writer makes the sequence odd,
+ * writes, then makes it even again. A reader that sees the sequence
+ * change while it reads counts a miss instead of retrying, and a writer
+ * that finds the slot busy skips the store. NaN results are never stored; get()
+ * returns NaN for a miss.
+ */
+public final class MemoCache implements MemoCacheMXBean {
+
+    // Result bits of a cleared slot; NaN is never stored as a result
+    private static final long EMPTY = Double.doubleToRawLongBits(Double.NaN);
+
+    private final String name;
+    private final AtomicLongArray slots;
+    private final int shift;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two (at least 2)
+     */
+    public MemoCache(String name, int capacity) {
+        if (capacity < 1 || capacity > 1 << 26) {
+            throw new IllegalArgumentException("Memo capacity must be between 1 and " + (1 << 26));
+        }
+        // At least one bit: a shift by 64 would be a shift by 0
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.name = name;
+        this.slots = new AtomicLongArray(3 << bits);
+        this.shift = 64 - bits;
+    }
+
+    /**
+     * @return the result stored for the key, or NaN if there is none
+     */
+    public double get(long key) {
+        int base = slotOf(key);
+        long seq = slots.get(base);
+        if (seq != 0 && (seq & 1) == 0) {
+            long storedKey = slots.get(base + 1);
+            long value = slots.get(base + 2);
+            if (storedKey == key && value != EMPTY && slots.get(base) == seq) {
+                hits.increment();
+                return Double.longBitsToDouble(value);
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /**
+     * Store a result, replacing whatever key used the same slot
+     */
+    public void put(long key, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int base = slotOf(key);
+        long seq = slots.get(base);
+        if ((seq & 1) != 0 || !slots.compareAndSet(base, seq, seq + 1)) {
+            return; // another thread is writing this slot
+        }
+        slots.set(base + 1, key);
+        slots.set(base + 2, Double.doubleToRawLongBits(value));
+        slots.set(base, seq + 2);
+    }
+
+    private int slotOf(long key) {
+        // Fibonacci hashing spreads keys that differ only in their low bits
+        return 3 * (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Register with the platform MBean server as "calc.memo:type=MemoCache,name=..."
+     */
+    public MemoCache register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("calc.memo:type=MemoCache,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            System.err.println("Could not register memo MBean for " + name + ": " + e);
+        }
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getCapacity() {
+        return slots.length() / 3;
+    }
+
+    @Override
+    public int getSize() {
+        int size = 0;
+        for (int base = 0; base < slots.length(); base += 3) {
+            if (slots.get(base) != 0 && slots.get(base + 2) != EMPTY) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public void clear() {
+        for (int base = 0; base < slots.length(); base += 3) {
+            long seq = slots.get(base);
+            // a slot being written is left to its writer; the sequence keeps
+            // counting up so that a reader cannot mistake the cleared slot
+            // for the one it started reading
+            if (seq != 0 && (seq & 1) == 0 && slots.compareAndSet(base, seq, seq + 1)) {
+                slots.set(base + 2, EMPTY);
+                slots.set(base, seq + 2);
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -0,0 +1,33 @@
+//JMX view of the memo cache
+
+/**
+ * JMX view of a MemoCache
+ */
+public interface MemoCacheMXBean {
+
+    String getName();
+
+    /**
+     * @return number of slots, the most entries the cache can hold
+     */
+    int getCapacity();
+
+    /**
+     * @return number of slots in use (counted on each call)
+     */
+    int getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return hits / (hits + misses), 0 before the first lookup
+     */
+    double getHitRate();
+
+    /**
+     * Drop every entry and reset the counters
+     */
+    void clear();
+}
@@ -0,0 +1,33 @@
+import java.io.Serializable;
+
+/**
+ * Results for one chunk pushed into a CalcStream.
+ * values[i] is the result for record i of the chunk (tax, or CGPA with NaN
+ * for invalid marks). The final chunk of a stream has no values and
+ * isEndOfStream() set.
+ */
+public class ResultChunk implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long sequence;
+    private final double[] values;
+    private final boolean endOfStream;
+
+    public ResultChunk(long sequence, double[] values, boolean endOfStream) {
+        this.sequence = sequence;
+        this.values = values;
+        this.endOfStream = endOfStream;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public double[] getValues() {
+        return values;
+    }
+
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+}
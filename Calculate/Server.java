@@ -1,21 +1,52 @@
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.Naming;
+import java.rmi.server.UnicastRemoteObject;
 
+/**
+ * Usage:
+ *   java Server                   CalcService over RMI on port 1099
+ *   java Server --nio-port 1199   also over the NIO transport (see CalcNioServer)
+ */
 public class Server {
     public static void main(String[] args) {
+        int nioPort = -1;
+        if (args.length == 2 && args[0].equals("--nio-port")) {
+            nioPort = Integer.parseInt(args[1]);
+        } else if (args.length != 0) {
+            System.err.println("Usage: java Server [--nio-port N]");
+            System.exit(1);
+        }
         try {
+            // bound the threads RMI may start for incoming connections
+            BoundedDispatcher.limitConnectionThreadsFromProperties();
+
             // create RMI registry programmatically on port 1099
             LocateRegistry.createRegistry(1099);
             System.out.println("RMI registry started on port 1099.");
 
             CalcServiceImpl service = new CalcServiceImpl();
 
-            // Bind the remote object's stub in the registry with name "CalcService"
+            // Bind the remote object's stub in the registry with name "CalcService",
+            // counting and timing every call (see Common/ServiceMetrics.java) and
+            // running it on a bounded worker pool (see Common/BoundedDispatcher.java)
             String name = "CalcService";
-            Naming.rebind(name, service);
+            CalcService served = ServiceMetrics.instrument(CalcService.class,
+                BoundedDispatcher.wrapFromProperties(CalcService.class, service));
+            Naming.rebind(name, UnicastRemoteObject.exportObject(served, 0));
+            // streaming sessions calculate through the same counters and limits
+            service.setStreamCalls(served);
+            ServiceMetrics.startHttpFromProperties();
 
             System.out.println("CalcService bound in registry. Server is ready.");
+
+            // the NIO transport runs calls on its I/O threads, so it skips the dispatcher
+            if (nioPort >= 0) {
+                CalcService nioService = ServiceMetrics.instrument("CalcService.nio", CalcService.class, service);
+                int ioThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+                CalcNioServer nio = new CalcNioServer(nioService, nioPort, ioThreads);
+                System.out.println("CalcService also served over NIO on port " + nio.getPort() + ".");
+            }
         } catch (Exception e) {
             System.err.println("Server exception: " + e);
             e.printStackTrace();
@@ -0,0 +1,160 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.rmi.Naming;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams a file of records through CalcService at constant memory.
+ *
+ * Usage: java StreamClient tax|cgpa inputFile outputFile [chunkSize]
+ *   tax:  one income per line
+ *   cgpa: five marks per line, separated by spaces or commas
+ * The output file gets one result per input line; lines that cannot be
+ * parsed produce NaN.
+ *
+ * A reader thread pushes chunks while the main thread polls results and
+ * writes them out, so the connection is busy in both directions. The session
+ * buffers at most BUFFERED_CHUNKS chunks, so memory use does not depend on
+ * the size of the file.
+ */
+public class StreamClient {
+
+    private static final int BUFFERED_CHUNKS = 8;
+    private static final long POLL_MILLIS = 1000;
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java StreamClient tax|cgpa inputFile outputFile [chunkSize]");
+            System.exit(2);
+        }
+        boolean tax = args[0].equals("tax");
+        int chunkSize = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+
+        try {
+            CalcService service = (CalcService) Naming.lookup("rmi://localhost/CalcService");
+            CalcStream stream = service.openStream(BUFFERED_CHUNKS);
+
+            AtomicReference<Exception> pushFailure = new AtomicReference<>();
+            Thread pusher = new Thread(() -> {
+                try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+                    if (tax) {
+                        pushIncomes(in, stream, chunkSize);
+                    } else {
+                        pushMarks(in, stream, chunkSize);
+                    }
+                    stream.finish();
+                } catch (Exception e) {
+                    pushFailure.set(e);
+                    try {
+                        stream.close();
+                    } catch (Exception ignored) {
+                        // the session is gone either way
+                    }
+                }
+            }, "stream-pusher");
+            pusher.start();
+
+            long records = 0;
+            long start = System.nanoTime();
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                while (true) {
+                    ResultChunk chunk = stream.poll(POLL_MILLIS);
+                    if (chunk == null) {
+                        continue;
+                    }
+                    if (chunk.isEndOfStream()) {
+                        break;
+                    }
+                    for (double value : chunk.getValues()) {
+                        out.write(Double.isNaN(value) ? "NaN" : String.format("%.2f", value));
+                        out.newLine();
+                    }
+                    records += chunk.getValues().length;
+                }
+            } catch (Exception e) {
+                if (pushFailure.get() != null) {
+                    throw pushFailure.get();
+                }
+                throw e;
+            }
+            pusher.join();
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Processed %d records in %.2f s (%.0f records/s)%n",
+                records, seconds, records / seconds);
+
+        } catch (Exception e) {
+            System.err.println("StreamClient exception: " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static void pushIncomes(BufferedReader in, CalcStream stream, int chunkSize) throws Exception {
+        double[] chunk = new double[chunkSize];
+        int n = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            chunk[n++] = parseIncome(line);
+            if (n == chunkSize) {
+                stream.pushTax(chunk);
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            double[] last = new double[n];
+            System.arraycopy(chunk, 0, last, 0, n);
+            stream.pushTax(last);
+        }
+    }
+
+    private static void pushMarks(BufferedReader in, CalcStream stream, int chunkSize) throws Exception {
+        int[] chunk = new int[chunkSize * 5];
+        int n = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            parseMarks(line, chunk, n * 5);
+            if (++n == chunkSize) {
+                stream.pushMarks(chunk);
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            int[] last = new int[n * 5];
+            System.arraycopy(chunk, 0, last, 0, n * 5);
+            stream.pushMarks(last);
+        }
+    }
+
+    private static double parseIncome(String line) {
+        try {
+            return Double.parseDouble(line.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Parse five marks into target[offset..offset+4]; a malformed line is
+     * stored as -1 marks so the server reports NaN for it
+     */
+    private static void parseMarks(String line, int[] target, int offset) {
+        String[] parts = line.trim().split("[,\\s]+");
+        try {
+            if (parts.length == 5) {
+                for (int i = 0; i < 5; i++) {
+                    target[offset + i] = Integer.parseInt(parts[i]);
+                }
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        for (int i = 0; i < 5; i++) {
+            target[offset + i] = -1;
+        }
+    }
+}
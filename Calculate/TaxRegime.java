@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * One tax regime compiled for fast evaluation.
+ *
+ * A regime is a list of slabs, each with an inclusive upper limit and a
+ * rate; the last slab has no upper limit. In a FLAT regime the whole income
+ * is taxed at the rate of the slab it falls into (the original CalcService
+ * rule); in a PROGRESSIVE regime each slab's rate applies only to the part
+ * of the income inside that slab.
+ *
+ * The upper limits are stored in a sorted array padded with +Infinity to a
+ * power of two. When the slabs are not too uneven, a lookup table is also
+ * precomputed: incomes are cut into equal buckets no wider than the
+ * narrowest slab, so each bucket holds at most one limit, and the table
+ * gives the slab at the start of every bucket. Finding a slab is then one
+ * table read plus one comparison, whatever the number of slabs. Otherwise
+ * the slab is found with a fixed-length binary search whose steps compile
+ * to conditional moves.
+ */
+public final class TaxRegime {
+
+    public enum Type { FLAT, PROGRESSIVE }
+
+    private final String name;
+    private final Type type;
+    private final double[] limits;     // padded to a power of two with +Infinity
+    private final int slabCount;
+    private final double[] rates;      // rates[i] applies to slab i
+    private final double[] baseTax;    // progressive tax owed below slab i
+    private final double[] lowerBound; // income where slab i starts
+
+    // Largest lookup table worth keeping; beyond this use the binary search
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+
+    private final double topLimit;     // highest finite limit
+    private final double bucketScale;  // 1 / bucket width
+    private final int[] slabAtBucket;  // slab of the first income in each bucket, or null
+
+    /**
+     * @param limits inclusive upper limits of every slab but the last, strictly ascending
+     * @param rates rates as fractions (0.05 = 5%), one more than limits
+     */
+    public TaxRegime(String name, Type type, double[] limits, double[] rates) {
+        if (rates.length != limits.length + 1) {
+            throw new IllegalArgumentException("Regime " + name + ": need exactly one rate per slab.");
+        }
+        for (int i = 0; i < limits.length; i++) {
+            if (!(limits[i] > (i == 0 ? Double.NEGATIVE_INFINITY : limits[i - 1])) || Double.isInfinite(limits[i])) {
+                throw new IllegalArgumentException("Regime " + name + ": slab limits must be finite and ascending.");
+            }
+        }
+        for (double rate : rates) {
+            if (!(rate >= 0 && rate <= 1)) {
+                throw new IllegalArgumentException("Regime " + name + ": rates must be between 0 and 1.");
+            }
+        }
+        this.name = name;
+        this.type = type;
+        this.slabCount = rates.length;
+        this.rates = rates.clone();
+
+        int padded = Integer.highestOneBit(Math.max(1, limits.length));
+        if (padded < limits.length) {
+            padded <<= 1;
+        }
+        this.limits = Arrays.copyOf(limits, padded);
+        Arrays.fill(this.limits, limits.length, padded, Double.POSITIVE_INFINITY);
+
+        this.topLimit = limits.length == 0 ? Double.NEGATIVE_INFINITY : limits[limits.length - 1];
+        double width = limits.length == 0 ? 0 : limits[0];
+        for (int i = 1; i < limits.length; i++) {
+            width = Math.min(width, limits[i] - limits[i - 1]);
+        }
+        if (width > 0 && topLimit / width < MAX_TABLE_SIZE) {
+            this.bucketScale = 1.0 / width;
+            this.slabAtBucket = new int[(int) (topLimit * bucketScale) + 2];
+            for (int b = 0; b < slabAtBucket.length; b++) {
+                slabAtBucket[b] = searchSlab(b * width);
+            }
+        } else {
+            this.bucketScale = 0;
+            this.slabAtBucket = null;
+        }
+
+        this.lowerBound = new double[slabCount];
+        this.baseTax = new double[slabCount];
+        for (int i = 1; i < slabCount; i++) {
+            lowerBound[i] = limits[i - 1];
+            baseTax[i] = baseTax[i - 1] + (lowerBound[i] - lowerBound[i - 1]) * rates[i - 1];
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getSlabCount() {
+        return slabCount;
+    }
+
+    /**
+     * @return tax owed on the income; 0 for incomes of 0 or less, NaN for NaN
+     */
+    public double taxFor(double income) {
+        if (!(income > 0)) {
+            return Double.isNaN(income) ? income : 0.0;
+        }
+        int slab = slabOf(income);
+        if (type == Type.FLAT) {
+            return income * rates[slab];
+        }
+        return baseTax[slab] + (income - lowerBound[slab]) * rates[slab];
+    }
+
+    /**
+     * @return index of the slab a positive income falls into, i.e. the number
+     *         of upper limits strictly below the income
+     */
+    int slabOf(double income) {
+        if (income > topLimit) {
+            return slabCount - 1;
+        }
+        int[] table = slabAtBucket;
+        if (table == null) {
+            return searchSlab(income);
+        }
+        // The bucket holds at most one limit; the two steps below also absorb
+        // rounding that puts the income one bucket off
+        int slab = table[(int) (income * bucketScale)];
+        slab -= slab > 0 && limits[slab - 1] >= income ? 1 : 0;
+        slab += limits[slab] < income ? 1 : 0;
+        return slab;
+    }
+
+    /**
+     * Fixed-length binary search over the padded limits
+     */
+    int searchSlab(double income) {
+        double[] l = limits;
+        int base = 0;
+        for (int len = l.length; len > 1; len >>= 1) {
+            int half = len >> 1;
+            base = l[base + half - 1] < income ? base + half : base;
+        }
+        return base + (l[base] < income ? 1 : 0);
+    }
+}
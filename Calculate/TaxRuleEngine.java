@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Holds the tax regimes CalcServiceImpl can apply, loaded from a properties
+ * file such as tax-regimes.properties:
+ *
+ *   regime.default.type=flat
+ *   regime.default.slabs=250000:0, 500000:0.05, *:0.10
+ *
+ * Each slab is "upperLimit:rate" and the last one is "*:rate". The regime
+ * named "default" is used when no regime is given; if the file does not
+ * define it, the original 250000/500000 rule is used.
+ */
+public final class TaxRuleEngine {
+
+    public static final String DEFAULT_REGIME = "default";
+
+    private final Map<String, TaxRegime> regimes;
+    private final TaxRegime defaultRegime;
+
+    public TaxRuleEngine(Map<String, TaxRegime> regimes) {
+        Map<String, TaxRegime> copy = new TreeMap<>(regimes);
+        copy.putIfAbsent(DEFAULT_REGIME, builtInDefault());
+        this.regimes = Collections.unmodifiableMap(copy);
+        this.defaultRegime = copy.get(DEFAULT_REGIME);
+    }
+
+    /**
+     * Load the file named by -Dcalc.taxRegimes (default
+     * tax-regimes.properties in the working directory), or fall back to the
+     * built-in default regime if the file does not exist.
+     */
+    public static TaxRuleEngine load() throws IOException {
+        Path path = Paths.get(System.getProperty("calc.taxRegimes", "tax-regimes.properties"));
+        if (!Files.exists(path)) {
+            return new TaxRuleEngine(Collections.emptyMap());
+        }
+        try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Properties props = new Properties();
+            props.load(in);
+            return fromProperties(props);
+        }
+    }
+
+    public static TaxRuleEngine fromProperties(Properties props) {
+        Map<String, TaxRegime> regimes = new TreeMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("regime.") && key.endsWith(".slabs")) {
+                String name = key.substring("regime.".length(), key.length() - ".slabs".length());
+                String type = props.getProperty("regime." + name + ".type", "progressive");
+                regimes.put(name, parse(name, type, props.getProperty(key)));
+            }
+        }
+        return new TaxRuleEngine(regimes);
+    }
+
+    /**
+     * @return the regime with the given name; null selects the default regime
+     * @throws IllegalArgumentException if there is no such regime
+     */
+    public TaxRegime regime(String name) {
+        if (name == null) {
+            return defaultRegime;
+        }
+        TaxRegime regime = regimes.get(name);
+        if (regime == null) {
+            throw new IllegalArgumentException("Unknown tax regime: " + name);
+        }
+        return regime;
+    }
+
+    public TaxRegime defaultRegime() {
+        return defaultRegime;
+    }
+
+    public List<String> regimeNames() {
+        return new ArrayList<>(regimes.keySet());
+    }
+
+    static TaxRegime parse(String name, String type, String slabs) {
+        TaxRegime.Type regimeType;
+        try {
+            regimeType = TaxRegime.Type.valueOf(type.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Regime " + name + ": type must be flat or progressive.");
+        }
+        String[] parts = slabs.split(",");
+        double[] limits = new double[parts.length - 1];
+        double[] rates = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String[] slab = parts[i].trim().split(":");
+            boolean last = i == parts.length - 1;
+            if (slab.length != 2 || last != slab[0].trim().equals("*")) {
+                throw new IllegalArgumentException("Regime " + name
+                    + ": slabs must look like limit:rate, ending with *:rate. Found: " + parts[i].trim());
+            }
+            try {
+                if (!last) {
+                    limits[i] = Double.parseDouble(slab[0].trim());
+                }
+                rates[i] = Double.parseDouble(slab[1].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Regime " + name + ": bad number in slab " + parts[i].trim());
+            }
+        }
+        return new TaxRegime(name, regimeType, limits, rates);
+    }
+
+    /**
+     * ≤ 250000 -> 0, 250001 - 500000 -> 5%, > 500000 -> 10%, on the whole income
+     */
+    static TaxRegime builtInDefault() {
+        return new TaxRegime(DEFAULT_REGIME, TaxRegime.Type.FLAT,
+            new double[] {250000, 500000}, new double[] {0.0, 0.05, 0.10});
+    }
+}
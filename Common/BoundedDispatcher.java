@@ -0,0 +1,204 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the calls of a remote service on a bounded pool of workers
+ * RMI serves every connection on a thread of its own, with no limit, so a
+ * burst of clients becomes a burst of threads all competing for the CPU and
+ * every call slows down together. wrap() puts a proxy in front of the
+ * service that hands each call to a fixed number of workers through a
+ * bounded queue. When the queue is full, or a method already has as many
+ * calls running as its limit allows, the call is turned away at once with
+ * a ServerOverloadedException. An accepted call therefore waits behind at
+ * most a queue's worth of others, however many clients there are.
+ *
+ * Settings come from system properties (see Settings.fromProperties):
+ *   dispatch.workers      worker threads (default: 2 per processor, at least 4)
+ *   dispatch.queue        calls that may wait for a worker (default: 4 per worker)
+ *   dispatch.virtual      true to run the workers on virtual threads (Java 21+)
+ *   dispatch.limit.NAME   most calls of remote method NAME running at once
+ *   dispatch.connections  most RMI connection threads (default: 1024)
+ *   dispatch.enabled      false to call the service on RMI's threads as before
+ */
+public final class BoundedDispatcher implements InvocationHandler {
+
+    /**
+     * Pool and limit sizes
+     */
+    public static final class Settings {
+        final int workers;
+        final int queueCapacity;
+        final boolean virtualThreads;
+        final Map<String, Integer> methodLimits;
+
+        /**
+         * @param methodLimits most concurrent calls per remote method name;
+         *                     methods not listed are limited by the pool only
+         */
+        public Settings(int workers, int queueCapacity, boolean virtualThreads, Map<String, Integer> methodLimits) {
+            if (workers < 1 || queueCapacity < 1) {
+                throw new IllegalArgumentException("Workers and queue capacity must be at least 1");
+            }
+            this.workers = workers;
+            this.queueCapacity = queueCapacity;
+            this.virtualThreads = virtualThreads;
+            this.methodLimits = new HashMap<>(methodLimits);
+        }
+
+        public static Settings fromProperties() {
+            int workers = Integer.getInteger("dispatch.workers",
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+            int queue = Integer.getInteger("dispatch.queue", 4 * workers);
+            Map<String, Integer> limits = new HashMap<>();
+            for (String key : System.getProperties().stringPropertyNames()) {
+                if (key.startsWith("dispatch.limit.")) {
+                    limits.put(key.substring("dispatch.limit.".length()), Integer.getInteger(key));
+                }
+            }
+            return new Settings(workers, queue, Boolean.getBoolean("dispatch.virtual"), limits);
+        }
+
+        @Override
+        public String toString() {
+            return workers + (virtualThreads ? " virtual" : "") + " workers, queue of " + queueCapacity
+                + (methodLimits.isEmpty() ? "" : ", limits " + methodLimits);
+        }
+    }
+
+    private final Object target;
+    private final String service;
+    private final int queueCapacity;
+    private final ThreadPoolExecutor workers;
+    private final Map<String, Semaphore> limits = new HashMap<>();
+    private final Map<String, Integer> limitSizes;
+
+    private BoundedDispatcher(String service, Object target, Settings settings) {
+        this.target = target;
+        this.service = service;
+        this.queueCapacity = settings.queueCapacity;
+        this.limitSizes = settings.methodLimits;
+        settings.methodLimits.forEach((method, permits) -> limits.put(method, new Semaphore(permits)));
+        this.workers = new ThreadPoolExecutor(settings.workers, settings.workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(settings.queueCapacity), threadFactory(service, settings.virtualThreads));
+    }
+
+    /**
+     * Put a bounded dispatcher in front of a service
+     * The proxy implements every remote interface of the target.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T wrap(Class<T> type, T target, Settings settings) {
+        BoundedDispatcher dispatcher = new BoundedDispatcher(type.getSimpleName(), target, settings);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(),
+            ServiceMetrics.remoteInterfaces(type, target).toArray(new Class<?>[0]), dispatcher);
+    }
+
+    /**
+     * Wrap the service as configured by the system properties, or return it
+     * unchanged if dispatch.enabled is false
+     */
+    public static <T extends Remote> T wrapFromProperties(Class<T> type, T target) {
+        if (!Boolean.parseBoolean(System.getProperty("dispatch.enabled", "true"))) {
+            return target;
+        }
+        Settings settings = Settings.fromProperties();
+        System.out.println(type.getSimpleName() + " dispatch: " + settings);
+        return wrap(type, target, settings);
+    }
+
+    /**
+     * Cap the threads RMI starts for incoming connections; a connection over
+     * the cap is closed straight away. Must run before anything is exported.
+     */
+    public static void limitConnectionThreadsFromProperties() {
+        if (System.getProperty("sun.rmi.transport.tcp.maxConnectionThreads") == null) {
+            System.setProperty("sun.rmi.transport.tcp.maxConnectionThreads",
+                System.getProperty("dispatch.connections", "1024"));
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            // equals, hashCode, toString
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        String name = method.getName();
+        Semaphore limit = limits.get(name);
+        if (limit != null && !limit.tryAcquire()) {
+            throw new ServerOverloadedException(service + "." + name + " already has "
+                + limitSizes.get(name) + " calls running, try again later.");
+        }
+        Future<Object> result;
+        try {
+            result = workers.submit(() -> {
+                try {
+                    return method.invoke(target, args);
+                } finally {
+                    if (limit != null) {
+                        limit.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (limit != null) {
+                limit.release();
+            }
+            throw new ServerOverloadedException(service + " is busy: " + queueCapacity
+                + " calls are already waiting, try again later.");
+        }
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof InvocationTargetException ? cause.getCause() : cause;
+        } catch (InterruptedException e) {
+            // The call is left to run, so its method limit is still released
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for " + service + "." + name);
+        }
+    }
+
+    /**
+     * Daemon platform threads, or virtual threads if asked for and available
+     */
+    private static ThreadFactory threadFactory(String service, boolean virtual) {
+        if (virtual) {
+            try {
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class)
+                    .invoke(builder, service.toLowerCase(Locale.ROOT) + "-worker-", 1L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                System.err.println("Virtual threads need Java 21 or later; using platform threads");
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, service.toLowerCase(Locale.ROOT) + "-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
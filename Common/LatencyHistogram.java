@@ -0,0 +1,148 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe log-linear histogram of non-negative long values (nanoseconds)
+ * Values are bucketed HdrHistogram-style: every power of two is split into
+ * 64 equal sub-buckets, so any recorded value is reported within about 1.6%
+ * while the whole long range fits in under 4k counters. Recording is one
+ * atomic increment and never allocates.
+ */
+public class LatencyHistogram {
+
+    // 2^SUB_BUCKET_BITS sub-buckets below the first power-of-two boundary
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = (66 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Record one value; negative values are recorded as zero
+     */
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(Math.max(0L, value)));
+    }
+
+    /**
+     * Record a value count times
+     */
+    public void record(long value, long count) {
+        counts.addAndGet(indexOf(Math.max(0L, value)), count);
+    }
+
+    /**
+     * Add every count from another histogram into this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+    }
+
+    /**
+     * @return a point-in-time copy, so several statistics can be read from
+     *         the same set of counts
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the highest value that falls in the same bucket as the
+     *         recorded value at the given percentile (0-100), or 0 if empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return highestEquivalentValue(BUCKET_COUNT - 1);
+    }
+
+    public long getMax() {
+        for (int i = BUCKET_COUNT - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return 0;
+    }
+
+    public double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long c = counts.get(i);
+            if (c != 0) {
+                total += c;
+                sum += c * ((double) lowestEquivalentValue(i) + highestEquivalentValue(i)) / 2.0;
+            }
+        }
+        return total == 0 ? 0.0 : sum / total;
+    }
+
+    /**
+     * @return number of buckets; bucket i covers
+     *         [lowestEquivalentValue(i), highestEquivalentValue(i)]
+     */
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    public long getCountAt(int bucket) {
+        return counts.get(bucket);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 64 - SUB_BUCKET_BITS - Long.numberOfLeadingZeros(value);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    static long lowestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        return (long) (index - shift * SUB_BUCKET_HALF) << shift;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (index - shift * SUB_BUCKET_HALF) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,38 @@
+import java.rmi.RemoteException;
+
+/**
+ * Thrown by a server that turned a call away because it is already busy
+ * The call was not run, so it is safe to retry it later or elsewhere.
+ * RMI delivers it to the client wrapped in a ServerException; use
+ * isOverload() to recognise it.
+ */
+public class ServerOverloadedException extends RemoteException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServerOverloadedException(String message) {
+        super(message);
+    }
+
+    /**
+     * No stack trace: a rejection is routine under load, and both capturing
+     * the trace and sending it to the client would cost more than the call
+     * that was turned away
+     */
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    /**
+     * @return true if the error, or any of its causes, is a ServerOverloadedException
+     */
+    public static boolean isOverload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ServerOverloadedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,375 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Request metrics for a remote service
+ * instrument() wraps a service in a proxy that counts and times every call
+ * of its remote methods: calls, errors (the method threw), empty results
+ * (null or an empty collection, e.g. getRoomInfo for an unknown room),
+ * rejections (a ServerOverloadedException, see BoundedDispatcher) and a
+ * latency histogram. Counters are LongAdders, so RMI threads serving calls
+ * at the same time do not fight over one cache line, and recording never
+ * allocates.
+ *
+ * Every instance is registered as the MBean "rmi.metrics:type=Service,name=..."
+ * (visible in jconsole) and can print itself in the Prometheus text format.
+ * With -Dmetrics.port=N, startHttpFromProperties() serves the metrics of
+ * every service at http://localhost:N/metrics.
+ */
+public final class ServiceMetrics implements ServiceMetricsMXBean {
+
+    // Every registered service, in registration order
+    private static final List<ServiceMetrics> ALL = new CopyOnWriteArrayList<>();
+
+    /**
+     * Counters of one remote method (all overloads of a name together)
+     */
+    private static final class MethodStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder empty = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * The proxy's handler: times the call, then updates the method's counters
+     */
+    private final class Handler implements InvocationHandler {
+        private final Object target;
+
+        Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            MethodStats stats = byMethod.get(method);
+            if (stats == null) {
+                // equals, hashCode, toString
+                return call(method, args);
+            }
+            long start = System.nanoTime();
+            try {
+                Object result = call(method, args);
+                if (result == null || (result instanceof Collection && ((Collection<?>) result).isEmpty())) {
+                    stats.empty.increment();
+                }
+                return result;
+            } catch (Throwable t) {
+                stats.errors.increment();
+                if (t instanceof ServerOverloadedException) {
+                    stats.rejected.increment();
+                }
+                throw t;
+            } finally {
+                long nanos = System.nanoTime() - start;
+                stats.calls.increment();
+                stats.totalNanos.add(nanos);
+                stats.latency.record(nanos);
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        ServiceMetrics metrics() {
+            return ServiceMetrics.this;
+        }
+    }
+
+    private final String service;
+    // Both maps are filled in the constructor and only read afterwards
+    private final Map<String, MethodStats> byName = new TreeMap<>();
+    private final Map<Method, MethodStats> byMethod = new HashMap<>();
+
+    private ServiceMetrics(String service, Collection<Class<?>> remoteInterfaces) {
+        this.service = service;
+        for (Class<?> type : remoteInterfaces) {
+            for (Method method : type.getMethods()) {
+                if (method.getDeclaringClass() != Object.class) {
+                    byMethod.put(method, byName.computeIfAbsent(method.getName(), name -> new MethodStats()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Wrap a service so every remote call on the result is measured
+     * The proxy implements every remote interface of the target, and the
+     * metrics are registered under the simple name of type.
+     */
+    public static <T extends Remote> T instrument(Class<T> type, T target) {
+        return instrument(type.getSimpleName(), type, target);
+    }
+
+    /**
+     * Like instrument(type, target), with the metrics registered under the
+     * given name (e.g. for a second transport serving the same service)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T instrument(String service, Class<T> type, T target) {
+        Set<Class<?>> interfaces = remoteInterfaces(type, target);
+        ServiceMetrics metrics = new ServiceMetrics(service, interfaces);
+        metrics.register();
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), interfaces.toArray(new Class<?>[0]),
+            metrics.new Handler(target));
+    }
+
+    /**
+     * @return type followed by every other remote interface the target implements
+     */
+    static Set<Class<?>> remoteInterfaces(Class<?> type, Object target) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        interfaces.add(type);
+        for (Class<?> c = target.getClass(); c != null; c = c.getSuperclass()) {
+            for (Class<?> i : c.getInterfaces()) {
+                if (Remote.class.isAssignableFrom(i) && i != Remote.class) {
+                    interfaces.add(i);
+                }
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Instrument a service and export the proxy for RMI
+     * @return the stub to bind in a registry
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T export(Class<T> type, T target) throws RemoteException {
+        return (T) UnicastRemoteObject.exportObject(instrument(type, target), 0);
+    }
+
+    /**
+     * @return the metrics behind a proxy returned by instrument()
+     */
+    public static ServiceMetrics of(Object proxy) {
+        return ((Handler) Proxy.getInvocationHandler(proxy)).metrics();
+    }
+
+    /**
+     * Serve the Prometheus text of every service on the loopback interface,
+     * if the metrics.port system property is set
+     */
+    public static void startHttpFromProperties() throws IOException {
+        String port = System.getProperty("metrics.port");
+        if (port == null) {
+            return;
+        }
+        HttpServer server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port)), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = prometheusText(ALL).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        System.out.println("Metrics available at http://localhost:" + port + "/metrics");
+    }
+
+    /**
+     * Register with the platform MBean server, replacing an older instance
+     * for the same service
+     */
+    private void register() {
+        ALL.removeIf(other -> other.service.equals(service));
+        ALL.add(this);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("rmi.metrics:type=Service,name=" + ObjectName.quote(service));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Could not register metrics MBean for " + service + ": " + e);
+        }
+    }
+
+    @Override
+    public String getService() {
+        return service;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return sum(stats -> stats.calls.sum());
+    }
+
+    @Override
+    public long getErrorCount() {
+        return sum(stats -> stats.errors.sum());
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return sum(stats -> stats.rejected.sum());
+    }
+
+    @Override
+    public long getEmptyResultCount() {
+        return sum(stats -> stats.empty.sum());
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return perMethod(stats -> stats.calls.sum());
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        return perMethod(stats -> stats.errors.sum());
+    }
+
+    @Override
+    public Map<String, Long> getRejectedCounts() {
+        return perMethod(stats -> stats.rejected.sum());
+    }
+
+    @Override
+    public Map<String, Long> getEmptyResultCounts() {
+        return perMethod(stats -> stats.empty.sum());
+    }
+
+    @Override
+    public Map<String, Double> getMeanMicros() {
+        return latencyPerMethod(histogram -> histogram.getMean() / 1000.0);
+    }
+
+    @Override
+    public Map<String, Double> getP50Micros() {
+        return latencyPerMethod(histogram -> histogram.getValueAtPercentile(50) / 1000.0);
+    }
+
+    @Override
+    public Map<String, Double> getP99Micros() {
+        return latencyPerMethod(histogram -> histogram.getValueAtPercentile(99) / 1000.0);
+    }
+
+    @Override
+    public Map<String, Double> getMaxMicros() {
+        return latencyPerMethod(histogram -> histogram.getMax() / 1000.0);
+    }
+
+    @Override
+    public String dumpPrometheus() {
+        return prometheusText(List.of(this));
+    }
+
+    @Override
+    public void reset() {
+        for (MethodStats stats : byName.values()) {
+            stats.calls.reset();
+            stats.errors.reset();
+            stats.rejected.reset();
+            stats.empty.reset();
+            stats.totalNanos.reset();
+            stats.latency.reset();
+        }
+    }
+
+    /**
+     * @return the metrics of these services in the Prometheus text format
+     */
+    public static String prometheusText(Collection<ServiceMetrics> services) {
+        StringBuilder out = new StringBuilder();
+        counterFamily(out, services, "rmi_requests_total", "Remote calls received.",
+            stats -> stats.calls.sum());
+        counterFamily(out, services, "rmi_errors_total", "Remote calls that threw an exception.",
+            stats -> stats.errors.sum());
+        counterFamily(out, services, "rmi_rejected_total", "Remote calls turned away because the server was busy.",
+            stats -> stats.rejected.sum());
+        counterFamily(out, services, "rmi_empty_results_total", "Remote calls that returned null or nothing.",
+            stats -> stats.empty.sum());
+
+        out.append("# HELP rmi_request_duration_seconds Time spent serving remote calls.\n");
+        out.append("# TYPE rmi_request_duration_seconds summary\n");
+        for (ServiceMetrics metrics : services) {
+            for (Map.Entry<String, MethodStats> entry : metrics.byName.entrySet()) {
+                MethodStats stats = entry.getValue();
+                LatencyHistogram histogram = stats.latency.snapshot();
+                String labels = "service=\"" + metrics.service + "\",method=\"" + entry.getKey() + "\"";
+                for (String quantile : new String[] {"0.5", "0.9", "0.99", "0.999"}) {
+                    long nanos = histogram.getValueAtPercentile(Double.parseDouble(quantile) * 100);
+                    out.append("rmi_request_duration_seconds{").append(labels)
+                        .append(",quantile=\"").append(quantile).append("\"} ").append(nanos / 1e9).append('\n');
+                }
+                out.append("rmi_request_duration_seconds_sum{").append(labels).append("} ")
+                    .append(stats.totalNanos.sum() / 1e9).append('\n');
+                out.append("rmi_request_duration_seconds_count{").append(labels).append("} ")
+                    .append(histogram.getTotalCount()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static void counterFamily(StringBuilder out, Collection<ServiceMetrics> services, String name,
+                                      String help, ToLongFunction<MethodStats> value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (ServiceMetrics metrics : services) {
+            for (Map.Entry<String, MethodStats> entry : metrics.byName.entrySet()) {
+                out.append(name).append("{service=\"").append(metrics.service)
+                    .append("\",method=\"").append(entry.getKey()).append("\"} ")
+                    .append(value.applyAsLong(entry.getValue())).append('\n');
+            }
+        }
+    }
+
+    private long sum(ToLongFunction<MethodStats> value) {
+        long total = 0;
+        for (MethodStats stats : byName.values()) {
+            total += value.applyAsLong(stats);
+        }
+        return total;
+    }
+
+    private Map<String, Long> perMethod(ToLongFunction<MethodStats> value) {
+        Map<String, Long> result = new TreeMap<>();
+        byName.forEach((name, stats) -> result.put(name, value.applyAsLong(stats)));
+        return result;
+    }
+
+    private Map<String, Double> latencyPerMethod(ToDoubleFunction<LatencyHistogram> value) {
+        Map<String, Double> result = new TreeMap<>();
+        byName.forEach((name, stats) -> result.put(name, value.applyAsDouble(stats.latency.snapshot())));
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.Map;
+
+/**
+ * JMX view of a ServiceMetrics instance
+ * Per-method maps are keyed by remote method name; overloads share an entry.
+ * Latencies are in microseconds.
+ */
+public interface ServiceMetricsMXBean {
+
+    String getService();
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    long getRejectedCount();
+
+    long getEmptyResultCount();
+
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * @return calls turned away because the server was busy; these are
+     *         also counted as errors
+     */
+    Map<String, Long> getRejectedCounts();
+
+    /**
+     * @return calls that returned null or an empty collection, e.g. a
+     *         lookup of a room that does not exist
+     */
+    Map<String, Long> getEmptyResultCounts();
+
+    Map<String, Double> getMeanMicros();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    /**
+     * @return the metrics in the Prometheus text format
+     */
+    String dumpPrometheus();
+
+    void reset();
+}
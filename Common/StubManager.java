@@ -0,0 +1,317 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Client-side stub that survives server restarts and fails over between
+ * registries
+ * connect() returns a proxy for a remote service bound under one name in
+ * the registries at a list of "host:port" endpoints. Each call goes to the
+ * first endpoint that is not marked down, in list order. If the call could
+ * not reach the server object (the server is down, or it restarted and the
+ * old stub no longer names a live object), the endpoint is marked down, its
+ * stub is dropped and the call is tried on the next endpoint. Once every
+ * endpoint has been tried, the manager backs off (doubling from
+ * backoffMillis up to maxBackoffMillis, with jitter) and starts over, up to
+ * the configured number of attempts.
+ * Only failures that mean the call never ran are retried, so retrying is
+ * safe for every method. Errors from a call that reached the server are
+ * passed on unchanged.
+ *
+ * Stubs are looked up once per endpoint and name and shared by every
+ * manager in the JVM, so reconnecting does not cost a registry lookup per
+ * client. A background check looks up down endpoints every
+ * healthCheckMillis and puts them back in use once they answer.
+ *
+ * Settings come from system properties (see Settings.fromProperties):
+ *   stub.attempts      rounds over all endpoints before giving up (default 4)
+ *   stub.backoff.ms    pause after the first failed round (default 100)
+ *   stub.backoff.max.ms  longest pause between rounds (default 2000)
+ *   stub.health.ms     interval of the background check, 0 for none (default 5000)
+ */
+public final class StubManager implements InvocationHandler {
+
+    /**
+     * Retry and health check settings
+     */
+    public static final class Settings {
+        final int attempts;
+        final long backoffMillis;
+        final long maxBackoffMillis;
+        final long healthCheckMillis;
+
+        public Settings(int attempts, long backoffMillis, long maxBackoffMillis, long healthCheckMillis) {
+            if (attempts < 1 || backoffMillis < 0 || maxBackoffMillis < backoffMillis || healthCheckMillis < 0) {
+                throw new IllegalArgumentException("Need at least 1 attempt and 0 <= backoff <= max backoff");
+            }
+            this.attempts = attempts;
+            this.backoffMillis = backoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            this.healthCheckMillis = healthCheckMillis;
+        }
+
+        public static Settings fromProperties() {
+            return new Settings(Integer.getInteger("stub.attempts", 4),
+                Long.getLong("stub.backoff.ms", 100),
+                Long.getLong("stub.backoff.max.ms", 2000),
+                Long.getLong("stub.health.ms", 5000));
+        }
+
+        @Override
+        public String toString() {
+            return attempts + " attempts, backoff " + backoffMillis + "-" + maxBackoffMillis + " ms, health check "
+                + (healthCheckMillis == 0 ? "off" : "every " + healthCheckMillis + " ms");
+        }
+    }
+
+    /**
+     * One try of a call on a stub
+     */
+    private interface Attempt {
+        Object run(Remote stub) throws Throwable;
+    }
+
+    // Stubs looked up so far, by "host:port/name", shared by every manager
+    private static final Map<String, Remote> STUBS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService HEALTH_CHECKS = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "stub-health-check");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final List<String> endpoints;
+    private final Settings settings;
+    // 1 while an endpoint is marked down
+    private final AtomicIntegerArray down;
+    private final ScheduledFuture<?> healthCheck;
+
+    private StubManager(String name, List<String> endpoints, Settings settings) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("No endpoints given for " + name);
+        }
+        this.name = name;
+        this.endpoints = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            this.endpoints.add(endpoint.trim());
+        }
+        this.settings = settings;
+        this.down = new AtomicIntegerArray(endpoints.size());
+        this.healthCheck = settings.healthCheckMillis == 0 ? null : HEALTH_CHECKS.scheduleWithFixedDelay(
+            this::checkDownEndpoints, settings.healthCheckMillis, settings.healthCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Connect with the settings from the system properties
+     */
+    public static <T extends Remote> T connect(Class<T> type, String name, List<String> endpoints)
+            throws RemoteException {
+        return connect(type, name, endpoints, Settings.fromProperties());
+    }
+
+    /**
+     * Look the service up on the first endpoint that has it, retrying as
+     * configured, and return a proxy that keeps it reachable
+     * @param endpoints registries as "host:port", in order of preference
+     * @throws RemoteException if no endpoint had the service
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Remote> T connect(Class<T> type, String name, List<String> endpoints, Settings settings)
+            throws RemoteException {
+        StubManager manager = new StubManager(name, endpoints, settings);
+        try {
+            manager.call(stub -> stub, "lookup");
+        } catch (Throwable e) {
+            manager.close();
+            throw e instanceof RemoteException ? (RemoteException) e : new RemoteException(e.toString(), e);
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, manager);
+    }
+
+    /**
+     * @return the manager behind a proxy made by connect()
+     */
+    public static StubManager of(Object proxy) {
+        return (StubManager) Proxy.getInvocationHandler(proxy);
+    }
+
+    /**
+     * @return the endpoint calls go to now
+     */
+    public String getCurrentEndpoint() {
+        for (int i = 0; i < endpoints.size(); i++) {
+            if (down.get(i) == 0) {
+                return endpoints.get(i);
+            }
+        }
+        return endpoints.get(0);
+    }
+
+    /**
+     * Stop the background health check; the proxy can still be used
+     */
+    public void close() {
+        if (healthCheck != null) {
+            healthCheck.cancel(false);
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return proxy == args[0];
+                case "hashCode": return System.identityHashCode(proxy);
+                default: return toString();
+            }
+        }
+        return call(stub -> {
+            try {
+                return method.invoke(stub, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }, method.getName());
+    }
+
+    @Override
+    public String toString() {
+        return "StubManager[" + name + " at " + endpoints + ", using " + getCurrentEndpoint() + "]";
+    }
+
+    /**
+     * Run the attempt on the endpoints in order, healthy ones first, for up
+     * to settings.attempts rounds
+     */
+    private Object call(Attempt attempt, String what) throws Throwable {
+        long backoff = settings.backoffMillis;
+        Throwable last = null;
+        for (int round = 1; ; round++) {
+            for (int index : order()) {
+                String endpoint = endpoints.get(index);
+                Remote stub;
+                try {
+                    stub = stub(endpoint);
+                } catch (RemoteException | NotBoundException e) {
+                    down.set(index, 1);
+                    last = e;
+                    continue;
+                }
+                try {
+                    Object result = attempt.run(stub);
+                    down.set(index, 0);
+                    return result;
+                } catch (Throwable e) {
+                    if (!neverRan(e)) {
+                        throw e;
+                    }
+                    STUBS.remove(key(endpoint), stub);
+                    down.set(index, 1);
+                    last = e;
+                }
+            }
+            if (round >= settings.attempts) {
+                throw new RemoteException(name + "." + what + " failed on " + endpoints + " after "
+                    + round + " attempt(s)", last);
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while reconnecting to " + name, last);
+            }
+            backoff = Math.min(2 * backoff, settings.maxBackoffMillis);
+        }
+    }
+
+    /**
+     * @return endpoint indexes, healthy ones first, each group in list order
+     */
+    private int[] order() {
+        int[] order = new int[endpoints.size()];
+        int next = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < order.length; i++) {
+                if (down.get(i) == pass) {
+                    order[next++] = i;
+                }
+            }
+        }
+        return order;
+    }
+
+    private Remote stub(String endpoint) throws RemoteException, NotBoundException {
+        Remote stub = STUBS.get(key(endpoint));
+        if (stub == null) {
+            stub = lookup(endpoint);
+            Remote raced = STUBS.putIfAbsent(key(endpoint), stub);
+            if (raced != null) {
+                stub = raced;
+            }
+        }
+        return stub;
+    }
+
+    private Remote lookup(String endpoint) throws RemoteException, NotBoundException {
+        int colon = endpoint.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Endpoint must be host:port, got " + endpoint);
+        }
+        return LocateRegistry.getRegistry(endpoint.substring(0, colon), Integer.parseInt(endpoint.substring(colon + 1)))
+            .lookup(name);
+    }
+
+    /**
+     * Look up the service again on every endpoint marked down, and put back
+     * the ones where it is bound
+     */
+    private void checkDownEndpoints() {
+        for (int i = 0; i < endpoints.size(); i++) {
+            if (down.get(i) == 0) {
+                continue;
+            }
+            String endpoint = endpoints.get(i);
+            try {
+                STUBS.put(key(endpoint), lookup(endpoint));
+                down.set(i, 0);
+            } catch (RemoteException | NotBoundException e) {
+                // still down
+            }
+        }
+    }
+
+    private String key(String endpoint) {
+        return endpoint + "/" + name;
+    }
+
+    /**
+     * @return true if the error shows the call never reached a live server
+     *         object, so it can be sent again without running twice
+     */
+    static boolean neverRan(Throwable error) {
+        return error instanceof ConnectException          // nothing listening
+            || error instanceof ConnectIOException        // connection could not be set up
+            || error instanceof UnknownHostException
+            || error instanceof NoSuchObjectException;    // stub from before a server restart
+    }
+}
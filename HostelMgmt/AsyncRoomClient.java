@@ -0,0 +1,167 @@
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking wrapper over RoomService for the UI client
+ * Each call runs on a background thread and returns a CompletableFuture
+ * that fails with a TimeoutException if the server has not answered in
+ * time. Cancelling a future stops the client from waiting for it (and, for
+ * paged loads, from asking for further pages); a remote call already on
+ * the wire is left to finish in the background.
+ * Calls run on virtual threads when the JVM has them (Java 21+), otherwise
+ * on a pool of daemon threads.
+ */
+public class AsyncRoomClient {
+
+    /**
+     * A blocking remote call
+     */
+    private interface RemoteCall<T> {
+        T call() throws RemoteException;
+    }
+
+    private final RoomService service;
+    private final RoomInfoCache cache;
+    private final long timeoutMillis;
+    private final ExecutorService executor = newExecutor();
+
+    /**
+     * @param cache Cache to look rooms up in first, or null to always ask the server
+     * @param timeoutMillis Longest time to wait for any one remote call
+     */
+    public AsyncRoomClient(RoomService service, RoomInfoCache cache, long timeoutMillis) {
+        this.service = service;
+        this.cache = cache;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return future of the room, completing with null if it does not exist
+     */
+    public CompletableFuture<RoomInfo> getRoomInfo(String roomNumber) {
+        if (cache != null) {
+            return call(() -> cache.getRoomInfo(roomNumber));
+        }
+        return call(() -> service.getRoomInfo(roomNumber));
+    }
+
+    /**
+     * @return future of every room number in sorted order
+     */
+    public CompletableFuture<List<String>> getAllRoomNumbers() {
+        return call(service::getAllRoomNumbers);
+    }
+
+    /**
+     * @return future of the rooms of students whose name starts with namePrefix
+     */
+    public CompletableFuture<List<RoomInfo>> findRoomsByOccupant(String namePrefix, int limit) {
+        return call(() -> service.findRoomsByOccupant(namePrefix, limit));
+    }
+
+    /**
+     * Fetch every room a page at a time, handing each page to onPage as soon
+     * as it arrives so the caller can show rooms before the last page is in.
+     * onPage runs on a background thread. Pages are fetched one after the
+     * other; cancelling the returned future stops before the next page.
+     * @return future of the number of rooms fetched
+     */
+    public CompletableFuture<Integer> forEachPage(int pageSize, Consumer<RoomPage> onPage) {
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        fetchPage(0, pageSize, 0, onPage, done);
+        return done;
+    }
+
+    private void fetchPage(int offset, int pageSize, int fetched, Consumer<RoomPage> onPage,
+                           CompletableFuture<Integer> done) {
+        call(() -> service.getAllRooms(offset, pageSize)).whenComplete((page, error) -> {
+            if (done.isDone()) {
+                return; // cancelled while this page was in flight
+            }
+            if (error != null) {
+                done.completeExceptionally(error);
+                return;
+            }
+            try {
+                onPage.accept(page);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                return;
+            }
+            int total = fetched + page.getRooms().size();
+            int next = page.getNextOffset();
+            if (next < 0) {
+                done.complete(total);
+            } else {
+                fetchPage(next, pageSize, total, onPage, done);
+            }
+        });
+    }
+
+    /**
+     * Stop accepting calls; calls in flight are abandoned
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return a user-facing message for the error a future failed with
+     */
+    public String describe(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof TimeoutException) {
+            return "Server did not respond within " + timeoutMillis / 1000.0 + " seconds";
+        }
+        if (cause instanceof CancellationException) {
+            return "Request cancelled";
+        }
+        if (ServerOverloadedException.isOverload(cause)) {
+            return "Server is busy, please try again in a moment";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    private <T> CompletableFuture<T> call(RemoteCall<T> remoteCall) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return remoteCall.call();
+            } catch (RemoteException e) {
+                throw new CompletionException(e);
+            }
+        }, executor).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Virtual threads when available, so a call blocked on a slow server
+     * costs almost nothing; otherwise daemon platform threads
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "room-client-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * RoomTable holding each room as an immutable RoomInfo in a
+ * ConcurrentHashMap; reads never take a lock and return the stored object
+ * itself. This is the default table.
+ */
+public class HeapRoomTable implements RoomTable {
+    
+    private final ConcurrentHashMap<String, RoomInfo> rooms;
+    
+    public HeapRoomTable() {
+        this(16);
+    }
+    
+    public HeapRoomTable(int expectedRooms) {
+        rooms = new ConcurrentHashMap<>(expectedRooms);
+    }
+    
+    @Override
+    public RoomInfo get(String roomNumber) {
+        return rooms.get(roomNumber);
+    }
+    
+    @Override
+    public RoomInfo compute(String roomNumber, BiFunction<String, RoomInfo, RoomInfo> change) {
+        return rooms.compute(roomNumber, change);
+    }
+    
+    @Override
+    public List<RoomInfo> values() {
+        return new ArrayList<>(rooms.values());
+    }
+    
+    @Override
+    public void forEach(Consumer<RoomInfo> action) {
+        rooms.values().forEach(action);
+    }
+    
+    @Override
+    public RoomTable newEmpty(int expectedRooms) {
+        return new HeapRoomTable(expectedRooms);
+    }
+}
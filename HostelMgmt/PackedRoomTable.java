@@ -0,0 +1,512 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * RoomTable that keeps rooms out of the Java heap, for hostels with
+ * millions of occupants
+ * HeapRoomTable holds about ten objects per room (the RoomInfo, its list,
+ * the name strings and their arrays, the map node); every one of them is
+ * traced by each full GC. Here a room costs no objects at all while stored:
+ *
+ *   - Room numbers map to int slots through an open-addressing hash table
+ *     of ints.
+ *   - Each room is one record in an off-heap arena of direct ByteBuffers:
+ *     version (long), warden id (int), occupant count (unsigned short) and
+ *     the occupant names as unsigned-short lengths followed by UTF-8 bytes.
+ *     A slot holds the address of its room's current record.
+ *   - Warden contacts are dictionary-encoded: a record stores an int id
+ *     into a small array of distinct contacts, which are shared by many rooms.
+ *
+ * RoomInfo objects are only built when a room is read, i.e. at the RMI
+ * boundary. A change appends a new record and points the slot at it; the
+ * arena is compacted once most of it is old records.
+ *
+ * Reads take no lock. Bytes in the arena never change once a record is
+ * published, and the arrays a reader needs are published together as one
+ * immutable Generation. A reader checks after its lookup that the arrays it
+ * used are still current, and retries if they were replaced (which happens
+ * only when the table grows or is compacted). Changes are serialized by one
+ * lock, so concurrent writers do not scale as with HeapRoomTable.
+ */
+public class PackedRoomTable implements RoomTable {
+
+    // Size of an arena chunk; a larger record gets a chunk of its own
+    private static final int CHUNK_BYTES = 1 << 20;
+    // Strings are stored as an unsigned 16-bit byte length, as in RoomCodec
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int RECORD_HEADER_BYTES = 8 + 4 + 2;
+    private static final int NO_WARDEN = -1;
+    // Returned by find when the generation is too old to read a room number it met
+    private static final int STALE = -2;
+    // Compact once old records outweigh live ones and take at least this much
+    private static final long MIN_COMPACT_BYTES = 4L * CHUNK_BYTES;
+
+    /**
+     * The arrays a reader needs, published as a whole
+     * records, keys and hashes are indexed by slot and replaced together when
+     * the table grows or is compacted; chunks only gets longer until then.
+     */
+    private static final class Generation {
+        final ByteBuffer[] chunks;       // arena; an address is chunk << 32 | offset
+        final AtomicLongArray records;   // slot -> address of the room's record, 0 if none yet
+        final long[] keys;               // slot -> address of the room number
+        final int[] hashes;              // slot -> hash of the room number
+        final AtomicIntegerArray index;  // open addressing over hashes: slot + 1, 0 if empty
+
+        Generation(ByteBuffer[] chunks, AtomicLongArray records, long[] keys, int[] hashes,
+                   AtomicIntegerArray index) {
+            this.chunks = chunks;
+            this.records = records;
+            this.keys = keys;
+            this.hashes = hashes;
+            this.index = index;
+        }
+
+        /**
+         * @return true if a reader that used this generation read the
+         *         current arrays, given the generation now published
+         */
+        boolean sameArrays(Generation now) {
+            return now.records == records && now.index == index;
+        }
+    }
+
+    private volatile Generation generation;
+    // Warden id -> contact; replaced as a whole when a contact is added
+    private volatile String[] wardens = new String[16];
+
+    // Writer state, guarded by this
+    private final Map<String, Integer> wardenIds = new HashMap<>();
+    private final List<ByteBuffer> arena = new ArrayList<>();
+    private int writeOffset;
+    private int slotCount;
+    private long usedBytes;
+    private long liveBytes;
+
+    public PackedRoomTable() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedRooms rooms to make room for up front; the table grows as needed
+     */
+    public PackedRoomTable(int expectedRooms) {
+        int slots = Math.max(16, Integer.highestOneBit(Math.max(1, expectedRooms - 1)) << 1);
+        arena.add(ByteBuffer.allocateDirect(CHUNK_BYTES));
+        writeOffset = 8; // address 0 stands for "no record"
+        generation = new Generation(arena.toArray(new ByteBuffer[0]), new AtomicLongArray(slots),
+            new long[slots], new int[slots], new AtomicIntegerArray(2 * slots));
+    }
+
+    @Override
+    public RoomInfo get(String roomNumber) {
+        byte[] key = roomNumber.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(roomNumber);
+        while (true) {
+            Generation g = generation;
+            int slot = find(g, key, hash);
+            if (slot == STALE) {
+                continue;
+            }
+            long address = slot < 0 ? 0 : g.records.get(slot);
+            Generation now = generation;
+            if (g.sameArrays(now)) {
+                // now has every chunk the record can be in
+                return address == 0 ? null : decode(now, roomNumber, address);
+            }
+        }
+    }
+
+    @Override
+    public List<RoomInfo> values() {
+        while (true) {
+            Generation g = generation;
+            List<RoomInfo> rooms = new ArrayList<>();
+            for (int slot = 0; slot < g.records.length(); slot++) {
+                long address = g.records.get(slot);
+                if (address != 0) {
+                    Generation now = generation;
+                    if (now.records != g.records) {
+                        break;
+                    }
+                    rooms.add(decode(now, getString(now, g.keys[slot]), address));
+                }
+            }
+            if (generation.records == g.records) {
+                return rooms;
+            }
+        }
+    }
+
+    /**
+     * Holds the write lock, so no compaction moves records meanwhile; the
+     * action must not change this table
+     */
+    @Override
+    public synchronized void forEach(Consumer<RoomInfo> action) {
+        Generation g = generation;
+        for (int slot = 0; slot < g.records.length(); slot++) {
+            long address = g.records.get(slot);
+            if (address != 0) {
+                action.accept(decode(g, getString(g, g.keys[slot]), address));
+            }
+        }
+    }
+
+    @Override
+    public RoomTable newEmpty(int expectedRooms) {
+        return new PackedRoomTable(expectedRooms);
+    }
+
+    @Override
+    public synchronized RoomInfo compute(String roomNumber, BiFunction<String, RoomInfo, RoomInfo> change) {
+        byte[] key = utf8(roomNumber);
+        int hash = hash(roomNumber);
+        Generation g = generation;
+        int slot = find(g, key, hash);
+        long oldAddress = slot < 0 ? 0 : g.records.get(slot);
+        RoomInfo current = oldAddress == 0 ? null : decode(g, roomNumber, oldAddress);
+        RoomInfo next = change.apply(roomNumber, current);
+        if (next == null) {
+            if (current != null) {
+                throw new IllegalStateException("Rooms cannot be removed from a RoomTable");
+            }
+            return null;
+        }
+
+        // Encode before writing anything; RoomStore has checked the room with checkStorable already
+        List<String> names = next.getOccupantNames();
+        if (names.size() > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Too many occupants to store: " + names.size());
+        }
+        byte[][] encoded = new byte[names.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = utf8(names.get(i));
+        }
+        int warden = wardenId(next.getWardenContact());
+
+        boolean created = slot < 0;
+        if (created) {
+            slot = addSlot(key, hash);
+        } else {
+            liveBytes -= recordSize(g, oldAddress);
+        }
+        long address = writeRecord(next.getVersion(), warden, encoded);
+        g = publish();
+        g.records.set(slot, address);
+        if (created) {
+            insert(g.index, g.hashes, slot);
+        }
+        if (usedBytes - liveBytes > Math.max(liveBytes, MIN_COMPACT_BYTES)) {
+            compact();
+        }
+        return next;
+    }
+
+    /**
+     * Names and the occupant count are stored with 16-bit lengths
+     */
+    @Override
+    public void checkStorable(RoomInfo room) {
+        List<String> names = room.getOccupantNames();
+        if (names.size() > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Too many occupants to store: " + names.size());
+        }
+        for (String name : names) {
+            utf8(name);
+        }
+    }
+
+    /**
+     * @return off-heap bytes held by the arena, including old records not yet compacted
+     */
+    public synchronized long getArenaBytes() {
+        long bytes = 0;
+        for (ByteBuffer chunk : arena) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return bytes of the arena used by current records and room numbers
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * @return number of distinct warden contacts in the dictionary
+     */
+    public synchronized int getWardenCount() {
+        return wardenIds.size();
+    }
+
+    // ---- writer side, called with the lock held ----
+
+    /**
+     * Take a new slot for the room number, growing the arrays if needed; the
+     * slot is put in the index once its record is written
+     */
+    private int addSlot(byte[] key, int hash) {
+        Generation g = generation;
+        int slot = slotCount++;
+        if (slot == g.records.length()) {
+            int size = 2 * slot;
+            AtomicLongArray records = new AtomicLongArray(size);
+            for (int i = 0; i < slot; i++) {
+                records.set(i, g.records.get(i));
+            }
+            generation = g = new Generation(g.chunks, records, Arrays.copyOf(g.keys, size),
+                Arrays.copyOf(g.hashes, size), g.index);
+        }
+        if (2 * slotCount > g.index.length()) {
+            AtomicIntegerArray index = new AtomicIntegerArray(2 * g.index.length());
+            for (int i = 0; i < slot; i++) {
+                insert(index, g.hashes, i);
+            }
+            generation = g = new Generation(g.chunks, g.records, g.keys, g.hashes, index);
+        }
+        long address = allocate(2 + key.length);
+        putString(arena.get(chunkOf(address)), offsetOf(address), key);
+        liveBytes += 2 + key.length;
+        g.keys[slot] = address;
+        g.hashes[slot] = hash;
+        return slot;
+    }
+
+    private long writeRecord(long version, int warden, byte[][] names) {
+        int size = RECORD_HEADER_BYTES;
+        for (byte[] name : names) {
+            size += 2 + name.length;
+        }
+        long address = allocate(size);
+        ByteBuffer chunk = arena.get(chunkOf(address));
+        int pos = offsetOf(address);
+        chunk.putLong(pos, version);
+        chunk.putInt(pos + 8, warden);
+        chunk.putShort(pos + 12, (short) names.length);
+        pos += RECORD_HEADER_BYTES;
+        for (byte[] name : names) {
+            pos = putString(chunk, pos, name);
+        }
+        liveBytes += size;
+        return address;
+    }
+
+    /**
+     * Reserve bytes in the arena, adding a chunk if the current one is full
+     */
+    private long allocate(int bytes) {
+        ByteBuffer chunk = arena.get(arena.size() - 1);
+        if (writeOffset + bytes > chunk.capacity()) {
+            arena.add(ByteBuffer.allocateDirect(Math.max(CHUNK_BYTES, bytes)));
+            writeOffset = 0;
+        }
+        long address = (long) (arena.size() - 1) << 32 | writeOffset;
+        writeOffset += bytes;
+        usedBytes += bytes;
+        return address;
+    }
+
+    /**
+     * Publish chunks added since the last generation; must run before an
+     * address in a new chunk is stored where readers can see it
+     * @return the current generation
+     */
+    private Generation publish() {
+        Generation g = generation;
+        if (g.chunks.length != arena.size()) {
+            generation = g = new Generation(arena.toArray(new ByteBuffer[0]), g.records, g.keys, g.hashes, g.index);
+        }
+        return g;
+    }
+
+    private int wardenId(String contact) {
+        if (contact == null) {
+            return NO_WARDEN;
+        }
+        Integer id = wardenIds.get(contact);
+        if (id == null) {
+            id = wardenIds.size();
+            String[] dictionary = wardens;
+            if (id == dictionary.length) {
+                dictionary = Arrays.copyOf(dictionary, 2 * id);
+            } else {
+                dictionary = dictionary.clone();
+            }
+            dictionary[id] = contact;
+            wardens = dictionary; // published before any record uses the id
+            wardenIds.put(contact, id);
+        }
+        return id;
+    }
+
+    /**
+     * Copy every room number and current record into a fresh arena,
+     * leaving old records behind
+     * Readers still holding the old generation read the old chunks, which
+     * are left untouched, and then retry.
+     */
+    private void compact() {
+        Generation old = generation;
+        arena.clear();
+        arena.add(ByteBuffer.allocateDirect(CHUNK_BYTES));
+        writeOffset = 8;
+        usedBytes = 0;
+        liveBytes = 0;
+        AtomicLongArray records = new AtomicLongArray(old.records.length());
+        long[] keys = new long[old.keys.length];
+        for (int slot = 0; slot < slotCount; slot++) {
+            keys[slot] = copy(old, old.keys[slot], 2 + stringLength(old, old.keys[slot]));
+            long address = old.records.get(slot);
+            if (address != 0) {
+                records.set(slot, copy(old, address, recordSize(old, address)));
+            }
+        }
+        liveBytes = usedBytes;
+        generation = new Generation(arena.toArray(new ByteBuffer[0]), records, keys, old.hashes, old.index);
+    }
+
+    private long copy(Generation from, long address, int bytes) {
+        ByteBuffer source = from.chunks[chunkOf(address)];
+        long copied = allocate(bytes);
+        // Relative bulk put on duplicates: absolute bulk copies need JDK 16
+        ByteBuffer record = source.duplicate();
+        record.position(offsetOf(address)).limit(offsetOf(address) + bytes);
+        arena.get(chunkOf(copied)).duplicate().position(offsetOf(copied)).put(record);
+        return copied;
+    }
+
+    // ---- shared by readers and writers ----
+
+    /**
+     * @return the room number's slot, -1 if it has none, or STALE if a slot
+     *         added after g was published has its room number in a chunk g
+     *         does not have yet (only readers can see that)
+     */
+    private static int find(Generation g, byte[] key, int hash) {
+        AtomicIntegerArray index = g.index;
+        int mask = index.length() - 1;
+        for (int cell = hash & mask; ; cell = (cell + 1) & mask) {
+            int entry = index.get(cell);
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            // a reader with an older generation can meet slots added after it
+            if (slot < g.hashes.length && g.hashes[slot] == hash) {
+                long keyAddress = g.keys[slot];
+                if (chunkOf(keyAddress) >= g.chunks.length) {
+                    return STALE;
+                }
+                if (keyEquals(g, keyAddress, key)) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    private static void insert(AtomicIntegerArray index, int[] hashes, int slot) {
+        int mask = index.length() - 1;
+        int cell = hashes[slot] & mask;
+        while (index.get(cell) != 0) {
+            cell = (cell + 1) & mask;
+        }
+        index.set(cell, slot + 1);
+    }
+
+    private RoomInfo decode(Generation g, String roomNumber, long address) {
+        ByteBuffer chunk = g.chunks[chunkOf(address)];
+        int pos = offsetOf(address);
+        long version = chunk.getLong(pos);
+        int warden = chunk.getInt(pos + 8);
+        int count = chunk.getShort(pos + 12) & 0xFFFF;
+        pos += RECORD_HEADER_BYTES;
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = chunk.getShort(pos) & 0xFFFF;
+            names.add(string(chunk, pos + 2, length));
+            pos += 2 + length;
+        }
+        return new RoomInfo(roomNumber, names, warden == NO_WARDEN ? null : wardens[warden], version);
+    }
+
+    private static int recordSize(Generation g, long address) {
+        ByteBuffer chunk = g.chunks[chunkOf(address)];
+        int start = offsetOf(address);
+        int count = chunk.getShort(start + 12) & 0xFFFF;
+        int pos = start + RECORD_HEADER_BYTES;
+        for (int i = 0; i < count; i++) {
+            pos += 2 + (chunk.getShort(pos) & 0xFFFF);
+        }
+        return pos - start;
+    }
+
+    private static boolean keyEquals(Generation g, long address, byte[] key) {
+        ByteBuffer chunk = g.chunks[chunkOf(address)];
+        int pos = offsetOf(address);
+        if ((chunk.getShort(pos) & 0xFFFF) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(pos + 2 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int stringLength(Generation g, long address) {
+        return g.chunks[chunkOf(address)].getShort(offsetOf(address)) & 0xFFFF;
+    }
+
+    private static String getString(Generation g, long address) {
+        return string(g.chunks[chunkOf(address)], offsetOf(address) + 2, stringLength(g, address));
+    }
+
+    private static String string(ByteBuffer chunk, int pos, int length) {
+        byte[] bytes = new byte[length];
+        chunk.duplicate().position(pos).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the position after the string
+     */
+    private static int putString(ByteBuffer chunk, int pos, byte[] bytes) {
+        chunk.putShort(pos, (short) bytes.length);
+        chunk.duplicate().position(pos + 2).put(bytes);
+        return pos + 2 + bytes.length;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long to store: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static int hash(String roomNumber) {
+        int h = roomNumber.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int chunkOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+}
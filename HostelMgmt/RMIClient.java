@@ -1,20 +1,56 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.rmi.RemoteException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * RMI Client with Swing UI for searching room information
  */
 public class RMIClient extends JFrame {
     
+    // Number of rooms fetched per remote call by "Show All Rooms"
+    private static final int PAGE_SIZE = 500;
+    
+    // Rooms kept by the client cache, and how long a cached room is trusted
+    // before the client asks the server what changed
+    private static final int CACHE_SIZE = 1000;
+    private static final long CACHE_TTL_MILLIS = 30_000;
+    
+    // Silence after which the change feed is subscribed to again; the server
+    // sends a heartbeat every 10 s by default
+    private static final long FEED_TIMEOUT_MILLIS = 30_000;
+    
+    // Longest wait for any one remote call before the UI reports an error
+    private static final long REQUEST_TIMEOUT_MILLIS = 10_000;
+    
+    // Most rooms listed by "Find Student"
+    private static final int MAX_FIND_RESULTS = 50;
+    
     private RoomService roomService;
+    private RoomInfoCache roomCache;
+    private AsyncRoomClient asyncClient;
+    
+    // Keeps the cache current while the server pushes changes, or null
+    private RoomFeedSubscriber roomFeed;
+    
+    // Requests still running; only touched on the event dispatch thread
+    private CompletableFuture<?> pendingSearch;
+    private CompletableFuture<Integer> pendingShowAll;
+    
+    // Bumped whenever a room listing starts or is cancelled, so pages from
+    // an older listing are not appended to a newer one
+    private int showAllRun;
+    
     private JTextField roomNumberField;
     private JTextArea resultArea;
     private JButton searchButton;
     private JButton showAllButton;
+    private JTextField occupantField;
+    private JButton findButton;
     private JComboBox<String> roomDropdown;
     
     public RMIClient() {
@@ -23,36 +59,89 @@ public class RMIClient extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(10, 10));
         
-        // Connect to RMI service
-        connectToService();
-        
-        // Create UI components
-        createUI();
-        
+        // Connect on a background thread: StubManager retries with pauses and
+        // the feed subscribes with a remote call, which would freeze the window
+        JLabel connectingLabel = new JLabel("Connecting to Room Service...", SwingConstants.CENTER);
+        add(connectingLabel, BorderLayout.CENTER);
         setLocationRelativeTo(null);
         setVisible(true);
+        
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                connectToService();
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(RMIClient.this,
+                        "Failed to connect to server. Please ensure the server is running.\n" + 
+                        cause.getMessage(),
+                        "Connection Error",
+                        JOptionPane.ERROR_MESSAGE);
+                    System.exit(1);
+                    return;
+                }
+                
+                // Create UI components
+                remove(connectingLabel);
+                createUI();
+                revalidate();
+                repaint();
+            }
+        }.execute();
+    }
+    
+    /**
+     * Connect to the RMI service; runs off the event dispatch thread
+     */
+    private void connectToService() throws Exception {
+        String replicas = System.getProperty("hostel.replicas");
+        String shards = System.getProperty("hostel.shards");
+        RoomFeed feed = null;
+        if (shards != null) {
+            // Rooms are split over several servers; each call goes to the right one
+            List<String> addresses = Arrays.asList(shards.split(","));
+            RoomPartitioner partitioner = RoomPartitioner.named(
+                System.getProperty("hostel.partition", "floor"), addresses.size());
+            roomService = ShardedRoomService.connect(partitioner, addresses);
+        } else if (replicas == null) {
+            // Look up the service; calls survive a server restart and move on to the
+            // next server in -Dhostel.servers if one goes down (see Common/StubManager.java)
+            String servers = System.getProperty("hostel.servers", "localhost:1099");
+            roomService = StubManager.connect(RoomService.class, "RoomService",
+                Arrays.asList(servers.split(",")));
+            feed = StubManager.connect(RoomFeed.class, "RoomService",
+                Arrays.asList(servers.split(",")));
+        } else {
+            // Reads spread over the replicas, changes go to the primary
+            roomService = ReplicatedRoomService.connect("localhost:1099",
+                Arrays.asList(replicas.split(",")));
+        }
+        roomCache = new RoomInfoCache(roomService, CACHE_SIZE, CACHE_TTL_MILLIS);
+        asyncClient = new AsyncRoomClient(roomService, roomCache, REQUEST_TIMEOUT_MILLIS);
+        if (feed != null) {
+            followChanges(feed);
+        }
+        
+        System.out.println("Connected to Room Service successfully");
     }
     
     /**
-     * Connect to the RMI service
+     * Have the server push room changes into the cache, so cached rooms stay
+     * current without asking; without the feed the cache polls as before
      */
-    private void connectToService() {
+    private void followChanges(RoomFeed feed) {
         try {
-            // Get the registry
-            Registry registry = LocateRegistry.getRegistry("localhost", 1099);
-            
-            // Look up the service
-            roomService = (RoomService) registry.lookup("RoomService");
-            
-            System.out.println("Connected to Room Service successfully");
-            
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this,
-                "Failed to connect to server. Please ensure the server is running.\n" + 
-                e.getMessage(),
-                "Connection Error",
-                JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+            roomFeed = RoomFeedSubscriber.start(feed, RoomFilter.all(), -1, FEED_TIMEOUT_MILLIS,
+                roomCache::applyChanges);
+        } catch (RemoteException e) {
+            System.err.println("Room change feed unavailable, polling instead: " + e.getMessage());
         }
     }
     
@@ -84,30 +173,31 @@ public class RMIClient extends JFrame {
         searchButton.setBackground(new Color(46, 204, 113));
         searchButton.setForeground(Color.BLACK);
         
-        // Add dropdown for quick selection
-        try {
-            List<String> rooms = roomService.getAllRoomNumbers();
-            roomDropdown = new JComboBox<>(rooms.toArray(new String[0]));
-            roomDropdown.insertItemAt("-- Select Room --", 0);
-            roomDropdown.setSelectedIndex(0);
-            roomDropdown.addActionListener(e -> {
-                String selected = (String) roomDropdown.getSelectedItem();
-                if (selected != null && !selected.startsWith("--")) {
-                    roomNumberField.setText(selected);
+        // Add dropdown for quick selection, filled in once the room list arrives
+        roomDropdown = new JComboBox<>(new String[] { "-- Loading Rooms --" });
+        roomDropdown.addActionListener(e -> {
+            String selected = (String) roomDropdown.getSelectedItem();
+            if (selected != null && !selected.startsWith("--")) {
+                roomNumberField.setText(selected);
+            }
+        });
+        asyncClient.getAllRoomNumbers().whenComplete((rooms, error) ->
+            SwingUtilities.invokeLater(() -> {
+                roomDropdown.removeAllItems();
+                roomDropdown.addItem(error == null ? "-- Select Room --" : "-- Rooms Unavailable --");
+                if (error == null) {
+                    for (String room : rooms) {
+                        roomDropdown.addItem(room);
+                    }
                 }
-            });
-            
-            searchPanel.add(label);
-            searchPanel.add(roomNumberField);
-            searchPanel.add(new JLabel("or"));
-            searchPanel.add(roomDropdown);
-            searchPanel.add(searchButton);
-            
-        } catch (Exception e) {
-            searchPanel.add(label);
-            searchPanel.add(roomNumberField);
-            searchPanel.add(searchButton);
-        }
+                roomDropdown.setSelectedIndex(0);
+            }));
+        
+        searchPanel.add(label);
+        searchPanel.add(roomNumberField);
+        searchPanel.add(new JLabel("or"));
+        searchPanel.add(roomDropdown);
+        searchPanel.add(searchButton);
         
         // Button panel
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
@@ -116,6 +206,15 @@ public class RMIClient extends JFrame {
         showAllButton.setForeground(Color.BLACK);
         buttonPanel.add(showAllButton);
         
+        // Search by student name
+        occupantField = new JTextField(12);
+        findButton = new JButton("Find Student");
+        findButton.setBackground(new Color(46, 204, 113));
+        findButton.setForeground(Color.BLACK);
+        buttonPanel.add(new JLabel("Student Name:"));
+        buttonPanel.add(occupantField);
+        buttonPanel.add(findButton);
+        
         // Result area
         resultArea = new JTextArea();
         resultArea.setEditable(false);
@@ -133,6 +232,8 @@ public class RMIClient extends JFrame {
         // Add event listeners
         searchButton.addActionListener(e -> searchRoom());
         showAllButton.addActionListener(e -> showAllRooms());
+        findButton.addActionListener(e -> findStudent());
+        occupantField.addActionListener(e -> findStudent());
         
         roomNumberField.addActionListener(e -> searchRoom());
     }
@@ -151,22 +252,99 @@ public class RMIClient extends JFrame {
             return;
         }
         
-        try {
-            // Call remote method
-            RoomInfo info = roomService.getRoomInfo(roomNumber);
-            
-            if (info == null) {
+        // A newer search replaces any that is still waiting
+        cancelPending();
+        resultArea.setText("Searching for room " + roomNumber + "...");
+        
+        // Served from the cache when possible, otherwise a remote call;
+        // either way the UI thread never waits for it
+        CompletableFuture<RoomInfo> search = asyncClient.getRoomInfo(roomNumber);
+        pendingSearch = search;
+        search.whenComplete((info, error) -> SwingUtilities.invokeLater(() -> {
+            if (pendingSearch != search) {
+                return; // superseded or cancelled
+            }
+            pendingSearch = null;
+            if (error != null) {
+                resultArea.setText("");
+                JOptionPane.showMessageDialog(this,
+                    "Error searching room: " + asyncClient.describe(error),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            } else if (info == null) {
                 resultArea.setText("Room not found: " + roomNumber + 
                     "\n\nPlease check the room number and try again.");
             } else {
                 displayRoomInfo(info);
             }
-            
-        } catch (Exception e) {
+        }));
+    }
+    
+    /**
+     * Find the rooms of students whose name starts with the entered text
+     */
+    private void findStudent() {
+        String namePrefix = occupantField.getText().trim();
+        
+        if (namePrefix.isEmpty()) {
             JOptionPane.showMessageDialog(this,
-                "Error searching room: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
+                "Please enter a student name",
+                "Input Required",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        cancelPending();
+        resultArea.setText("Searching for students named " + namePrefix + "...");
+        
+        CompletableFuture<List<RoomInfo>> find = asyncClient.findRoomsByOccupant(namePrefix, MAX_FIND_RESULTS);
+        pendingSearch = find;
+        find.whenComplete((rooms, error) -> SwingUtilities.invokeLater(() -> {
+            if (pendingSearch != find) {
+                return; // superseded or cancelled
+            }
+            pendingSearch = null;
+            if (error != null) {
+                resultArea.setText("");
+                JOptionPane.showMessageDialog(this,
+                    "Error finding student: " + asyncClient.describe(error),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (rooms.isEmpty()) {
+                resultArea.setText("No student found whose name starts with: " + namePrefix);
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("========================================\n");
+            sb.append("        STUDENTS MATCHING \"").append(namePrefix).append("\"\n");
+            sb.append("========================================\n\n");
+            for (RoomInfo info : rooms) {
+                roomCache.put(info);
+                sb.append("Room ").append(info.getRoomNumber()).append(": ");
+                sb.append(String.join(", ", info.getOccupantNames())).append("\n");
+            }
+            if (rooms.size() == MAX_FIND_RESULTS) {
+                sb.append("\n(First ").append(MAX_FIND_RESULTS).append(" rooms shown; type more of the name to narrow the search)");
+            }
+            resultArea.setText(sb.toString());
+        }));
+    }
+    
+    /**
+     * Abandon any search or room listing still in progress
+     */
+    private void cancelPending() {
+        if (pendingSearch != null) {
+            pendingSearch.cancel(false);
+            pendingSearch = null;
+        }
+        if (pendingShowAll != null) {
+            pendingShowAll.cancel(false);
+            pendingShowAll = null;
+            showAllRun++;
+            showAllButton.setText("Show All Rooms");
         }
     }
     
@@ -192,37 +370,70 @@ public class RMIClient extends JFrame {
     
     /**
      * Show all available rooms
+     * Pages are appended to the result area as they arrive. While loading,
+     * the button cancels the listing instead.
      */
     private void showAllRooms() {
-        try {
-            List<String> rooms = roomService.getAllRoomNumbers();
-            
+        if (pendingShowAll != null) {
+            cancelPending();
+            resultArea.append("\n(Cancelled)");
+            return;
+        }
+        cancelPending();
+        
+        resultArea.setText("========================================\n"
+            + "        ALL AVAILABLE ROOMS\n"
+            + "========================================\n\n");
+        showAllButton.setText("Cancel Loading");
+        int run = ++showAllRun;
+        
+        // Fetch rooms a page at a time: one round trip per page instead of per room
+        boolean[] first = { true };
+        CompletableFuture<Integer> load = asyncClient.forEachPage(PAGE_SIZE, page -> {
+            // Format off the UI thread, then append in one go
             StringBuilder sb = new StringBuilder();
-            sb.append("========================================\n");
-            sb.append("        ALL AVAILABLE ROOMS\n");
-            sb.append("========================================\n\n");
-            sb.append("Total Rooms: ").append(rooms.size()).append("\n\n");
-            
-            for (String room : rooms) {
-                RoomInfo info = roomService.getRoomInfo(room);
-                sb.append("Room ").append(room).append(": ");
+            if (first[0]) {
+                sb.append("Total Rooms: ").append(page.getTotalRooms()).append("\n\n");
+                first[0] = false;
+            }
+            for (RoomInfo info : page.getRooms()) {
+                roomCache.put(info);
+                sb.append("Room ").append(info.getRoomNumber()).append(": ");
                 sb.append(info.getOccupantNames().size()).append(" occupant(s)\n");
             }
-            
-            sb.append("\n========================================\n");
-            sb.append("Enter a room number above to view details");
-            
-            resultArea.setText(sb.toString());
-            
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this,
-                "Error fetching rooms: " + e.getMessage(),
-                "Error",
-                JOptionPane.ERROR_MESSAGE);
-        }
+            String text = sb.toString();
+            SwingUtilities.invokeLater(() -> {
+                if (showAllRun == run) {
+                    resultArea.append(text);
+                }
+            });
+        });
+        pendingShowAll = load;
+        load.whenComplete((count, error) -> SwingUtilities.invokeLater(() -> {
+            if (showAllRun != run) {
+                return; // cancelled or replaced
+            }
+            pendingShowAll = null;
+            showAllButton.setText("Show All Rooms");
+            if (error != null) {
+                JOptionPane.showMessageDialog(this,
+                    "Error fetching rooms: " + asyncClient.describe(error),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            resultArea.append("\n========================================\n");
+            resultArea.append("Enter a room number above to view details");
+        }));
     }
     
     public static void main(String[] args) {
+        // Let RMI give up on a dead server eventually, so abandoned calls
+        // do not hold their threads forever
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null) {
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", "60000");
+        }
+        
         // Set look and feel
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -3,25 +3,95 @@ import java.rmi.registry.Registry;
 
 /**
  * RMI Server that hosts the Room Service
+ *
+ * Usage:
+ *   java RMIServer                                   standalone server on port 1099
+ *   java RMIServer --port 1100 --replica             read-only replica on port 1100
+ *   java RMIServer --replicas localhost:1100,localhost:1101
+ *                                                    primary that replicates to two replicas
+ *   java RMIServer --port 1100 --shard 1/3 [--partition floor|hash]
+ *                                                    second of three shards, split by floor (default)
  */
 public class RMIServer {
     
     public static void main(String[] args) {
+        int port = 1099;
+        boolean replica = false;
+        String replicas = null;
+        String shard = null;
+        String partition = "floor";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--replica":
+                    replica = true;
+                    break;
+                case "--replicas":
+                    replicas = args[++i];
+                    break;
+                case "--shard":
+                    shard = args[++i];
+                    break;
+                case "--partition":
+                    partition = args[++i];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: java RMIServer [--port N] [--replica | --replicas host:port,...]"
+                        + " [--shard i/n [--partition floor|hash]]");
+                    System.exit(1);
+            }
+        }
+        
         try {
+            // Bound the threads RMI may start for incoming connections
+            BoundedDispatcher.limitConnectionThreadsFromProperties();
+            
             // Create the service implementation
-            RoomServiceImpl service = new RoomServiceImpl();
+            // A shard ("i/n") holds only the rooms the partitioner gives it
+            RoomPartitioner partitioner = null;
+            int shardIndex = 0;
+            if (shard != null) {
+                String[] parts = shard.split("/");
+                shardIndex = Integer.parseInt(parts[0]);
+                partitioner = RoomPartitioner.named(partition, Integer.parseInt(parts[1]));
+            }
+            RoomServiceImpl service = new RoomServiceImpl(RoomServiceImpl.dataDirFromProperties(), replica,
+                partitioner, shardIndex);
+            
+            // Create RMI registry (1099 is the default RMI port)
+            Registry registry = LocateRegistry.createRegistry(port);
             
-            // Create RMI registry on port 1099 (default RMI port)
-            Registry registry = LocateRegistry.createRegistry(1099);
+            // Bind the service to the registry with name "RoomService",
+            // counting and timing every call (see ServiceMetrics) and running
+            // it on a bounded worker pool (see BoundedDispatcher)
+            registry.rebind("RoomService", ServiceMetrics.export(RoomService.class,
+                BoundedDispatcher.wrapFromProperties(RoomService.class, service)));
+            ServiceMetrics.startHttpFromProperties();
             
-            // Bind the service to the registry with name "RoomService"
-            registry.rebind("RoomService", service);
+            // A primary pushes every change to its replicas
+            if (replicas != null) {
+                for (String address : replicas.split(",")) {
+                    String[] hostPort = address.trim().split(":");
+                    service.replicateTo(hostPort[0], Integer.parseInt(hostPort[1]));
+                }
+            }
             
             System.out.println("========================================");
             System.out.println("Hostel Room Information Service Started");
             System.out.println("========================================");
-            System.out.println("Server is running on port 1099");
+            System.out.println("Server is running on port " + port);
             System.out.println("Service name: RoomService");
+            if (partitioner != null) {
+                System.out.println("Shard: " + shardIndex + " (" + partitioner + ")");
+            }
+            if (replica) {
+                System.out.println("Role: read-only replica");
+            } else if (replicas != null) {
+                System.out.println("Role: primary, replicating to " + replicas);
+            }
             System.out.println("Waiting for client requests...");
             System.out.println("Press Ctrl+C to stop the server");
             System.out.println("========================================");
@@ -31,4 +101,4 @@ public class RMIServer {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,153 @@
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Client-side RoomService that spreads reads over replicas
+ * Changes always go to the primary. Reads go to the replicas in turn; if a
+ * replica cannot be reached it is skipped for a few seconds and the read is
+ * retried on the next one, falling back to the primary when no replica
+ * answers. A replica that is too busy to take the read is passed over the
+ * same way, without being skipped afterwards. Other errors reported by a
+ * server (such as a bad argument) are passed on unchanged.
+ * Replicas apply changes shortly after the primary, so a read that follows
+ * a change may briefly return the room as it was before.
+ */
+public class ReplicatedRoomService implements RoomService {
+
+    private static final long DOWN_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * A read that can be sent to any server
+     */
+    private interface Read<T> {
+        T call(RoomService server) throws RemoteException;
+    }
+
+    private final RoomService primary;
+    private final List<RoomService> replicas;
+    // System.nanoTime() until which each replica is skipped; 0 while healthy
+    private final AtomicLongArray downUntil;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicatedRoomService(RoomService primary, List<RoomService> replicas) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.downUntil = new AtomicLongArray(replicas.size());
+    }
+
+    /**
+     * Look up the primary and replicas ("host:port") in their registries
+     * A replica that cannot be looked up now is left out with a warning.
+     */
+    public static ReplicatedRoomService connect(String primaryAddress, Collection<String> replicaAddresses)
+            throws RemoteException, NotBoundException {
+        RoomService primary = lookup(primaryAddress);
+        List<RoomService> replicas = new ArrayList<>();
+        for (String address : replicaAddresses) {
+            try {
+                replicas.add(lookup(address));
+            } catch (RemoteException | NotBoundException e) {
+                System.err.println("Skipping replica " + address + ": " + e.getMessage());
+            }
+        }
+        return new ReplicatedRoomService(primary, replicas);
+    }
+
+    /**
+     * Look up the RoomService bound in the registry at "host:port"
+     */
+    static RoomService lookup(String address) throws RemoteException, NotBoundException {
+        String[] hostPort = address.trim().split(":");
+        return (RoomService) LocateRegistry.getRegistry(hostPort[0], Integer.parseInt(hostPort[1]))
+            .lookup("RoomService");
+    }
+
+    @Override
+    public RoomInfo getRoomInfo(String roomNumber) throws RemoteException {
+        return read(server -> server.getRoomInfo(roomNumber));
+    }
+
+    @Override
+    public List<String> getAllRoomNumbers() throws RemoteException {
+        return read(RoomService::getAllRoomNumbers);
+    }
+
+    @Override
+    public List<RoomInfo> getRoomInfos(Collection<String> roomNumbers) throws RemoteException {
+        return read(server -> server.getRoomInfos(roomNumbers));
+    }
+
+    @Override
+    public RoomPage getAllRooms(int offset, int limit) throws RemoteException {
+        return read(server -> server.getAllRooms(offset, limit));
+    }
+
+    @Override
+    public RoomChanges getRoomsChangedSince(long version, int limit) throws RemoteException {
+        return read(server -> server.getRoomsChangedSince(version, limit));
+    }
+
+    @Override
+    public List<RoomInfo> findRoomsByOccupant(String namePrefix, int limit) throws RemoteException {
+        return read(server -> server.findRoomsByOccupant(namePrefix, limit));
+    }
+
+    @Override
+    public List<RoomInfo> findRoomsByWarden(String wardenContact) throws RemoteException {
+        return read(server -> server.findRoomsByWarden(wardenContact));
+    }
+
+    @Override
+    public RoomInfo allocateRoom(String roomNumber, String occupantName) throws RemoteException {
+        return primary.allocateRoom(roomNumber, occupantName);
+    }
+
+    @Override
+    public RoomInfo vacateRoom(String roomNumber, String occupantName) throws RemoteException {
+        return primary.vacateRoom(roomNumber, occupantName);
+    }
+
+    @Override
+    public RoomInfo upsertRoom(RoomInfo info) throws RemoteException {
+        return primary.upsertRoom(info);
+    }
+
+    /**
+     * Run a read on the next healthy replica, then the others, then the primary
+     */
+    private <T> T read(Read<T> call) throws RemoteException {
+        int count = replicas.size();
+        if (count > 0) {
+            int first = Math.floorMod(nextReplica.getAndIncrement(), count);
+            long now = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                int index = (first + i) % count;
+                long until = downUntil.get(index);
+                if (until != 0 && now - until < 0) {
+                    continue;
+                }
+                try {
+                    T result = call.call(replicas.get(index));
+                    downUntil.set(index, 0);
+                    return result;
+                } catch (ServerException e) {
+                    if (!ServerOverloadedException.isOverload(e)) {
+                        throw e; // the replica answered with an error: do not retry
+                    }
+                    // the replica is busy: try the next one
+                } catch (RemoteException e) {
+                    downUntil.set(index, System.nanoTime() + DOWN_NANOS);
+                }
+            }
+        }
+        return call.call(primary);
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous request log for the room service
+ * Request threads write fixed fields into a preallocated ring buffer and
+ * return straight away; a single background thread formats the records as
+ * key=value lines and writes them out. When the buffer is full, records
+ * are dropped and counted instead of making the caller wait. While there
+ * is nothing to write the background thread sleeps until a request thread
+ * wakes it, so an idle or disabled log costs nothing.
+ *
+ * Logging is on by default and can be turned off with
+ * -Dhostel.requestLog=false or at runtime with setEnabled(false).
+ */
+public class RequestLog implements Closeable {
+
+    /**
+     * Outcome of a logged request
+     */
+    public enum Result { FOUND, NOT_FOUND, OK, ERROR }
+
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    private final int mask;
+
+    // Ring buffer slots, one entry per field so recording allocates nothing
+    private final long[] timestamps;
+    private final long[] latencies;
+    private final String[] operations;
+    private final String[] rooms;
+    private final int[] counts;
+    private final Result[] results;
+
+    // published[slot] == sequence once the slot's fields are fully written
+    private final AtomicLongArray published;
+    private final AtomicLong claimCursor = new AtomicLong();
+    private volatile long drainCursor;
+
+    private final LongAdder dropped = new LongAdder();
+    private final Writer out;
+    private volatile boolean enabled;
+    private volatile boolean closed;
+
+    private final Thread drainer;
+    // Set by the drainer just before it parks, so writers know to unpark it
+    private volatile boolean drainerParked;
+
+    public RequestLog(OutputStream target, int capacity, boolean enabled) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.latencies = new long[capacity];
+        this.operations = new String[capacity];
+        this.rooms = new String[capacity];
+        this.counts = new int[capacity];
+        this.results = new Result[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1L);
+        }
+        this.out = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8));
+        this.enabled = enabled;
+
+        drainer = new Thread(this::drain, "room-request-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Create a console log, enabled unless -Dhostel.requestLog=false
+     */
+    public static RequestLog toConsole() {
+        boolean enabled = Boolean.parseBoolean(System.getProperty("hostel.requestLog", "true"));
+        return new RequestLog(System.out, DEFAULT_CAPACITY, enabled);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return number of records dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Record one request
+     * @param operation Remote method name (should be a constant string)
+     * @param room Room number the request was about, or null
+     * @param count Number of rooms returned or affected
+     * @param result Outcome of the request
+     * @param startNanos System.nanoTime() taken when the request started
+     */
+    public void record(String operation, String room, int count, Result result, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        long latency = System.nanoTime() - startNanos;
+        long seq;
+        do {
+            seq = claimCursor.get();
+            if (seq - drainCursor > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimCursor.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        latencies[slot] = latency;
+        operations[slot] = operation;
+        rooms[slot] = room;
+        counts[slot] = count;
+        results[slot] = result;
+        // A volatile write, so it cannot pass the read of drainerParked
+        published.set(slot, seq);
+        if (drainerParked) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * Stop recording, write out the records already recorded and stop the
+     * background thread; the target stream is flushed but not closed
+     */
+    @Override
+    public void close() {
+        enabled = false;
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(128);
+        boolean pendingFlush = false;
+        while (true) {
+            long next = drainCursor;
+            int slot = (int) next & mask;
+            if (published.get(slot) != next) {
+                if (pendingFlush) {
+                    pendingFlush = !flush();
+                }
+                if (closed) {
+                    return;
+                }
+                // Check again after announcing the park: a writer that
+                // published in between either is seen here or unparks us
+                drainerParked = true;
+                if (published.get(slot) != next && !closed) {
+                    LockSupport.park(this);
+                }
+                drainerParked = false;
+                continue;
+            }
+
+            line.setLength(0);
+            line.append("ts=").append(Instant.ofEpochMilli(timestamps[slot]))
+                .append(" op=").append(operations[slot]);
+            if (rooms[slot] != null) {
+                line.append(" room=").append(rooms[slot]);
+            }
+            line.append(" result=").append(results[slot])
+                .append(" count=").append(counts[slot])
+                .append(" latency_us=").append(latencies[slot] / 1000)
+                .append('\n');
+            rooms[slot] = null;
+            drainCursor = next + 1;
+
+            try {
+                out.append(line);
+                pendingFlush = true;
+            } catch (IOException e) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private boolean flush() {
+        try {
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
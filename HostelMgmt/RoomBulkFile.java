@@ -0,0 +1,740 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk room files: every room of a hostel as CSV or JSON Lines, chosen by
+ * the file name
+ *
+ *   *.csv    a header naming the columns, then one row per occupant:
+ *              room,warden,occupant
+ *              101,+91-9876543210,Rajesh Kumar
+ *              101,+91-9876543210,Amit Sharma
+ *            A room without occupants has one row with an empty occupant.
+ *            A field may be quoted ("Kumar, Rajesh") with "" for a quote,
+ *            but cannot span lines. Other columns are ignored.
+ *   *.jsonl  one room per line:
+ *              {"room":"101","warden":"+91-9876543210","occupants":["Rajesh Kumar","Amit Sharma"]}
+ *
+ * Rows or lines for the same room are merged: occupants are added in file
+ * order, skipping repeats, and the last warden given wins. Versions are not
+ * part of the files; the store gives loaded rooms new ones.
+ *
+ * read() cuts the file into chunks of whole lines and parses them on
+ * several threads, merging the results in file order. Only a few chunks are
+ * held at a time, so apart from the rooms it returns, reading a file of any
+ * size takes the same memory. The rooms are kept as merged rows, and become
+ * RoomInfo objects one at a time as the result is iterated.
+ */
+public final class RoomBulkFile {
+
+    private static final int CHUNK_BYTES = 4 << 20;
+
+    private enum Format { CSV, JSONL }
+
+    private RoomBulkFile() {
+    }
+
+    /**
+     * Read every room in the file, parsing on one thread per processor
+     * @return the rooms in order of their first row, with version 0; each
+     *         iteration makes new RoomInfo objects, and removing through the
+     *         iterator drops a room
+     * @throws IOException if the file cannot be read or a line is malformed
+     *         (the message names the line)
+     */
+    public static Collection<RoomInfo> read(Path file) throws IOException {
+        return read(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Read every room in the file, parsing on the given number of threads
+     * @throws IllegalArgumentException if threads is less than 1
+     * @see #read(Path)
+     */
+    public static Collection<RoomInfo> read(Path file, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1: " + threads);
+        }
+        Format format = formatOf(file);
+        Map<String, Draft> rooms = new LinkedHashMap<>();
+        // One copy of each warden contact, shared by all its rooms
+        Map<String, String> wardens = new HashMap<>();
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "room-bulk-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] nextLine = {1};
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int[] columns = null;
+            byte[] pending = new byte[0];
+            boolean eof = false;
+            while (!eof) {
+                byte[] buffer = Arrays.copyOf(pending, Math.max(CHUNK_BYTES, 2 * pending.length));
+                int length = pending.length;
+                while (length < buffer.length) {
+                    int read = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length));
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    length += read;
+                }
+                int end = eof ? length : lastNewline(buffer, length) + 1;
+                pending = Arrays.copyOfRange(buffer, end, length);
+                int start = 0;
+                if (format == Format.CSV && columns == null && end > 0) {
+                    int headerEnd = indexOf(buffer, '\n', 0, end);
+                    String header = new String(buffer, 0, headerEnd < 0 ? end : headerEnd, StandardCharsets.UTF_8);
+                    columns = csvColumns(file, header);
+                    start = headerEnd < 0 ? end : headerEnd + 1;
+                    nextLine[0]++;
+                }
+                if (start == end) {
+                    continue;
+                }
+                while (inFlight.size() >= 2 * threads) {
+                    merge(file, inFlight.poll(), rooms, wardens, nextLine);
+                }
+                int from = start;
+                int to = end;
+                int[] csvColumns = columns;
+                inFlight.add(parsers.submit(() -> parse(format, csvColumns, buffer, from, to)));
+            }
+            while (!inFlight.isEmpty()) {
+                merge(file, inFlight.poll(), rooms, wardens, nextLine);
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        return new Drafts(rooms);
+    }
+
+    /**
+     * Start writing a bulk file; the rooms appear under the file's name only
+     * once commit() is called, so a failed export never leaves half a file
+     */
+    public static Writer write(Path file) throws IOException {
+        return new Writer(file, formatOf(file));
+    }
+
+    /**
+     * Writes rooms one at a time to a temporary file next to the target
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path target;
+        private final Path temp;
+        private final Format format;
+        private final BufferedWriter out;
+        private final StringBuilder line = new StringBuilder();
+        private int rooms;
+        private boolean committed;
+
+        private Writer(Path target, Format format) throws IOException {
+            this.target = target;
+            this.temp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.format = format;
+            this.out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+            if (format == Format.CSV) {
+                out.write("room,warden,occupant\n");
+            }
+        }
+
+        /**
+         * @throws IOException if writing fails, or a CSV field holds a line break
+         */
+        public void write(RoomInfo info) throws IOException {
+            line.setLength(0);
+            if (format == Format.CSV) {
+                List<String> names = info.getOccupantNames();
+                for (int i = 0; i < Math.max(1, names.size()); i++) {
+                    appendCsv(info.getRoomNumber()).append(',');
+                    appendCsv(info.getWardenContact()).append(',');
+                    appendCsv(names.isEmpty() ? null : names.get(i)).append('\n');
+                }
+            } else {
+                line.append("{\"room\":");
+                appendJson(info.getRoomNumber());
+                line.append(",\"warden\":");
+                appendJson(info.getWardenContact());
+                line.append(",\"occupants\":[");
+                for (int i = 0; i < info.getOccupantNames().size(); i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    appendJson(info.getOccupantNames().get(i));
+                }
+                line.append("]}\n");
+            }
+            out.append(line);
+            rooms++;
+        }
+
+        /**
+         * @return number of rooms written so far
+         */
+        public int getRoomCount() {
+            return rooms;
+        }
+
+        /**
+         * Flush everything to disk and move the file into place
+         */
+        public void commit() throws IOException {
+            out.close();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        /**
+         * Close the writer, discarding the file unless it was committed
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private StringBuilder appendCsv(String field) throws IOException {
+            if (field == null || field.isEmpty()) {
+                return line;
+            }
+            if (field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                throw new IOException("\"" + field + "\" contains a line break, which a CSV file cannot hold;"
+                    + " export to a .jsonl file instead");
+            }
+            boolean quote = field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                || field.charAt(0) == ' ' || field.charAt(field.length() - 1) == ' ';
+            if (!quote) {
+                return line.append(field);
+            }
+            line.append('"');
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                if (c == '"') {
+                    line.append('"');
+                }
+                line.append(c);
+            }
+            return line.append('"');
+        }
+
+        private void appendJson(String value) {
+            if (value == null) {
+                line.append("null");
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': line.append("\\\""); break;
+                    case '\\': line.append("\\\\"); break;
+                    case '\n': line.append("\\n"); break;
+                    case '\r': line.append("\\r"); break;
+                    case '\t': line.append("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            line.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+    }
+
+    /**
+     * A room as read so far
+     */
+    private static final class Draft {
+        String warden;
+        final List<String> occupants = new ArrayList<>(4);
+
+        void add(String wardenContact, String occupant) {
+            if (wardenContact != null) {
+                warden = wardenContact;
+            }
+            if (occupant != null && !occupants.contains(occupant)) {
+                occupants.add(occupant);
+            }
+        }
+
+        void addAll(Draft later) {
+            add(later.warden, null);
+            for (String occupant : later.occupants) {
+                add(null, occupant);
+            }
+        }
+    }
+
+    /**
+     * The rooms in one chunk of lines, in order of their first line there
+     */
+    private static final class Chunk {
+        final Map<String, Draft> rooms = new LinkedHashMap<>();
+        int lines;
+    }
+
+    /**
+     * Rooms read from a file, made into RoomInfo objects only as they are
+     * iterated, so a load does not hold every room twice
+     */
+    private static final class Drafts extends AbstractCollection<RoomInfo> {
+        private final Map<String, Draft> rooms;
+
+        Drafts(Map<String, Draft> rooms) {
+            this.rooms = rooms;
+        }
+
+        @Override
+        public int size() {
+            return rooms.size();
+        }
+
+        @Override
+        public Iterator<RoomInfo> iterator() {
+            Iterator<Map.Entry<String, Draft>> entries = rooms.entrySet().iterator();
+            return new Iterator<RoomInfo>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public RoomInfo next() {
+                    Map.Entry<String, Draft> entry = entries.next();
+                    return new RoomInfo(entry.getKey(), entry.getValue().occupants, entry.getValue().warden);
+                }
+
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
+        }
+    }
+
+    /**
+     * A malformed line, numbered from the start of its chunk
+     */
+    private static final class LineError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int line;
+
+        LineError(int line, String message) {
+            super(message);
+            this.line = line;
+        }
+    }
+
+    private static void merge(Path file, Future<Chunk> future, Map<String, Draft> rooms,
+                              Map<String, String> wardens, long[] nextLine) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LineError) {
+                LineError error = (LineError) e.getCause();
+                throw new IOException(file + " line " + (nextLine[0] + error.line) + ": " + error.getMessage());
+            }
+            throw new IOException("Could not read " + file + ": " + e.getCause(), e.getCause());
+        }
+        for (Map.Entry<String, Draft> entry : chunk.rooms.entrySet()) {
+            if (entry.getValue().warden != null) {
+                entry.getValue().warden = wardens.computeIfAbsent(entry.getValue().warden, key -> key);
+            }
+            Draft draft = rooms.get(entry.getKey());
+            if (draft == null) {
+                rooms.put(entry.getKey(), entry.getValue());
+            } else {
+                draft.addAll(entry.getValue());
+            }
+        }
+        nextLine[0] += chunk.lines;
+    }
+
+    private static Chunk parse(Format format, int[] columns, byte[] buffer, int from, int to) throws LineError {
+        Chunk chunk = new Chunk();
+        int start = from;
+        while (start < to) {
+            int end = indexOf(buffer, '\n', start, to);
+            if (end < 0) {
+                end = to;
+            }
+            int lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+            try {
+                if (format == Format.CSV && indexOf(buffer, '"', start, lineEnd) < 0) {
+                    // The common case: no quotes, so fields can be cut straight from the bytes
+                    parseCsv(buffer, start, lineEnd, columns, chunk.rooms);
+                } else {
+                    String line = new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8);
+                    if (format == Format.CSV) {
+                        List<String> fields = csvFields(line);
+                        addRow(field(fields, columns[0]), field(fields, columns[1]), field(fields, columns[2]),
+                            chunk.rooms);
+                    } else if (!line.trim().isEmpty()) {
+                        new JsonLine(line).parseRoom(chunk.rooms);
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                throw new LineError(chunk.lines, e.getMessage());
+            }
+            chunk.lines++;
+            start = end + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * @return the positions of the room, warden and occupant columns; -1 for
+     *         a column the file does not have
+     */
+    private static int[] csvColumns(Path file, String header) throws IOException {
+        int[] columns = {-1, -1, -1};
+        List<String> names = csvFields(header.endsWith("\r") ? header.substring(0, header.length() - 1) : header);
+        for (int i = 0; i < names.size(); i++) {
+            switch (names.get(i).toLowerCase(Locale.ROOT)) {
+                case "room": columns[0] = i; break;
+                case "warden": columns[1] = i; break;
+                case "occupant": columns[2] = i; break;
+                default: break;
+            }
+        }
+        if (columns[0] < 0) {
+            throw new IOException(file + " line 1: the header must name a \"room\" column"
+                + " (room,warden,occupant), got: " + header);
+        }
+        return columns;
+    }
+
+    /**
+     * Parse a CSV line without quotes
+     */
+    private static void parseCsv(byte[] buffer, int from, int to, int[] columns, Map<String, Draft> rooms) {
+        String[] values = new String[3];
+        int column = 0;
+        int fieldStart = from;
+        boolean blank = true;
+        for (int i = from; i <= to; i++) {
+            if (i == to || buffer[i] == ',') {
+                for (int k = 0; k < values.length; k++) {
+                    if (columns[k] == column) {
+                        values[k] = trimmed(buffer, fieldStart, i);
+                    }
+                }
+                column++;
+                fieldStart = i + 1;
+            } else if ((buffer[i] & 0xFF) > ' ') {
+                blank = false;
+            }
+        }
+        if (!blank) {
+            addRow(values[0], values[1], values[2], rooms);
+        }
+    }
+
+    private static void addRow(String room, String warden, String occupant, Map<String, Draft> rooms) {
+        if (room == null) {
+            throw new IllegalArgumentException("missing room number");
+        }
+        rooms.computeIfAbsent(room, key -> new Draft()).add(warden, occupant);
+    }
+
+    /**
+     * @return the bytes without surrounding spaces as a string, or null if
+     *         nothing is left
+     */
+    private static String trimmed(byte[] buffer, int from, int to) {
+        while (from < to && (buffer[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        while (to > from && (buffer[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        return from == to ? null : new String(buffer, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the field at the column, or null if it is empty or missing
+     */
+    private static String field(List<String> fields, int column) {
+        if (column < 0 || column >= fields.size() || fields.get(column).isEmpty()) {
+            return null;
+        }
+        return fields.get(column);
+    }
+
+    /**
+     * Split a CSV line; unquoted fields are trimmed, quoted ones kept as is
+     */
+    private static List<String> csvFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            while (i < line.length() && line.charAt(i) == ' ') {
+                i++;
+            }
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < line.length() && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("text after a quoted field");
+                }
+                fields.add(field.toString());
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma < 0 ? line.length() : comma;
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            if (i >= line.length()) {
+                return fields;
+            }
+            i++; // the comma
+        }
+    }
+
+    /**
+     * Parser for one JSON Lines room: an object whose "room" and "warden"
+     * are strings and "occupants" an array of strings. Other members may
+     * hold any value except an object or array.
+     */
+    private static final class JsonLine {
+        private final String text;
+        private int pos;
+
+        JsonLine(String text) {
+            this.text = text;
+        }
+
+        void parseRoom(Map<String, Draft> rooms) {
+            String room = null;
+            String warden = null;
+            List<String> occupants = new ArrayList<>();
+            expect('{');
+            if (!peek('}')) {
+                do {
+                    String key = string();
+                    expect(':');
+                    switch (key) {
+                        case "room": room = nullableString(); break;
+                        case "warden": warden = nullableString(); break;
+                        case "occupants":
+                            if (peek('n')) {
+                                literal();
+                                break;
+                            }
+                            expect('[');
+                            if (!peek(']')) {
+                                do {
+                                    occupants.add(string());
+                                } while (consume(','));
+                            }
+                            expect(']');
+                            break;
+                        default:
+                            if (peek('"')) {
+                                string();
+                            } else {
+                                literal();
+                            }
+                    }
+                } while (consume(','));
+            }
+            expect('}');
+            skipSpaces();
+            if (pos < text.length()) {
+                throw error("text after the room object");
+            }
+            if (room == null || room.trim().isEmpty()) {
+                throw new IllegalArgumentException("missing room number");
+            }
+            Draft draft = rooms.computeIfAbsent(room, key -> new Draft());
+            draft.add(warden == null || warden.isEmpty() ? null : warden, null);
+            for (String occupant : occupants) {
+                draft.add(null, occupant.isEmpty() ? null : occupant);
+            }
+        }
+
+        private String nullableString() {
+            if (peek('n')) {
+                literal();
+                return null;
+            }
+            return string();
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"': case '\\': case '/': out.append(escaped); break;
+                    case 'b': out.append('\b'); break;
+                    case 'f': out.append('\f'); break;
+                    case 'n': out.append('\n'); break;
+                    case 'r': out.append('\r'); break;
+                    case 't': out.append('\t'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) {
+                            throw error("bad \\u escape");
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("bad \\u escape");
+                        }
+                        pos += 4;
+                        break;
+                    default:
+                        throw error("bad escape \\" + escaped);
+                }
+            }
+        }
+
+        /**
+         * Skip a number, true, false or null
+         */
+        private void literal() {
+            skipSpaces();
+            int start = pos;
+            while (pos < text.length() && ",}] \t".indexOf(text.charAt(pos)) < 0) {
+                if ("{[\"".indexOf(text.charAt(pos)) >= 0) {
+                    throw error("only strings, numbers, true, false and null are supported here");
+                }
+                pos++;
+            }
+            if (pos == start) {
+                throw error("missing value");
+            }
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        private boolean consume(char c) {
+            if (peek(c)) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(char c) {
+            skipSpaces();
+            return pos < text.length() && text.charAt(pos) == c;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (pos + 1));
+        }
+    }
+
+    private static Format formatOf(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (name.endsWith(".jsonl")) {
+            return Format.JSONL;
+        }
+        throw new IOException("Unknown room file format: " + file + " (use a .csv or .jsonl file)");
+    }
+
+    private static int lastNewline(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buffer, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
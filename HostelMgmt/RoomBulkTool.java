@@ -0,0 +1,72 @@
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Command-line tool for bulk room files (see RoomBulkFile)
+ *
+ * Usage:
+ *   java RoomBulkTool reload rooms.csv      server loads rooms.csv from its bulk directory
+ *   java RoomBulkTool export rooms.jsonl    server writes every room to its bulk directory
+ *   java RoomBulkTool download rooms.csv    every room is fetched a page at a time and
+ *                                           written to a file here
+ *
+ * The server is found through -Dhostel.servers (default localhost:1099).
+ */
+public class RoomBulkTool {
+
+    private static final int PAGE_SIZE = 500;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java RoomBulkTool reload|export|download <file>");
+            System.exit(1);
+        }
+        String servers = System.getProperty("hostel.servers", "localhost:1099");
+        try {
+            long start = System.nanoTime();
+            int rooms;
+            switch (args[0]) {
+                case "reload":
+                    rooms = StubManager.connect(RoomBulkTransfer.class, "RoomService",
+                        Arrays.asList(servers.split(","))).reloadRooms(args[1]);
+                    break;
+                case "export":
+                    rooms = StubManager.connect(RoomBulkTransfer.class, "RoomService",
+                        Arrays.asList(servers.split(","))).exportRooms(args[1]);
+                    break;
+                case "download":
+                    rooms = download(StubManager.connect(RoomService.class, "RoomService",
+                        Arrays.asList(servers.split(","))), args[1]);
+                    break;
+                default:
+                    System.err.println("Unknown command: " + args[0]);
+                    System.exit(1);
+                    return;
+            }
+            System.out.printf("%s %s: %d rooms in %d ms%n", args[0], args[1], rooms,
+                (System.nanoTime() - start) / 1_000_000);
+            System.exit(0);
+        } catch (Exception e) {
+            System.err.println(args[0] + " failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write every room to a local file, one page of rooms in memory at a time
+     */
+    static int download(RoomService service, String fileName) throws Exception {
+        try (RoomBulkFile.Writer out = RoomBulkFile.write(Paths.get(fileName))) {
+            int offset = 0;
+            while (offset >= 0) {
+                RoomPage page = service.getAllRooms(offset, PAGE_SIZE);
+                for (RoomInfo info : page.getRooms()) {
+                    out.write(info);
+                }
+                offset = page.getNextOffset();
+            }
+            out.commit();
+            return out.getRoomCount();
+        }
+    }
+}
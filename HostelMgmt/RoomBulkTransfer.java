@@ -0,0 +1,35 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote interface for loading and saving every room as a bulk file
+ * (CSV or JSON Lines, see RoomBulkFile)
+ * Files are read and written on the server, in the directory given by
+ * -Dhostel.bulkDir (default: the server's working directory); a name that
+ * leads outside it is rejected. The files are streamed, so their size is
+ * not limited by what one RMI call can carry.
+ */
+public interface RoomBulkTransfer extends Remote {
+
+    /**
+     * Load every room in the file, replacing the stored room of the same
+     * number, in one step: readers see either the old or the new rooms,
+     * never a mix, and are not held up while the file loads. Rooms that are
+     * not in the file are kept.
+     * @param fileName a .csv or .jsonl file in the bulk directory
+     * @return number of rooms loaded
+     * @throws RemoteException if this server is a replica, the file cannot
+     *         be read or is malformed, or remote communication fails
+     */
+    int reloadRooms(String fileName) throws RemoteException;
+
+    /**
+     * Write every room, ordered by room number, to a file
+     * @param fileName a .csv or .jsonl file in the bulk directory; it is
+     *        replaced only once every room is written
+     * @return number of rooms written
+     * @throws RemoteException if the file cannot be written or remote
+     *         communication fails
+     */
+    int exportRooms(String fileName) throws RemoteException;
+}
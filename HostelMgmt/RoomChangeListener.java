@@ -0,0 +1,28 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote interface a client exports to receive pushed room changes (see
+ * RoomFeed)
+ * Calls for one subscription never overlap and arrive in order of their
+ * sequence numbers.
+ */
+public interface RoomChangeListener extends Remote {
+
+    /**
+     * Receive the rooms matching the subscription's filter that changed
+     * after afterSequence, each in its latest state: a room that changed
+     * several times since the last call is sent once. When nothing changed
+     * for a while, a call with no rooms confirms that the subscription is
+     * still alive.
+     * @param subscriptionId id returned by RoomFeed.subscribe
+     * @param afterSequence sequence of the previous call, or the one the
+     *        subscription started from; every matching change between it
+     *        and changes.getCurrentVersion() is in this call
+     * @param changes changed rooms; getCurrentVersion() is this call's
+     *        sequence, to resume from after a disconnect
+     * @throws RemoteException if remote communication fails; the server
+     *         then drops the subscription
+     */
+    void roomsChanged(long subscriptionId, long afterSequence, RoomChanges changes) throws RemoteException;
+}
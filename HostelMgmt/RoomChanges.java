@@ -0,0 +1,95 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Rooms changed since a given version, returned by
+ * RoomService.getRoomsChangedSince
+ * Implements Serializable to be transferred over RMI; on the wire the rooms
+ * are written in RoomWireFormat, like RoomPage
+ */
+public class RoomChanges implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final List<RoomInfo> rooms;
+    private final long currentVersion;
+    private final boolean complete;
+    
+    public RoomChanges(List<RoomInfo> rooms, long currentVersion, boolean complete) {
+        this.rooms = rooms;
+        this.currentVersion = currentVersion;
+        this.complete = complete;
+    }
+    
+    /**
+     * @return the changed rooms, in their current state
+     */
+    public List<RoomInfo> getRooms() {
+        return rooms;
+    }
+    
+    /**
+     * @return version to ask from next time; every change up to it is
+     *         included in this or an earlier answer. For an incomplete
+     *         answer this is where the returned rooms stop, so asking again
+     *         from it returns the next batch.
+     */
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+    
+    /**
+     * @return false if more rooms changed than the requested limit; the
+     *         caller should then treat everything it has cached as stale
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+    
+    private Object writeReplace() {
+        return new Wire(this);
+    }
+    
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("RoomChanges must be sent through its wire proxy");
+    }
+    
+    /**
+     * Serialized form of a RoomChanges
+     */
+    private static final class Wire implements Externalizable {
+        private static final long serialVersionUID = 1L;
+        
+        private RoomChanges changes;
+        
+        public Wire() {
+        }
+        
+        Wire(RoomChanges changes) {
+            this.changes = changes;
+        }
+        
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            RoomWireFormat.writeVarLong(out, changes.currentVersion);
+            out.writeBoolean(changes.complete);
+            new RoomWireFormat.Writer(out).writeRooms(changes.rooms);
+        }
+        
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            long currentVersion = RoomWireFormat.readVarLong(in);
+            boolean complete = in.readBoolean();
+            changes = new RoomChanges(new RoomWireFormat.Reader(in).readRooms(), currentVersion, complete);
+        }
+        
+        private Object readResolve() {
+            return changes;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of RoomInfo used by the snapshot and journal files
+ * Layout: version (long), room number, warden contact, occupant count (int),
+ * occupant names.
+ * Strings are written as an unsigned 16-bit byte length followed by UTF-8;
+ * the length 0xFFFF stands for null.
+ */
+public final class RoomCodec {
+    
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int MAX_STRING_BYTES = NULL_LENGTH - 1;
+    
+    private RoomCodec() {
+    }
+    
+    /**
+     * @return number of bytes encode(info) will write
+     */
+    public static int encodedSize(RoomInfo info) {
+        int size = 8 + stringSize(info.getRoomNumber()) + stringSize(info.getWardenContact()) + 4;
+        for (String name : info.getOccupantNames()) {
+            size += stringSize(name);
+        }
+        return size;
+    }
+    
+    /**
+     * Reject a room that encode could not write, before it is stored anywhere
+     * @throws IllegalArgumentException if one of its strings is too long
+     */
+    public static void checkEncodable(RoomInfo info) {
+        encodedSize(info);
+    }
+    
+    public static void encode(RoomInfo info, ByteBuffer out) {
+        out.putLong(info.getVersion());
+        putString(out, info.getRoomNumber());
+        putString(out, info.getWardenContact());
+        List<String> names = info.getOccupantNames();
+        out.putInt(names.size());
+        for (String name : names) {
+            putString(out, name);
+        }
+    }
+    
+    /**
+     * Decode one room at the buffer's position
+     * @param scratch reusable buffer for string bytes, at least 64KB
+     */
+    public static RoomInfo decode(ByteBuffer in, byte[] scratch) {
+        long version = in.getLong();
+        String roomNumber = getString(in, scratch);
+        String warden = getString(in, scratch);
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 2) {
+            throw new IllegalArgumentException("Corrupt occupant count: " + count);
+        }
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(getString(in, scratch));
+        }
+        return new RoomInfo(roomNumber, names, warden, version);
+    }
+    
+    public static byte[] newScratch() {
+        return new byte[NULL_LENGTH];
+    }
+    
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 2;
+        }
+        int bytes = utf8Length(value);
+        if (bytes > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long to store: " + bytes + " bytes");
+        }
+        return 2 + bytes;
+    }
+    
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+    
+    private static String getString(ByteBuffer in, byte[] scratch) {
+        int length = in.getShort() & 0xFFFF;
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        in.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    private static int utf8Length(String value) {
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Remote interface for following room changes as they happen, instead of
+ * polling getRoomInfo or getRoomsChangedSince
+ * Changes are pushed to a RoomChangeListener the client exports, in
+ * batches: changes made close together are sent in one call, and a room
+ * that changed several times in between is sent once, in its latest state.
+ * Each call carries a sequence number (the server's change version); after
+ * a disconnect the client subscribes again from the last sequence it got
+ * and receives exactly what it missed. RoomFeedSubscriber does this for a
+ * client.
+ * Each subscriber is sent to on its own: a slow or unreachable subscriber
+ * falls behind, but never delays changes or other subscribers, and nothing
+ * is queued for it. A subscriber whose call fails is dropped.
+ */
+public interface RoomFeed extends Remote {
+
+    /**
+     * Start pushing changes to a listener
+     * @param listener exported listener to call
+     * @param filter rooms to send changes of, e.g. RoomFilter.floors("1")
+     * @param afterSequence sequence to resume from: -1 for changes from now
+     *        on, 0 to receive every room first. A sequence the server has
+     *        not reached (it restarted with fewer changes) is treated as 0.
+     * @return id of the subscription, passed with every call to the listener
+     * @throws RemoteException if the server has too many subscribers or
+     *         remote communication fails
+     */
+    long subscribe(RoomChangeListener listener, RoomFilter filter, long afterSequence) throws RemoteException;
+
+    /**
+     * Stop pushing changes to a subscription
+     * @return false if there was no such subscription (e.g. it was dropped)
+     * @throws RemoteException if remote communication fails
+     */
+    boolean unsubscribe(long subscriptionId) throws RemoteException;
+}
@@ -0,0 +1,246 @@
+import java.io.Closeable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes the changes of a RoomStore to RoomFeed subscribers
+ * Like RoomReplicator, nothing is queued per change: each subscriber only
+ * remembers the version it has been sent up to, and a delivery asks the
+ * store what changed since then. A writer does no more than flip a flag;
+ * a timer thread then wakes every subscriber once per coalescing window,
+ * so changes made close together go out in one call. Deliveries run on a
+ * pool, at most one at a time per subscriber, so a slow subscriber only
+ * holds up its own thread and catches up with a bigger batch later.
+ */
+public class RoomFeedPublisher implements Closeable {
+
+    private static final int BATCH_SIZE = 500;
+
+    // Delivery state of a subscriber
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RUNNING = 2;
+    private static final int RUNNING_DIRTY = 3; // woken again while sending
+    private static final int DROPPED = 4;
+
+    private final RoomStore store;
+    private final int maxSubscribers;
+    private final long coalesceMillis;
+    private final long heartbeatNanos;
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    // Subscriptions taken, including ones being set up; reserved before
+    // a subscriber is added, so the limit holds for concurrent subscribes
+    private final AtomicInteger subscriberSlots = new AtomicInteger();
+    // Kept to unregister it on close
+    private final Runnable versionListener = this::changed;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicBoolean wakeScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService timer;
+    private final ExecutorService senders;
+
+    /**
+     * @param maxSubscribers most subscriptions at a time
+     * @param coalesceMillis how long changes are gathered before they are sent
+     * @param heartbeatMillis longest time a subscriber goes without a call;
+     *        an empty one is sent when nothing changed
+     */
+    public RoomFeedPublisher(RoomStore store, int maxSubscribers, long coalesceMillis, long heartbeatMillis) {
+        this.store = store;
+        this.maxSubscribers = maxSubscribers;
+        this.coalesceMillis = coalesceMillis;
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "room-feed-timer"));
+        this.senders = Executors.newCachedThreadPool(r -> daemon(r, "room-feed-sender"));
+        // Twice per heartbeat, so no subscriber waits much longer than one
+        long tick = Math.max(1, heartbeatMillis / 2);
+        timer.scheduleWithFixedDelay(this::wakeAll, tick, tick, TimeUnit.MILLISECONDS);
+        store.addVersionListener(versionListener);
+    }
+
+    /**
+     * Read the settings from -Dhostel.feed.maxSubscribers (default 1000),
+     * -Dhostel.feed.coalesceMillis (50) and -Dhostel.feed.heartbeatMillis (10000)
+     */
+    public static RoomFeedPublisher fromProperties(RoomStore store) {
+        return new RoomFeedPublisher(store,
+            Integer.getInteger("hostel.feed.maxSubscribers", 1000),
+            Long.getLong("hostel.feed.coalesceMillis", 50),
+            Long.getLong("hostel.feed.heartbeatMillis", 10_000));
+    }
+
+    /**
+     * @see RoomFeed#subscribe
+     * @throws IllegalStateException if there are maxSubscribers already
+     */
+    public long subscribe(RoomChangeListener listener, RoomFilter filter, long afterSequence) {
+        int taken;
+        do {
+            taken = subscriberSlots.get();
+            if (taken >= maxSubscribers) {
+                throw new IllegalStateException("Too many subscribers (" + maxSubscribers + ")");
+            }
+        } while (!subscriberSlots.compareAndSet(taken, taken + 1));
+        long current = store.currentVersion();
+        long start = afterSequence < 0 ? current : afterSequence > current ? 0 : afterSequence;
+        Subscriber subscriber = new Subscriber(nextId.incrementAndGet(), listener, filter, start);
+        subscribers.put(subscriber.id, subscriber);
+        // The first call confirms the start, and catches up if resuming
+        subscriber.wake();
+        return subscriber.id;
+    }
+
+    /**
+     * @see RoomFeed#unsubscribe
+     */
+    public boolean unsubscribe(long subscriptionId) {
+        Subscriber subscriber = subscribers.remove(subscriptionId);
+        if (subscriber == null) {
+            return false;
+        }
+        subscriberSlots.decrementAndGet();
+        subscriber.state.set(DROPPED);
+        return true;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void close() {
+        store.removeVersionListener(versionListener);
+        timer.shutdownNow();
+        senders.shutdownNow();
+        for (Long id : new ArrayList<>(subscribers.keySet())) {
+            unsubscribe(id);
+        }
+    }
+
+    /**
+     * Runs on the writing thread: at most one wake-up is pending at a time
+     */
+    private void changed() {
+        if (wakeScheduled.compareAndSet(false, true)) {
+            try {
+                timer.schedule(this::wakeAll, coalesceMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    private void wakeAll() {
+        wakeScheduled.set(false);
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.wake();
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private final class Subscriber {
+        final long id;
+        final RoomChangeListener listener;
+        final RoomFilter filter;
+        final AtomicInteger state = new AtomicInteger(IDLE);
+        // Only touched by the delivery in progress
+        long scannedVersion;
+        long sentVersion;
+        long sentAt;
+
+        Subscriber(long id, RoomChangeListener listener, RoomFilter filter, long startVersion) {
+            this.id = id;
+            this.listener = listener;
+            this.filter = filter;
+            this.scannedVersion = startVersion;
+            this.sentVersion = startVersion;
+            this.sentAt = System.nanoTime() - heartbeatNanos;
+        }
+
+        void wake() {
+            while (true) {
+                int s = state.get();
+                if (s == IDLE) {
+                    if (state.compareAndSet(IDLE, SCHEDULED)) {
+                        try {
+                            senders.execute(this::deliver);
+                        } catch (RejectedExecutionException e) {
+                            state.set(DROPPED); // closed
+                        }
+                        return;
+                    }
+                } else if (s == RUNNING) {
+                    if (state.compareAndSet(RUNNING, RUNNING_DIRTY)) {
+                        return;
+                    }
+                } else {
+                    return; // will be sent to anyway, or dropped
+                }
+            }
+        }
+
+        private void deliver() {
+            do {
+                if (!state.compareAndSet(SCHEDULED, RUNNING) && !state.compareAndSet(RUNNING_DIRTY, RUNNING)) {
+                    return; // dropped
+                }
+                try {
+                    sendChanges();
+                } catch (RemoteException | RuntimeException e) {
+                    if (subscribers.remove(id, this)) {
+                        subscriberSlots.decrementAndGet();
+                        System.err.println("Dropped room feed subscriber " + id + ": " + e.getMessage());
+                    }
+                    state.set(DROPPED);
+                    return;
+                }
+            } while (!state.compareAndSet(RUNNING, IDLE));
+        }
+
+        /**
+         * Send everything since scannedVersion that matches the filter, a
+         * batch at a time, or a heartbeat if there is nothing and one is due
+         */
+        private void sendChanges() throws RemoteException {
+            while (true) {
+                RoomChanges changes = store.changedSince(scannedVersion, BATCH_SIZE);
+                List<RoomInfo> rooms = changes.getRooms();
+                if (!filter.matchesAll()) {
+                    rooms = new ArrayList<>();
+                    for (RoomInfo info : changes.getRooms()) {
+                        if (filter.matches(info.getRoomNumber())) {
+                            rooms.add(info);
+                        }
+                    }
+                }
+                long version = Math.max(scannedVersion, changes.getCurrentVersion());
+                long now = System.nanoTime();
+                if (!rooms.isEmpty() || (changes.isComplete() && now - sentAt >= heartbeatNanos)) {
+                    listener.roomsChanged(id, sentVersion,
+                        new RoomChanges(rooms, version, changes.isComplete()));
+                    sentVersion = version;
+                    sentAt = now;
+                }
+                scannedVersion = version;
+                if (changes.isComplete() || state.get() == DROPPED) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.Closeable;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side of a RoomFeed subscription that survives disconnects
+ * Exports itself as the listener and remembers the sequence of the last
+ * call it received. When no call arrives for longer than timeoutMillis (the
+ * server sends a heartbeat at least every -Dhostel.feed.heartbeatMillis,
+ * 10 s by default), it subscribes again from that sequence, so the handler
+ * sees every change exactly once in order even across a server restart or
+ * failover (the feed stub can be a StubManager stub).
+ */
+public class RoomFeedSubscriber implements RoomChangeListener, Closeable {
+
+    /**
+     * Receives the changes of one call to roomsChanged
+     */
+    public interface Handler {
+        void roomsChanged(long afterSequence, RoomChanges changes);
+    }
+
+    private final RoomFeed feed;
+    private final RoomFilter filter;
+    private final Handler handler;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService watchdog;
+
+    // Guarded by this; calls for any other subscription id are ignored
+    private long subscriptionId = -1;
+    private long lastSequence;
+    private long lastCallAt;
+    private boolean warned;
+    private boolean closed;
+
+    private RoomFeedSubscriber(RoomFeed feed, RoomFilter filter, long afterSequence,
+                               long timeoutMillis, Handler handler) {
+        this.feed = feed;
+        this.filter = filter;
+        this.handler = handler;
+        this.timeoutMillis = timeoutMillis;
+        this.lastSequence = afterSequence;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "room-feed-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribe to a feed
+     * @param afterSequence -1 for changes from now on, 0 for every room first,
+     *        or the last sequence a previous subscription received
+     * @param timeoutMillis silence after which the subscription is renewed
+     * @param handler called with each batch, one call at a time
+     * @throws RemoteException if the first subscribe call fails
+     */
+    public static RoomFeedSubscriber start(RoomFeed feed, RoomFilter filter, long afterSequence,
+                                           long timeoutMillis, Handler handler) throws RemoteException {
+        RoomFeedSubscriber subscriber = new RoomFeedSubscriber(feed, filter, afterSequence, timeoutMillis, handler);
+        UnicastRemoteObject.exportObject(subscriber, 0);
+        try {
+            subscriber.subscribe();
+        } catch (RemoteException e) {
+            subscriber.close();
+            throw e;
+        }
+        long period = Math.max(1, timeoutMillis / 3);
+        subscriber.watchdog.scheduleWithFixedDelay(subscriber::checkAlive, period, period, TimeUnit.MILLISECONDS);
+        return subscriber;
+    }
+
+    /**
+     * @return sequence of the last call received, to resume from later
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized void roomsChanged(long subscriptionId, long afterSequence, RoomChanges changes) {
+        if (subscriptionId != this.subscriptionId || closed) {
+            return; // from a subscription that was replaced
+        }
+        lastCallAt = System.currentTimeMillis();
+        handler.roomsChanged(afterSequence, changes);
+        lastSequence = changes.getCurrentVersion();
+    }
+
+    @Override
+    public void close() {
+        long id;
+        synchronized (this) {
+            closed = true;
+            id = subscriptionId;
+        }
+        watchdog.shutdownNow();
+        if (id >= 0) {
+            try {
+                feed.unsubscribe(id);
+            } catch (RemoteException e) {
+                // the server drops it on the next failed call anyway
+            }
+        }
+        try {
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (NoSuchObjectException e) {
+            // not exported
+        }
+    }
+
+    /**
+     * Subscribe, holding the lock so a call that arrives before subscribe
+     * returns waits until its id is known
+     */
+    private synchronized void subscribe() throws RemoteException {
+        subscriptionId = feed.subscribe(this, filter, lastSequence);
+        lastCallAt = System.currentTimeMillis();
+    }
+
+    private void checkAlive() {
+        long staleId;
+        synchronized (this) {
+            if (closed || System.currentTimeMillis() - lastCallAt < timeoutMillis) {
+                return;
+            }
+            staleId = subscriptionId;
+        }
+        try {
+            feed.unsubscribe(staleId);
+        } catch (RemoteException e) {
+            // the old server may be gone
+        }
+        try {
+            subscribe();
+            synchronized (this) {
+                warned = false;
+            }
+        } catch (RemoteException e) {
+            synchronized (this) {
+                if (!warned) {
+                    System.err.println("Room feed unavailable, retrying: " + e.getMessage());
+                    warned = true;
+                }
+            }
+        }
+    }
+}
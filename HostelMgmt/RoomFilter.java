@@ -0,0 +1,64 @@
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Selects the rooms a RoomFeed subscriber receives changes of: every room,
+ * the rooms of some floors (see RoomPartitioner.floorOf), or a set of rooms
+ * Implements Serializable to be transferred over RMI
+ */
+public final class RoomFilter implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final RoomFilter ALL = new RoomFilter(null, null);
+
+    // Null when not filtering on them
+    private final Set<String> floors;
+    private final Set<String> roomNumbers;
+
+    private RoomFilter(Set<String> floors, Set<String> roomNumbers) {
+        this.floors = floors;
+        this.roomNumbers = roomNumbers;
+    }
+
+    public static RoomFilter all() {
+        return ALL;
+    }
+
+    public static RoomFilter floors(String... floors) {
+        return new RoomFilter(copy(Arrays.asList(floors)), null);
+    }
+
+    public static RoomFilter rooms(Collection<String> roomNumbers) {
+        return new RoomFilter(null, copy(roomNumbers));
+    }
+
+    public boolean matchesAll() {
+        return floors == null && roomNumbers == null;
+    }
+
+    public boolean matches(String roomNumber) {
+        if (floors != null) {
+            return floors.contains(RoomPartitioner.floorOf(roomNumber));
+        }
+        return roomNumbers == null || roomNumbers.contains(roomNumber);
+    }
+
+    private static Set<String> copy(Collection<String> values) {
+        if (values.contains(null)) {
+            throw new IllegalArgumentException("Filter values must not be null");
+        }
+        return Collections.unmodifiableSet(new HashSet<>(values));
+    }
+
+    @Override
+    public String toString() {
+        if (floors != null) {
+            return "floors " + floors;
+        }
+        return roomNumbers != null ? roomNumbers.size() + " rooms" : "all rooms";
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over a RoomStore: occupant name and warden contact
+ * Registered as a RoomMutationListener, so every change updates the indexes
+ * inside the room's atomic update and only the entries that differ between
+ * the old and new room are touched. A bulk load through replaceAll only
+ * shows up once it is committed, and leaves nothing behind if it fails.
+ * Occupant names are kept in a sorted set of "name\0room" keys, so a name
+ * prefix search is a range scan over the matching keys only. Wardens map to
+ * the sorted set of their room numbers.
+ * Names and contacts are compared ignoring case and surrounding spaces.
+ */
+public class RoomIndex implements RoomMutationListener {
+
+    // Separates the name from the room number in occupant keys; sorts before
+    // any character a name can contain
+    private static final char KEY_SEPARATOR = '\0';
+
+    private final ConcurrentSkipListSet<String> occupants = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<String>> wardens = new ConcurrentHashMap<>();
+
+    // Keys of a bulk load held back until roomsCommitted; only touched
+    // while the store's writes are paused. Warden keys are "warden\0room".
+    private final List<String> pendingRemoved = new ArrayList<>();
+    private final List<String> pendingAdded = new ArrayList<>();
+    private final List<String> pendingWardensRemoved = new ArrayList<>();
+    private final List<String> pendingWardensAdded = new ArrayList<>();
+
+    @Override
+    public void roomChanged(RoomInfo before, RoomInfo after) {
+        List<String> removedKeys = new ArrayList<>();
+        List<String> addedKeys = new ArrayList<>();
+        occupantKeyChanges(before, after, removedKeys, addedKeys);
+        for (String key : removedKeys) {
+            occupants.remove(key);
+        }
+        occupants.addAll(addedKeys);
+        List<String> removedWardens = new ArrayList<>();
+        List<String> addedWardens = new ArrayList<>();
+        wardenKeyChanges(before, after, removedWardens, addedWardens);
+        applyWardenChanges(removedWardens, addedWardens);
+    }
+
+    /**
+     * Collect a batch of a bulk load; nothing is searchable until the load
+     * is committed
+     */
+    @Override
+    public void roomsChanged(List<RoomInfo> before, List<RoomInfo> after) {
+        for (int i = 0; i < after.size(); i++) {
+            occupantKeyChanges(before.get(i), after.get(i), pendingRemoved, pendingAdded);
+            wardenKeyChanges(before.get(i), after.get(i), pendingWardensRemoved, pendingWardensAdded);
+        }
+    }
+
+    /**
+     * Apply a bulk load; the new occupant keys are sorted first, since the
+     * skip list takes keys in order about twice as fast as in room order
+     */
+    @Override
+    public void roomsCommitted() {
+        for (String key : pendingRemoved) {
+            occupants.remove(key);
+        }
+        Collections.sort(pendingAdded);
+        occupants.addAll(pendingAdded);
+        applyWardenChanges(pendingWardensRemoved, pendingWardensAdded);
+        roomsAborted();
+    }
+
+    @Override
+    public void roomsAborted() {
+        pendingRemoved.clear();
+        pendingAdded.clear();
+        pendingWardensRemoved.clear();
+        pendingWardensAdded.clear();
+    }
+
+    /**
+     * Collect the occupant keys to remove and add for one room's change
+     */
+    private static void occupantKeyChanges(RoomInfo before, RoomInfo after,
+                                           List<String> removedKeys, List<String> addedKeys) {
+        String roomNumber = after.getRoomNumber();
+        Set<String> oldNames = before == null ? new HashSet<>() : normalizedNames(before);
+        Set<String> newNames = normalizedNames(after);
+        for (String name : oldNames) {
+            if (!newNames.contains(name)) {
+                removedKeys.add(name + KEY_SEPARATOR + roomNumber);
+            }
+        }
+        for (String name : newNames) {
+            if (!oldNames.contains(name)) {
+                addedKeys.add(name + KEY_SEPARATOR + roomNumber);
+            }
+        }
+    }
+
+    /**
+     * Collect the warden keys to remove and add for one room's change
+     */
+    private static void wardenKeyChanges(RoomInfo before, RoomInfo after,
+                                         List<String> removedKeys, List<String> addedKeys) {
+        String roomNumber = after.getRoomNumber();
+        String oldWarden = before == null ? null : normalize(before.getWardenContact());
+        String newWarden = normalize(after.getWardenContact());
+        if (oldWarden != null && !oldWarden.equals(newWarden)) {
+            removedKeys.add(oldWarden + KEY_SEPARATOR + roomNumber);
+        }
+        if (newWarden != null && !newWarden.equals(oldWarden)) {
+            addedKeys.add(newWarden + KEY_SEPARATOR + roomNumber);
+        }
+    }
+
+    private void applyWardenChanges(List<String> removedKeys, List<String> addedKeys) {
+        for (String key : removedKeys) {
+            int split = key.lastIndexOf(KEY_SEPARATOR);
+            String roomNumber = key.substring(split + 1);
+            wardens.computeIfPresent(key.substring(0, split), (warden, rooms) -> {
+                rooms.remove(roomNumber);
+                return rooms.isEmpty() ? null : rooms;
+            });
+        }
+        for (String key : addedKeys) {
+            int split = key.lastIndexOf(KEY_SEPARATOR);
+            String roomNumber = key.substring(split + 1);
+            wardens.compute(key.substring(0, split), (warden, rooms) -> {
+                if (rooms == null) {
+                    rooms = new ConcurrentSkipListSet<>();
+                }
+                rooms.add(roomNumber);
+                return rooms;
+            });
+        }
+    }
+
+    /**
+     * @return numbers of the rooms with an occupant whose name starts with
+     *         the prefix, at most limit of them, ordered by occupant name
+     */
+    public List<String> roomsByOccupantPrefix(String namePrefix, int limit) {
+        String prefix = normalize(namePrefix);
+        Set<String> found = new LinkedHashSet<>();
+        if (prefix == null || limit == 0) {
+            return new ArrayList<>(found);
+        }
+        for (String key : occupants.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+            found.add(key.substring(key.lastIndexOf(KEY_SEPARATOR) + 1));
+            if (found.size() == limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * @return numbers of the rooms looked after by this warden, in order
+     */
+    public List<String> roomsByWarden(String wardenContact) {
+        String warden = normalize(wardenContact);
+        Set<String> rooms = warden == null ? null : wardens.get(warden);
+        return rooms == null ? new ArrayList<>() : new ArrayList<>(rooms);
+    }
+
+    /**
+     * @return true if some occupant of the room has a name starting with the prefix
+     */
+    public static boolean hasOccupantWithPrefix(RoomInfo info, String namePrefix) {
+        return firstOccupantWithPrefix(info, namePrefix) != null;
+    }
+
+    /**
+     * @return the first (in index order) of the room's occupant names that
+     *         start with the prefix, normalized, or null if there is none;
+     *         roomsByOccupantPrefix returns rooms ordered by this name
+     */
+    public static String firstOccupantWithPrefix(RoomInfo info, String namePrefix) {
+        String prefix = normalize(namePrefix);
+        String first = null;
+        for (String name : normalizedNames(info)) {
+            if (name.startsWith(prefix) && (first == null || name.compareTo(first) < 0)) {
+                first = name;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * @return true if the room is looked after by this warden
+     */
+    public static boolean hasWarden(RoomInfo info, String wardenContact) {
+        String warden = normalize(wardenContact);
+        return warden != null && warden.equals(normalize(info.getWardenContact()));
+    }
+
+    private static Set<String> normalizedNames(RoomInfo info) {
+        Set<String> names = new HashSet<>();
+        for (String name : info.getOccupantNames()) {
+            String normalized = normalize(name);
+            if (normalized != null) {
+                names.add(normalized);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the lower-cased, trimmed text, or null if there is none
+     */
+    private static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        String trimmed = text.trim();
+        return trimmed.isEmpty() ? null : trimmed.toLowerCase(Locale.ROOT);
+    }
+}
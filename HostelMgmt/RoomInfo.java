@@ -1,21 +1,40 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Data model for room information
- * Implements Serializable to be transferred over RMI
+ * Implements Serializable to be transferred over RMI; on the wire it is
+ * replaced by a compact proxy (see RoomWireFormat)
+ * Instances are immutable snapshots: changes produce a new RoomInfo, so a
+ * snapshot can be shared between threads without locking
+ * The version is assigned by the server on every change and only grows, so
+ * clients can tell whether a cached copy is out of date
  */
 public class RoomInfo implements Serializable {
     private static final long serialVersionUID = 1L;
     
-    private String roomNumber;
-    private List<String> occupantNames;
-    private String wardenContact;
+    private final String roomNumber;
+    private final List<String> occupantNames;
+    private final String wardenContact;
+    private final long version;
     
     public RoomInfo(String roomNumber, List<String> occupantNames, String wardenContact) {
+        this(roomNumber, occupantNames, wardenContact, 0L);
+    }
+    
+    public RoomInfo(String roomNumber, List<String> occupantNames, String wardenContact, long version) {
         this.roomNumber = roomNumber;
-        this.occupantNames = occupantNames;
+        this.occupantNames = Collections.unmodifiableList(new ArrayList<>(occupantNames));
         this.wardenContact = wardenContact;
+        this.version = version;
     }
     
     public String getRoomNumber() {
@@ -30,10 +49,86 @@ public class RoomInfo implements Serializable {
         return wardenContact;
     }
     
+    /**
+     * @return the server's version of this room, 0 if it was never stored
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * @return a copy of this room carrying the given version
+     */
+    public RoomInfo withVersion(long newVersion) {
+        return new RoomInfo(roomNumber, occupantNames, wardenContact, newVersion);
+    }
+    
+    /**
+     * @return a copy of this room with the given occupant added
+     */
+    public RoomInfo withOccupant(String occupantName) {
+        List<String> names = new ArrayList<>(occupantNames);
+        names.add(occupantName);
+        return new RoomInfo(roomNumber, names, wardenContact, version);
+    }
+    
+    /**
+     * @return a copy of this room with the given occupant removed
+     */
+    public RoomInfo withoutOccupant(String occupantName) {
+        List<String> names = new ArrayList<>(occupantNames);
+        names.remove(occupantName);
+        return new RoomInfo(roomNumber, names, wardenContact, version);
+    }
+    
+    private Object writeReplace() {
+        return new Wire(this);
+    }
+    
+    /**
+     * RoomInfo is only ever sent as a Wire proxy; reject a stream that
+     * claims to hold one directly
+     */
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("RoomInfo must be sent through its wire proxy");
+    }
+    
+    /**
+     * Serialized form of a single RoomInfo
+     * Deserialized rooms are rebuilt through the constructor, so the
+     * occupant list is always an unmodifiable copy
+     */
+    private static final class Wire implements Externalizable {
+        private static final long serialVersionUID = 1L;
+        
+        private RoomInfo info;
+        
+        public Wire() {
+        }
+        
+        Wire(RoomInfo info) {
+            this.info = info;
+        }
+        
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            new RoomWireFormat.Writer(out).writeRoom(info);
+        }
+        
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            info = new RoomWireFormat.Reader(in).readRoom();
+        }
+        
+        private Object readResolve() {
+            return info;
+        }
+    }
+    
     @Override
     public String toString() {
         return "Room: " + roomNumber + 
                "\nOccupants: " + String.join(", ", occupantNames) +
                "\nWarden Contact: " + wardenContact;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,192 @@
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side cache of RoomInfo
+ * Holds at most maxEntries rooms (least recently used are evicted). A
+ * cached room is served without any remote call for up to ttlMillis after
+ * it was last confirmed current. Once that time has passed, one call to
+ * getRoomsChangedSince confirms every cached room at once: rooms that
+ * changed are replaced, and all others count as confirmed again.
+ * Rooms that were not found are cached too, so repeated lookups of a wrong
+ * number do not reach the server either.
+ * When the cache follows a RoomFeed (applyChanges), changes arrive as they
+ * happen and each one confirms the rest, so it does not need to ask at all.
+ */
+public class RoomInfoCache {
+    
+    // Largest number of changes fetched per sync; beyond that the cache is cleared
+    private static final int SYNC_LIMIT = 1000;
+    
+    // Stands in for "room not found" in the map
+    private static final RoomInfo MISSING = new RoomInfo("", Collections.<String>emptyList(), "");
+    
+    private final RoomService service;
+    private final long ttlMillis;
+    private final Map<String, CachedRoom> entries;
+    
+    // Version of the last sync, -1 before the first one
+    private long syncedVersion = -1;
+    private long syncedAt;
+    private long hits;
+    private long misses;
+    
+    public RoomInfoCache(RoomService service, int maxEntries, long ttlMillis) {
+        this.service = service;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, CachedRoom>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRoom> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Remote calls are made without holding the cache's lock, so other
+     * threads keep using the cache while one waits for the server
+     * @return the room, or null if it does not exist
+     */
+    public RoomInfo getRoomInfo(String roomNumber) throws RemoteException {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            CachedRoom cached = entries.get(roomNumber);
+            if (cached != null && !isStale(cached, now)) {
+                hits++;
+                return cached.value();
+            }
+        }
+        
+        sync(now);
+        long version;
+        synchronized (this) {
+            CachedRoom cached = entries.get(roomNumber);
+            if (cached != null && !isStale(cached, now)) {
+                hits++;
+                return cached.value();
+            }
+            misses++;
+            version = syncedVersion;
+        }
+        
+        RoomInfo info = service.getRoomInfo(roomNumber);
+        synchronized (this) {
+            // A sync that finished meanwhile skipped this room, as it was not
+            // cached yet; caching it now could keep a change it missed
+            if (syncedVersion == version) {
+                storeIfNewer(roomNumber, info == null ? MISSING : info, now);
+            }
+        }
+        return info;
+    }
+    
+    /**
+     * Store a room the caller fetched some other way (e.g. a bulk call)
+     */
+    public synchronized void put(RoomInfo info) {
+        storeIfNewer(info.getRoomNumber(), info, System.currentTimeMillis());
+    }
+    
+    /**
+     * Apply changes pushed by a RoomFeedSubscriber that follows every room
+     * Cached rooms that changed are replaced. If the changes carry on from
+     * the version the cache was synced to, all other cached rooms count as
+     * confirmed up to the changes' version, as after a sync.
+     */
+    public synchronized void applyChanges(long afterVersion, RoomChanges changes) {
+        long now = System.currentTimeMillis();
+        replaceCached(changes, now);
+        if (syncedVersion >= 0 && afterVersion <= syncedVersion) {
+            syncedVersion = Math.max(syncedVersion, changes.getCurrentVersion());
+            syncedAt = now;
+        }
+    }
+    
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    public synchronized long getHits() {
+        return hits;
+    }
+    
+    public synchronized long getMisses() {
+        return misses;
+    }
+    
+    private boolean isStale(CachedRoom cached, long now) {
+        return now - Math.max(cached.confirmedAt, syncedAt) >= ttlMillis;
+    }
+    
+    /**
+     * Bring every cached room up to date with one remote call, if the last
+     * sync is older than the TTL; the call is made without the lock
+     */
+    private void sync(long now) throws RemoteException {
+        long from;
+        synchronized (this) {
+            if (syncedVersion >= 0 && now - syncedAt < ttlMillis) {
+                return;
+            }
+            from = syncedVersion;
+        }
+        if (from < 0) {
+            // First use: nothing cached yet, only learn the current version
+            RoomChanges baseline = service.getRoomsChangedSince(Long.MAX_VALUE, 0);
+            synchronized (this) {
+                if (syncedVersion < 0) {
+                    syncedVersion = baseline.getCurrentVersion();
+                    syncedAt = now;
+                }
+            }
+            return;
+        }
+        RoomChanges changes = service.getRoomsChangedSince(from, SYNC_LIMIT);
+        synchronized (this) {
+            if (!changes.isComplete() && syncedVersion == from) {
+                entries.clear();
+            } else {
+                // Includes rooms created since, which replaces their MISSING entry
+                replaceCached(changes, now);
+            }
+            if (changes.getCurrentVersion() >= syncedVersion) {
+                syncedVersion = changes.getCurrentVersion();
+                syncedAt = Math.max(syncedAt, now);
+            }
+        }
+    }
+    
+    /**
+     * Replace the cached rooms that changed; rooms not cached stay out
+     */
+    private void replaceCached(RoomChanges changes, long now) {
+        for (RoomInfo info : changes.getRooms()) {
+            if (entries.containsKey(info.getRoomNumber())) {
+                storeIfNewer(info.getRoomNumber(), info, now);
+            }
+        }
+    }
+    
+    private void storeIfNewer(String roomNumber, RoomInfo info, long now) {
+        CachedRoom cached = entries.get(roomNumber);
+        if (cached == null || cached.info.getVersion() <= info.getVersion()) {
+            entries.put(roomNumber, new CachedRoom(info, now));
+        }
+    }
+    
+    private static final class CachedRoom {
+        final RoomInfo info;
+        final long confirmedAt;
+        
+        CachedRoom(RoomInfo info, long confirmedAt) {
+            this.info = info;
+            this.confirmedAt = confirmedAt;
+        }
+        
+        RoomInfo value() {
+            return info == MISSING ? null : info;
+        }
+    }
+}
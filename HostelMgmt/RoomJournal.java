@@ -0,0 +1,378 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of room changes with group commit
+ * Each record holds the kind of change and the full room after it, so
+ * replaying a record simply stores that room. Writers append to an
+ * in-memory buffer; one flusher thread writes whatever has accumulated and
+ * forces it to disk with a single fsync, so concurrent writers share the
+ * cost of each fsync instead of paying one per request. A failed write is
+ * not final: the flusher cuts the file back to where the write began and
+ * tries the same bytes again until they are on disk.
+ * Record layout: payload length (int), CRC32 of payload (int), payload
+ * (change kind byte + RoomCodec room). A torn or corrupt tail left by a
+ * crash is detected by its length or CRC and cut off on replay.
+ * The records of a bulk load sit between a BULK_BEGIN and a BULK_END or
+ * BULK_ABORT marker (payload: the kind byte alone). Replay applies such a
+ * group only once it sees the end marker; a group the crash left open is
+ * cut off like a torn record.
+ */
+public class RoomJournal implements Closeable {
+
+    public static final byte CREATE = 1;
+    public static final byte ALLOCATE = 2;
+    public static final byte VACATE = 3;
+    public static final byte UPDATE = 4;
+    public static final byte BULK_BEGIN = 5;
+    public static final byte BULK_END = 6;
+    public static final byte BULK_ABORT = 7;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    // Pause before writing again after a failed write
+    private static final long RETRY_MILLIS = 1000;
+
+    private final Path path;
+    private final Object lock = new Object();
+    // Held while the flusher writes, and while rotate swaps files
+    private final Object ioLock = new Object();
+
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    // File size before the write being retried, -1 when none is; guarded by ioLock
+    private long writeStart = -1;
+    private long appendedTicket;
+    private long durableTicket;
+    // Error of the last write, until a write succeeds again
+    private IOException failure;
+    private boolean closed;
+    private final Thread flusher;
+
+    /**
+     * Open the journal for appending; call replay first to recover its contents
+     */
+    public RoomJournal(Path path) throws IOException {
+        this.path = path;
+        this.channel = openForAppend(path);
+        this.flusher = new Thread(this::flushLoop, "room-journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Pass every intact record to the consumer and cut off any torn tail
+     * Records of an aborted bulk load are skipped.
+     * @return number of records replayed
+     */
+    public static int replay(Path path, Consumer<RoomInfo> consumer) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int records = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] scratch = RoomCodec.newScratch();
+            CRC32 crc = new CRC32();
+            int good = 0;
+            // Records of the bulk load in progress, and where its BEGIN starts
+            List<RoomInfo> group = null;
+            int groupStart = 0;
+            while (in.remaining() >= RECORD_HEADER_BYTES) {
+                int length = in.getInt();
+                int checksum = in.getInt();
+                if (length < 1 || length > in.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = in.slice();
+                payload.limit(length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                int start = in.position() - RECORD_HEADER_BYTES;
+                byte kind = payload.get();
+                if (kind == BULK_BEGIN || kind == BULK_END || kind == BULK_ABORT) {
+                    if (kind == BULK_BEGIN) {
+                        group = new ArrayList<>();
+                        groupStart = start;
+                    } else if (group != null) {
+                        if (kind == BULK_END) {
+                            group.forEach(consumer);
+                            records += group.size();
+                        }
+                        group = null;
+                    }
+                    in.position(in.position() + length);
+                    good = in.position();
+                    continue;
+                }
+                // Other kinds are informational, replay just stores the room
+                RoomInfo info;
+                try {
+                    info = RoomCodec.decode(payload, scratch);
+                } catch (RuntimeException e) {
+                    break;
+                }
+                if (group != null) {
+                    group.add(info);
+                } else {
+                    consumer.accept(info);
+                    records++;
+                }
+                in.position(in.position() + length);
+                good = in.position();
+            }
+            if (group != null) {
+                good = groupStart;
+            }
+            if (good < channel.size()) {
+                channel.truncate(good);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Work out what kind of change turned before into after
+     */
+    public static byte kindOf(RoomInfo before, RoomInfo after) {
+        if (before == null) {
+            return CREATE;
+        }
+        int delta = after.getOccupantNames().size() - before.getOccupantNames().size();
+        if (delta > 0 && Objects.equals(after.getWardenContact(), before.getWardenContact())) {
+            return ALLOCATE;
+        }
+        if (delta < 0 && Objects.equals(after.getWardenContact(), before.getWardenContact())) {
+            return VACATE;
+        }
+        return UPDATE;
+    }
+
+    /**
+     * Queue a record; it becomes durable with the next group commit
+     * Never blocks on disk, so it is safe to call inside a store update.
+     * @return ticket to pass to awaitDurable
+     */
+    public long append(byte kind, RoomInfo info) {
+        return appendRecord(kind, info);
+    }
+
+    /**
+     * Queue a BULK_BEGIN, BULK_END or BULK_ABORT marker, like append
+     * @return ticket to pass to awaitDurable
+     */
+    public long appendMarker(byte kind) {
+        return appendRecord(kind, null);
+    }
+
+    private long appendRecord(byte kind, RoomInfo info) {
+        int length = 1 + (info == null ? 0 : RoomCodec.encodedSize(info));
+        synchronized (lock) {
+            ensureCapacity(RECORD_HEADER_BYTES + length);
+            int start = pending.position();
+            pending.putInt(length).putInt(0).put(kind);
+            if (info != null) {
+                RoomCodec.encode(info, pending);
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer payload = pending.duplicate();
+            payload.position(start + RECORD_HEADER_BYTES).limit(start + RECORD_HEADER_BYTES + length);
+            crc.update(payload);
+            pending.putInt(start + 4, (int) crc.getValue());
+            lock.notifyAll();
+            return ++appendedTicket;
+        }
+    }
+
+    /**
+     * @return ticket of the most recently appended record
+     */
+    public long lastTicket() {
+        synchronized (lock) {
+            return appendedTicket;
+        }
+    }
+
+    /**
+     * Fail if the last write failed and has not been retried successfully yet
+     * Lets a caller refuse a change before applying it, rather than apply it
+     * and then report that it could not be saved.
+     */
+    public void checkWritable() throws IOException {
+        synchronized (lock) {
+            if (failure != null) {
+                throw new IOException("Journal write failed, retrying: " + failure.getMessage(), failure);
+            }
+            if (closed) {
+                throw new IOException("Journal closed");
+            }
+        }
+    }
+
+    /**
+     * Wait until the record with this ticket (and every earlier one) is on disk
+     * Fails while the write holding it is being retried; the record stays
+     * queued and is saved once a retry succeeds.
+     */
+    public void awaitDurable(long ticket) throws IOException {
+        synchronized (lock) {
+            while (durableTicket < ticket) {
+                if (failure != null) {
+                    throw new IOException("Journal write failed, retrying: " + failure.getMessage(), failure);
+                }
+                if (closed) {
+                    throw new IOException("Journal closed");
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for journal", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move the current journal to rotatedPath and start a new, empty one
+     * Must be called while no appends can happen (RoomStore.withWritesPaused).
+     */
+    public void rotate(Path rotatedPath) throws IOException {
+        awaitDurable(lastTicket());
+        synchronized (ioLock) {
+            channel.close();
+            Files.move(path, rotatedPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = openForAppend(path);
+        }
+    }
+
+    /**
+     * @return current size of the journal file in bytes
+     */
+    public long size() throws IOException {
+        synchronized (ioLock) {
+            return channel.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitDurable(lastTicket());
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            synchronized (ioLock) {
+                channel.close();
+            }
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            synchronized (lock) {
+                while (pending.position() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                ByteBuffer full = pending;
+                pending = writing;
+                writing = full;
+                target = appendedTicket;
+            }
+
+            writing.flip();
+            IOException error;
+            while ((error = writeOut(writing)) != null) {
+                synchronized (lock) {
+                    failure = error;
+                    lock.notifyAll();
+                    try {
+                        lock.wait(RETRY_MILLIS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+            }
+            writing.clear();
+
+            synchronized (lock) {
+                failure = null;
+                durableTicket = target;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Write the bytes and force them to disk
+     * On a retry the file is cut back to its size before the first attempt,
+     * so a failed write never leaves a torn record in the middle of the
+     * journal, and a channel the error closed is opened again.
+     * @return null once the bytes are on disk, else the error
+     */
+    private IOException writeOut(ByteBuffer bytes) {
+        synchronized (ioLock) {
+            try {
+                if (!channel.isOpen()) {
+                    channel = openForAppend(path);
+                }
+                if (writeStart < 0) {
+                    writeStart = channel.size();
+                } else if (channel.size() > writeStart) {
+                    channel.truncate(writeStart);
+                }
+                bytes.rewind();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                channel.force(false);
+                writeStart = -1;
+                return null;
+            } catch (IOException e) {
+                return e;
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (pending.remaining() < extra) {
+            int capacity = Math.max(pending.capacity() * 2, pending.position() + extra);
+            ByteBuffer bigger = ByteBuffer.allocate(capacity);
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+
+    private static FileChannel openForAppend(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List of rooms returned by the RoomService methods that answer with a
+ * plain List<RoomInfo>, such as getRoomInfos
+ * Implements Serializable to be transferred over RMI; on the wire the whole
+ * list is written in RoomWireFormat, each warden contact only once, like
+ * RoomPage. The receiver gets an unmodifiable list. May contain nulls.
+ */
+final class RoomList extends AbstractList<RoomInfo> implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<RoomInfo> rooms;
+
+    RoomList(List<RoomInfo> rooms) {
+        this.rooms = rooms;
+    }
+
+    @Override
+    public RoomInfo get(int index) {
+        return rooms.get(index);
+    }
+
+    @Override
+    public int size() {
+        return rooms.size();
+    }
+
+    private Object writeReplace() {
+        return new Wire(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("RoomList must be sent through its wire proxy");
+    }
+
+    /**
+     * Serialized form of a RoomList
+     */
+    private static final class Wire implements Externalizable {
+        private static final long serialVersionUID = 1L;
+
+        private List<RoomInfo> rooms;
+
+        public Wire() {
+        }
+
+        Wire(RoomList list) {
+            this.rooms = list.rooms;
+        }
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            new RoomWireFormat.Writer(out).writeRooms(rooms);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            rooms = new RoomWireFormat.Reader(in).readRooms();
+            if (rooms == null) {
+                throw new InvalidObjectException("RoomList without rooms");
+            }
+        }
+
+        private Object readResolve() {
+            return rooms;
+        }
+    }
+}
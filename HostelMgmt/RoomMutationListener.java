@@ -0,0 +1,45 @@
+import java.util.List;
+
+/**
+ * Receives every change made to a RoomStore
+ * Called inside the room's atomic update, so it must be quick and must not
+ * touch the same store. Throwing an unchecked exception rejects the change.
+ */
+public interface RoomMutationListener {
+    
+    /**
+     * @param before the room before the change, or null if it was just created
+     * @param after the room after the change
+     */
+    void roomChanged(RoomInfo before, RoomInfo after);
+    
+    /**
+     * Receive many changes at once, when RoomStore.replaceAll loads rooms
+     * in bulk; called while writes are paused, once per batch of rooms, so
+     * one reload can call it several times, followed by roomsCommitted or
+     * roomsAborted. A listener with effects others can see should hold
+     * them back until roomsCommitted. By default each change is passed to
+     * roomChanged in turn, and is not undone by an abort.
+     * @param before the rooms before the change, null for rooms just created
+     * @param after the rooms after the change, in the same order
+     */
+    default void roomsChanged(List<RoomInfo> before, List<RoomInfo> after) {
+        for (int i = 0; i < after.size(); i++) {
+            roomChanged(before.get(i), after.get(i));
+        }
+    }
+    
+    /**
+     * replaceAll has passed every room to roomsChanged and swaps them in
+     * next; must not throw
+     */
+    default void roomsCommitted() {
+    }
+    
+    /**
+     * replaceAll gave up after a listener threw: forget the changes passed
+     * to roomsChanged since the last commit, none of them is swapped in
+     */
+    default void roomsAborted() {
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One page of rooms returned by RoomService.getAllRooms
+ * Implements Serializable to be transferred over RMI; on the wire the rooms
+ * are written in RoomWireFormat, each warden contact only once per page
+ */
+public class RoomPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final List<RoomInfo> rooms;
+    private final int offset;
+    private final int totalRooms;
+    
+    public RoomPage(List<RoomInfo> rooms, int offset, int totalRooms) {
+        this.rooms = rooms;
+        this.offset = offset;
+        this.totalRooms = totalRooms;
+    }
+    
+    public List<RoomInfo> getRooms() {
+        return rooms;
+    }
+    
+    public int getOffset() {
+        return offset;
+    }
+    
+    public int getTotalRooms() {
+        return totalRooms;
+    }
+    
+    /**
+     * @return offset of the next page, or -1 if this is the last page
+     */
+    public int getNextOffset() {
+        int next = offset + rooms.size();
+        return next < totalRooms && !rooms.isEmpty() ? next : -1;
+    }
+    
+    private Object writeReplace() {
+        return new Wire(this);
+    }
+    
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("RoomPage must be sent through its wire proxy");
+    }
+    
+    /**
+     * Serialized form of a RoomPage
+     */
+    private static final class Wire implements Externalizable {
+        private static final long serialVersionUID = 1L;
+        
+        private RoomPage page;
+        
+        public Wire() {
+        }
+        
+        Wire(RoomPage page) {
+            this.page = page;
+        }
+        
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            RoomWireFormat.writeVarLong(out, page.offset);
+            RoomWireFormat.writeVarLong(out, page.totalRooms);
+            new RoomWireFormat.Writer(out).writeRooms(page.rooms);
+        }
+        
+        @Override
+        public void readExternal(ObjectInput in) throws IOException {
+            int offset = (int) RoomWireFormat.readVarLong(in);
+            int totalRooms = (int) RoomWireFormat.readVarLong(in);
+            page = new RoomPage(new RoomWireFormat.Reader(in).readRooms(), offset, totalRooms);
+        }
+        
+        private Object readResolve() {
+            return page;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Decides which shard holds a room
+ * FLOOR keeps every room of a floor (or block) on the same shard: the floor
+ * is the room number without its last two characters ("101" and "120" are
+ * floor 1, "1203" is floor 12), and numeric floors go round-robin over the
+ * shards. Other prefixes (e.g. block letters) are hashed.
+ * HASH uses consistent hashing: every shard owns many points on a hash
+ * ring and a room goes to the first point at or after its own hash. Rooms
+ * spread evenly whatever their numbering, and adding a shard would move
+ * only about 1/n of the rooms.
+ * Every client and server of a cluster must use the same scheme and shard
+ * count.
+ */
+public final class RoomPartitioner {
+
+    public enum Scheme { FLOOR, HASH }
+
+    // Ring points per shard; more points give a more even split
+    private static final int POINTS_PER_SHARD = 128;
+
+    private final Scheme scheme;
+    private final int shardCount;
+    private final int[] ringHashes; // sorted ring points, HASH only
+    private final int[] ringShards; // shard owning each ring point
+
+    public RoomPartitioner(Scheme scheme, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        this.scheme = scheme;
+        this.shardCount = shardCount;
+        if (scheme == Scheme.HASH) {
+            long[] points = new long[shardCount * POINTS_PER_SHARD];
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (int p = 0; p < POINTS_PER_SHARD; p++) {
+                    int hash = mix(("shard-" + shard + "#" + p).hashCode());
+                    // Sort by hash, keeping the shard in the low bits
+                    points[shard * POINTS_PER_SHARD + p] = ((long) hash << 32) | shard;
+                }
+            }
+            Arrays.sort(points);
+            ringHashes = new int[points.length];
+            ringShards = new int[points.length];
+            for (int i = 0; i < points.length; i++) {
+                ringHashes[i] = (int) (points[i] >> 32);
+                ringShards[i] = (int) points[i];
+            }
+        } else {
+            ringHashes = null;
+            ringShards = null;
+        }
+    }
+
+    /**
+     * @param scheme "floor" or "hash"
+     */
+    public static RoomPartitioner named(String scheme, int shardCount) {
+        return new RoomPartitioner(Scheme.valueOf(scheme.trim().toUpperCase(Locale.ROOT)), shardCount);
+    }
+
+    public Scheme getScheme() {
+        return scheme;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return index of the shard that holds the room, from 0 to shardCount - 1
+     */
+    public int shardFor(String roomNumber) {
+        if (shardCount == 1) {
+            return 0;
+        }
+        if (scheme == Scheme.FLOOR) {
+            String floor = floorOf(roomNumber);
+            int number = parseFloor(floor);
+            return Math.floorMod(number >= 0 ? number : mix(floor.hashCode()), shardCount);
+        }
+        int hash = mix(roomNumber.hashCode());
+        int pos = Arrays.binarySearch(ringHashes, hash);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return ringShards[pos == ringHashes.length ? 0 : pos];
+    }
+
+    /**
+     * @return the floor (or block) of a room: its number without the last
+     *         two characters, or the whole number if it is that short
+     */
+    public static String floorOf(String roomNumber) {
+        return roomNumber.length() > 2 ? roomNumber.substring(0, roomNumber.length() - 2) : roomNumber;
+    }
+
+    /**
+     * @return the floor as a number, or -1 if it is not all digits
+     */
+    private static int parseFloor(String floor) {
+        if (floor.isEmpty() || floor.length() > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 0; i < floor.length(); i++) {
+            char c = floor.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Spread the bits of String.hashCode, whose low bits are poorly mixed
+     * for short similar strings (MurmurHash3 finalizer)
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return scheme.name().toLowerCase(Locale.ROOT) + " over " + shardCount + " shards";
+    }
+}
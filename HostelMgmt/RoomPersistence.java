@@ -0,0 +1,179 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a RoomStore durable across restarts
+ * The data directory holds a compact snapshot (rooms.snapshot) and a
+ * journal of the changes made since (rooms.journal). On startup the
+ * snapshot is loaded through a memory-mapped file and the journal replayed
+ * over it. While running, every change is appended to the journal (group
+ * commit), and a background task periodically folds the journal into a new
+ * snapshot so it never grows without bound.
+ */
+public class RoomPersistence implements Closeable {
+    
+    private static final String SNAPSHOT_FILE = "rooms.snapshot";
+    private static final String JOURNAL_FILE = "rooms.journal";
+    // Journal being folded into a snapshot; only present after a crash mid-compaction
+    private static final String ROTATED_JOURNAL_FILE = "rooms.journal.compacting";
+    
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path rotatedJournalPath;
+    private final long snapshotIntervalSeconds;
+    private RoomJournal journal;
+    private RoomStore store;
+    private ScheduledExecutorService compactor;
+    // Journal ticket of the last change each thread made
+    private final ThreadLocal<long[]> lastTicket = ThreadLocal.withInitial(() -> new long[1]);
+    
+    public RoomPersistence(Path dataDir, long snapshotIntervalSeconds) throws IOException {
+        Files.createDirectories(dataDir);
+        this.snapshotPath = dataDir.resolve(SNAPSHOT_FILE);
+        this.journalPath = dataDir.resolve(JOURNAL_FILE);
+        this.rotatedJournalPath = dataDir.resolve(ROTATED_JOURNAL_FILE);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+    
+    /**
+     * Load the saved rooms into the store, then record every later change
+     * @return number of rooms loaded (0 for a new data directory)
+     */
+    public int open(RoomStore store) throws IOException {
+        this.store = store;
+        // Later records for a room replace earlier ones, so collect the final
+        // state of every room first and load the store in one bulk step
+        Map<String, RoomInfo> saved = new HashMap<>();
+        Consumer<RoomInfo> collect = info -> saved.put(info.getRoomNumber(), info);
+        RoomSnapshot.read(snapshotPath, collect);
+        RoomJournal.replay(rotatedJournalPath, collect);
+        RoomJournal.replay(journalPath, collect);
+        store.restoreAll(saved.values());
+        if (Files.exists(rotatedJournalPath)) {
+            // A compaction was interrupted: finish it before the next one
+            // rotates the journal over this file
+            RoomSnapshot.write(snapshotPath, store.snapshot());
+            Files.delete(rotatedJournalPath);
+        }
+        
+        journal = new RoomJournal(journalPath);
+        store.addListener(new JournalListener());
+        
+        if (snapshotIntervalSeconds > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "room-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+        return store.size();
+    }
+    
+    /**
+     * Fail if changes cannot be saved right now; see RoomJournal.checkWritable
+     */
+    public void checkWritable() throws IOException {
+        journal.checkWritable();
+    }
+    
+    /**
+     * Wait until the last change made by this thread is on disk
+     * Other threads' later changes are not waited for.
+     */
+    public void awaitDurable() throws IOException {
+        journal.awaitDurable(lastTicket.get()[0]);
+    }
+    
+    /**
+     * Write a new snapshot and discard the journal records it covers
+     * Writers are paused only while the journal file is switched; the
+     * snapshot itself is written while reads and writes carry on.
+     */
+    public synchronized void compact() throws IOException {
+        if (journal.size() == 0) {
+            return;
+        }
+        store.withWritesPaused(() -> {
+            try {
+                journal.rotate(rotatedJournalPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // Holds every change in the rotated journal, plus possibly some in
+        // the new one, which replaying the new journal on startup makes harmless
+        List<RoomInfo> rooms = store.snapshot();
+        RoomSnapshot.write(snapshotPath, rooms);
+        Files.deleteIfExists(rotatedJournalPath);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        journal.close();
+    }
+    
+    /**
+     * Appends every change to the journal, and brackets the batches of a
+     * bulk load with markers so a reload that fails or is cut short by a
+     * crash is not replayed
+     */
+    private class JournalListener implements RoomMutationListener {
+        
+        // Only touched while the store's writes are paused
+        private boolean inBulk;
+        
+        @Override
+        public void roomChanged(RoomInfo before, RoomInfo after) {
+            lastTicket.get()[0] = journal.append(RoomJournal.kindOf(before, after), after);
+        }
+        
+        @Override
+        public void roomsChanged(List<RoomInfo> before, List<RoomInfo> after) {
+            if (!inBulk) {
+                journal.appendMarker(RoomJournal.BULK_BEGIN);
+                inBulk = true;
+            }
+            RoomMutationListener.super.roomsChanged(before, after);
+        }
+        
+        @Override
+        public void roomsCommitted() {
+            endBulk(RoomJournal.BULK_END);
+        }
+        
+        @Override
+        public void roomsAborted() {
+            endBulk(RoomJournal.BULK_ABORT);
+        }
+        
+        private void endBulk(byte marker) {
+            if (inBulk) {
+                lastTicket.get()[0] = journal.appendMarker(marker);
+                inBulk = false;
+            }
+        }
+    }
+    
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Room snapshot failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Remote interface a replica offers to its primary
+ * The primary sends every room that changed, in its state after the change
+ * and with the version the primary gave it; the replica stores the rooms
+ * exactly as received.
+ */
+public interface RoomReplication extends Remote {
+
+    /**
+     * Store rooms changed on the primary
+     * @param rooms Changed rooms, keeping the primary's versions
+     * @param primaryVersion Version of the primary that these rooms bring
+     *        the replica up to
+     * @throws RemoteException if this server is not a replica or remote
+     *         communication fails
+     */
+    void applyChanges(List<RoomInfo> rooms, long primaryVersion) throws RemoteException;
+
+    /**
+     * Get the primary version this replica is up to date with
+     * @return version last passed to applyChanges, 0 for a new replica
+     * @throws RemoteException if remote communication fails
+     */
+    long getReplicatedVersion() throws RemoteException;
+}
@@ -0,0 +1,121 @@
+import java.io.Closeable;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ships every change on the primary's RoomStore to its replicas
+ * Each replica has its own sender thread that remembers the primary version
+ * the replica has acknowledged. When the store reports a change, the thread
+ * asks the store what changed since that version and sends the rooms in
+ * batches. Nothing is queued per change: a replica that is slow or down
+ * simply falls behind and is caught up from its last version when it comes
+ * back, so a dead replica never holds memory or slows down writes.
+ */
+public class RoomReplicator implements Closeable {
+
+    private static final int BATCH_SIZE = 500;
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RoomStore store;
+    private final List<ReplicaLink> links = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    public RoomReplicator(RoomStore store) {
+        this.store = store;
+        store.addVersionListener(() -> {
+            for (ReplicaLink link : links) {
+                link.wake();
+            }
+        });
+    }
+
+    /**
+     * Start sending changes to the replica bound as name in the registry at host:port
+     */
+    public void addReplica(String host, int port, String name) {
+        ReplicaLink link = new ReplicaLink(host, port, name);
+        links.add(link);
+        link.thread.start();
+    }
+
+    /**
+     * @return how many versions each replica is behind the primary, in the
+     *         order they were added (-1 for a replica that is not connected)
+     */
+    public long[] getLag() {
+        long current = store.currentVersion();
+        long[] lag = new long[links.size()];
+        for (int i = 0; i < lag.length; i++) {
+            ReplicaLink link = links.get(i);
+            lag[i] = link.connected ? current - link.ackedVersion : -1;
+        }
+        return lag;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (ReplicaLink link : links) {
+            link.wake();
+        }
+    }
+
+    private final class ReplicaLink implements Runnable {
+        final String host;
+        final int port;
+        final String name;
+        final Thread thread;
+        volatile boolean connected;
+        volatile long ackedVersion;
+
+        ReplicaLink(String host, int port, String name) {
+            this.host = host;
+            this.port = port;
+            this.name = name;
+            this.thread = new Thread(this, "room-replicator-" + host + ":" + port);
+            this.thread.setDaemon(true);
+        }
+
+        void wake() {
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            RoomReplication replica = null;
+            boolean warned = false;
+            while (!closed) {
+                try {
+                    if (replica == null) {
+                        replica = (RoomReplication) LocateRegistry.getRegistry(host, port).lookup(name);
+                        ackedVersion = replica.getReplicatedVersion();
+                        connected = true;
+                        warned = false;
+                        System.out.println("Replicating to " + host + ":" + port + " from version " + ackedVersion);
+                    }
+                    RoomChanges changes = store.changedSince(ackedVersion, BATCH_SIZE);
+                    if (changes.getRooms().isEmpty()) {
+                        ackedVersion = Math.max(ackedVersion, changes.getCurrentVersion());
+                        LockSupport.park(this); // until the next change
+                        continue;
+                    }
+                    replica.applyChanges(changes.getRooms(), changes.getCurrentVersion());
+                    ackedVersion = Math.max(ackedVersion, changes.getCurrentVersion());
+                } catch (RemoteException | NotBoundException | ClassCastException e) {
+                    if (!warned) {
+                        System.err.println("Replica " + host + ":" + port + " unavailable, retrying: " + e.getMessage());
+                        warned = true;
+                    }
+                    replica = null;
+                    connected = false;
+                    LockSupport.parkNanos(this, RETRY_NANOS);
+                }
+            }
+        }
+    }
+}
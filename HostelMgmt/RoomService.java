@@ -1,5 +1,6 @@
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -22,4 +23,84 @@ public interface RoomService extends Remote {
      * @throws RemoteException if remote communication fails
      */
     List<String> getAllRoomNumbers() throws RemoteException;
+    
+    /**
+     * Get room information for several rooms in a single remote call
+     * @param roomNumbers The room numbers to look up
+     * @return List of RoomInfo in the same order as the request, with null
+     *         entries for rooms that do not exist
+     * @throws RemoteException if remote communication fails or roomNumbers
+     *         is or contains null
+     */
+    List<RoomInfo> getRoomInfos(Collection<String> roomNumbers) throws RemoteException;
+    
+    /**
+     * Get one page of rooms, ordered by room number
+     * @param offset Index of the first room to return (0-based)
+     * @param limit Maximum number of rooms to return
+     * @return RoomPage holding the rooms and the total room count
+     * @throws RemoteException if remote communication fails or the
+     *         offset/limit are negative
+     */
+    RoomPage getAllRooms(int offset, int limit) throws RemoteException;
+    
+    /**
+     * Add an occupant to an existing room
+     * @param roomNumber The room to allocate
+     * @param occupantName The student moving in
+     * @return the updated RoomInfo
+     * @throws RemoteException if the room does not exist, the student is
+     *         already in the room, or remote communication fails
+     */
+    RoomInfo allocateRoom(String roomNumber, String occupantName) throws RemoteException;
+    
+    /**
+     * Remove an occupant from a room
+     * @param roomNumber The room to vacate
+     * @param occupantName The student moving out
+     * @return the updated RoomInfo
+     * @throws RemoteException if the room does not exist, the student is not
+     *         in the room, or remote communication fails
+     */
+    RoomInfo vacateRoom(String roomNumber, String occupantName) throws RemoteException;
+    
+    /**
+     * Create a room or replace all of its details
+     * @param info The new room details
+     * @return the stored RoomInfo
+     * @throws RemoteException if the room number is missing or remote
+     *         communication fails
+     */
+    RoomInfo upsertRoom(RoomInfo info) throws RemoteException;
+    
+    /**
+     * Get the rooms that changed after a given version
+     * Every RoomInfo carries the version of its last change; a client that
+     * caches rooms can call this with the currentVersion of its previous
+     * answer to learn which cached rooms are out of date.
+     * @param version Version the caller is up to date with (0 for everything)
+     * @param limit Maximum number of rooms to return
+     * @return RoomChanges with the changed rooms and the version to ask from next
+     * @throws RemoteException if remote communication fails or limit is negative
+     */
+    RoomChanges getRoomsChangedSince(long version, int limit) throws RemoteException;
+    
+    /**
+     * Find the rooms of students whose name starts with the given text
+     * Matching ignores case, so "ami" finds "Amit Sharma".
+     * @param namePrefix Start of the student's name
+     * @param limit Maximum number of rooms to return
+     * @return matching rooms, ordered by the matching student's name
+     * @throws RemoteException if the prefix is empty, limit is negative or
+     *         remote communication fails
+     */
+    List<RoomInfo> findRoomsByOccupant(String namePrefix, int limit) throws RemoteException;
+    
+    /**
+     * Find every room looked after by a warden
+     * @param wardenContact The warden's contact, as stored in RoomInfo (case is ignored)
+     * @return the warden's rooms, ordered by room number
+     * @throws RemoteException if the contact is empty or remote communication fails
+     */
+    List<RoomInfo> findRoomsByWarden(String wardenContact) throws RemoteException;
 }
\ No newline at end of file
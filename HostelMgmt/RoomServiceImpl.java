@@ -1,74 +1,211 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.function.UnaryOperator;
 
 /**
  * Implementation of the RoomService interface
- * Uses in-memory Map to store room information
+ * Uses a concurrent in-memory RoomStore, so RMI calls arriving on many
+ * threads can read and write rooms safely without blocking each other
+ * A server is either a primary, which accepts changes and can replicate
+ * them (replicateTo), or a read-only replica that receives its rooms from
+ * a primary through RoomReplication.
+ * Rooms can be loaded from and saved to CSV or JSON Lines files, at
+ * startup or while running (RoomBulkTransfer).
+ * Clients can follow changes as they happen (RoomFeed), on a primary or a
+ * replica.
  */
-public class RoomServiceImpl extends UnicastRemoteObject implements RoomService {
+public class RoomServiceImpl extends UnicastRemoteObject
+        implements RoomService, RoomReplication, RoomBulkTransfer, RoomFeed {
     
-    // In-memory storage using HashMap
-    private Map<String, RoomInfo> roomDatabase;
+    private static final long DEFAULT_SNAPSHOT_SECONDS = 60;
+    
+    // In-memory storage of immutable RoomInfo snapshots
+    private final RoomStore roomDatabase;
+    
+    // Occupant name and warden indexes, updated on every change
+    private final RoomIndex roomIndex;
+    
+    // Asynchronous log of served requests, kept off the request path
+    private final RequestLog requestLog;
+    
+    // Snapshot + journal on disk, or null when running purely in memory
+    private final RoomPersistence persistence;
+    
+    // True for a read-only replica fed by a primary
+    private final boolean replica;
+    
+    // Primary version the replica has applied; unused on a primary
+    private volatile long replicatedVersion;
+    
+    // Sends changes to replicas; created by the first replicateTo call
+    private RoomReplicator replicator;
+    
+    // Pushes changes to feed subscribers; created by the first subscribe call
+    private RoomFeedPublisher feedPublisher;
+    
+    // When sharded: how rooms are split, and which shard this server holds
+    private final RoomPartitioner partitioner;
+    private final int shard;
     
     /**
-     * Constructor initializes the in-memory database with sample data
+     * Constructor initializes the in-memory database from the bulk file
+     * given by -Dhostel.importFile (or sample data), or loads it from the
+     * directory given by -Dhostel.dataDir
      */
     public RoomServiceImpl() throws RemoteException {
+        this(dataDirFromProperties());
+    }
+    
+    /**
+     * @param dataDir directory holding the saved rooms, or null to keep
+     *                rooms in memory only
+     */
+    public RoomServiceImpl(Path dataDir) throws RemoteException {
+        this(dataDir, false);
+    }
+    
+    /**
+     * @param dataDir directory holding the saved rooms, or null to keep
+     *                rooms in memory only
+     * @param replica true to start as a read-only replica; a replica starts
+     *                empty and gets every room from its primary
+     */
+    public RoomServiceImpl(Path dataDir, boolean replica) throws RemoteException {
+        this(dataDir, replica, null, 0);
+    }
+    
+    /**
+     * @param dataDir directory holding the saved rooms, or null to keep
+     *                rooms in memory only
+     * @param replica true to start as a read-only replica
+     * @param partitioner how rooms are split over shards, or null if this
+     *                    server holds every room
+     * @param shard index of the shard this server holds
+     */
+    public RoomServiceImpl(Path dataDir, boolean replica, RoomPartitioner partitioner, int shard)
+            throws RemoteException {
         super();
-        roomDatabase = new HashMap<>();
-        initializeRoomData();
+        if (partitioner != null && (shard < 0 || shard >= partitioner.getShardCount())) {
+            throw new IllegalArgumentException("Shard " + shard + " is not one of " + partitioner);
+        }
+        this.replica = replica;
+        this.partitioner = partitioner;
+        this.shard = shard;
+        roomDatabase = new RoomStore();
+        if (replica) {
+            // Readers only see versions the replica has fully caught up to
+            roomDatabase.setVisibleVersion(0);
+        }
+        roomIndex = new RoomIndex();
+        roomDatabase.addListener(roomIndex);
+        requestLog = RequestLog.toConsole();
+        if (dataDir == null) {
+            persistence = null;
+            if (!replica) {
+                try {
+                    initializeRoomData();
+                } catch (IOException e) {
+                    throw new RemoteException("Could not load room data: " + e.getMessage(), e);
+                }
+            }
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            persistence = new RoomPersistence(dataDir,
+                Long.getLong("hostel.snapshotSeconds", DEFAULT_SNAPSHOT_SECONDS));
+            int loaded = persistence.open(roomDatabase);
+            if (loaded == 0 && !replica) {
+                initializeRoomData();
+            } else {
+                System.out.printf("Room database loaded from %s with %d rooms in %d ms%n",
+                    dataDir, loaded, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Could not load room data: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * @return the directory given by -Dhostel.dataDir, or null if not set
+     */
+    public static Path dataDirFromProperties() {
+        String dir = System.getProperty("hostel.dataDir");
+        return dir == null ? null : Paths.get(dir);
+    }
+    
+    /**
+     * Load the rooms from the file named by -Dhostel.importFile (default
+     * rooms.csv in the working directory), or fall back to the built-in
+     * sample rooms if the file does not exist
+     */
+    private void initializeRoomData() throws IOException {
+        Path file = Paths.get(System.getProperty("hostel.importFile", "rooms.csv"));
+        if (!Files.exists(file)) {
+            initializeSampleRooms();
+            return;
+        }
+        long start = System.nanoTime();
+        Collection<RoomInfo> rooms = RoomBulkFile.read(file);
+        rooms.removeIf(info -> !ownsRoom(info.getRoomNumber()));
+        roomDatabase.replaceAll(rooms);
+        System.out.printf("Room database imported from %s with %d rooms in %d ms%n",
+            file, rooms.size(), (System.nanoTime() - start) / 1_000_000);
     }
     
     /**
      * Initialize sample room data
-     * In a real system, this could be loaded from a file or configuration
      */
-    private void initializeRoomData() {
+    private void initializeSampleRooms() {
         // Sample hostel rooms with occupants
-        roomDatabase.put("101", new RoomInfo(
+        seedRoom(new RoomInfo(
             "101",
             Arrays.asList("Rajesh Kumar", "Amit Sharma"),
             "+91-9876543210"
         ));
         
-        roomDatabase.put("102", new RoomInfo(
+        seedRoom(new RoomInfo(
             "102",
             Arrays.asList("Priya Patel", "Sneha Reddy"),
             "+91-9876543210"
         ));
         
-        roomDatabase.put("103", new RoomInfo(
+        seedRoom(new RoomInfo(
             "103",
             Arrays.asList("Arjun Singh"),
             "+91-9876543211"
         ));
         
-        roomDatabase.put("201", new RoomInfo(
+        seedRoom(new RoomInfo(
             "201",
             Arrays.asList("Kavya Iyer", "Meera Nair", "Divya Krishna"),
             "+91-9876543211"
         ));
         
-        roomDatabase.put("202", new RoomInfo(
+        seedRoom(new RoomInfo(
             "202",
             Arrays.asList("Vikram Rao", "Karthik Menon"),
             "+91-9876543212"
         ));
         
-        roomDatabase.put("203", new RoomInfo(
+        seedRoom(new RoomInfo(
             "203",
             Arrays.asList("Ananya Das"),
             "+91-9876543212"
         ));
         
-        roomDatabase.put("301", new RoomInfo(
+        seedRoom(new RoomInfo(
             "301",
             Arrays.asList("Rohan Desai", "Sanjay Verma"),
             "+91-9876543213"
         ));
         
-        roomDatabase.put("302", new RoomInfo(
+        seedRoom(new RoomInfo(
             "302",
             Arrays.asList("Neha Gupta", "Pooja Jain"),
             "+91-9876543213"
@@ -77,21 +214,34 @@ public class RoomServiceImpl extends UnicastRemoteObject implements RoomService
         System.out.println("Room database initialized with " + roomDatabase.size() + " rooms");
     }
     
+    /**
+     * Add a sample room, unless it belongs to another shard
+     */
+    private void seedRoom(RoomInfo info) {
+        if (ownsRoom(info.getRoomNumber())) {
+            roomDatabase.put(info);
+        }
+    }
+    
+    private boolean ownsRoom(String roomNumber) {
+        return partitioner == null || partitioner.shardFor(roomNumber) == shard;
+    }
+    
     /**
      * Remote method to get room information
      */
     @Override
     public RoomInfo getRoomInfo(String roomNumber) throws RemoteException {
-        System.out.println("Request received for room: " + roomNumber);
+        long start = System.nanoTime();
         
         RoomInfo info = roomDatabase.get(roomNumber);
         
         if (info == null) {
-            System.out.println("Room not found: " + roomNumber);
+            requestLog.record("getRoomInfo", roomNumber, 0, RequestLog.Result.NOT_FOUND, start);
             return null;
         }
         
-        System.out.println("Room info retrieved successfully: " + roomNumber);
+        requestLog.record("getRoomInfo", roomNumber, 1, RequestLog.Result.FOUND, start);
         return info;
     }
     
@@ -100,9 +250,374 @@ public class RoomServiceImpl extends UnicastRemoteObject implements RoomService
      */
     @Override
     public List<String> getAllRoomNumbers() throws RemoteException {
-        System.out.println("Request received for all room numbers");
-        List<String> rooms = new ArrayList<>(roomDatabase.keySet());
-        Collections.sort(rooms);
+        long start = System.nanoTime();
+        List<String> rooms = roomDatabase.roomNumbers();
+        requestLog.record("getAllRoomNumbers", null, rooms.size(), RequestLog.Result.OK, start);
         return rooms;
     }
+    
+    /**
+     * Remote method to get information for several rooms in one call
+     */
+    @Override
+    public List<RoomInfo> getRoomInfos(Collection<String> roomNumbers) throws RemoteException {
+        if (roomNumbers == null) {
+            throw new RemoteException("Room numbers must not be null.");
+        }
+        long start = System.nanoTime();
+        List<RoomInfo> result = new ArrayList<>(roomNumbers.size());
+        for (String roomNumber : roomNumbers) {
+            if (roomNumber == null) {
+                requestLog.record("getRoomInfos", null, 0, RequestLog.Result.ERROR, start);
+                throw new RemoteException("Room numbers must not contain null.");
+            }
+            result.add(roomDatabase.get(roomNumber));
+        }
+        requestLog.record("getRoomInfos", null, result.size(), RequestLog.Result.OK, start);
+        return new RoomList(result);
+    }
+    
+    /**
+     * Remote method to get one page of rooms ordered by room number
+     */
+    @Override
+    public RoomPage getAllRooms(int offset, int limit) throws RemoteException {
+        if (offset < 0 || limit < 0) {
+            throw new RemoteException("Offset and limit must not be negative.");
+        }
+        long start = System.nanoTime();
+        int total = roomDatabase.size();
+        RoomPage page = new RoomPage(roomDatabase.page(offset, limit), Math.min(offset, total), total);
+        requestLog.record("getAllRooms", null, page.getRooms().size(), RequestLog.Result.OK, start);
+        return page;
+    }
+    
+    /**
+     * Remote method to get the rooms changed after a version
+     */
+    @Override
+    public RoomChanges getRoomsChangedSince(long version, int limit) throws RemoteException {
+        if (limit < 0) {
+            throw new RemoteException("Limit must not be negative.");
+        }
+        long start = System.nanoTime();
+        RoomChanges changes = roomDatabase.changedSince(version, limit);
+        requestLog.record("getRoomsChangedSince", null, changes.getRooms().size(), RequestLog.Result.OK, start);
+        return changes;
+    }
+    
+    /**
+     * Remote method to find rooms by the start of an occupant's name
+     */
+    @Override
+    public List<RoomInfo> findRoomsByOccupant(String namePrefix, int limit) throws RemoteException {
+        requireText(namePrefix, "Name prefix");
+        if (limit < 0) {
+            throw new RemoteException("Limit must not be negative.");
+        }
+        long start = System.nanoTime();
+        List<RoomInfo> rooms = new ArrayList<>();
+        for (String roomNumber : roomIndex.roomsByOccupantPrefix(namePrefix, limit)) {
+            // Re-check the current snapshot: the room may have changed since the lookup
+            RoomInfo info = roomDatabase.get(roomNumber);
+            if (info != null && RoomIndex.hasOccupantWithPrefix(info, namePrefix)) {
+                rooms.add(info);
+            }
+        }
+        requestLog.record("findRoomsByOccupant", null, rooms.size(), RequestLog.Result.OK, start);
+        return new RoomList(rooms);
+    }
+    
+    /**
+     * Remote method to find the rooms looked after by a warden
+     */
+    @Override
+    public List<RoomInfo> findRoomsByWarden(String wardenContact) throws RemoteException {
+        requireText(wardenContact, "Warden contact");
+        long start = System.nanoTime();
+        List<RoomInfo> rooms = new ArrayList<>();
+        for (String roomNumber : roomIndex.roomsByWarden(wardenContact)) {
+            RoomInfo info = roomDatabase.get(roomNumber);
+            if (info != null && RoomIndex.hasWarden(info, wardenContact)) {
+                rooms.add(info);
+            }
+        }
+        requestLog.record("findRoomsByWarden", null, rooms.size(), RequestLog.Result.OK, start);
+        return new RoomList(rooms);
+    }
+    
+    /**
+     * Remote method to add an occupant to a room
+     */
+    @Override
+    public RoomInfo allocateRoom(String roomNumber, String occupantName) throws RemoteException {
+        requireText(occupantName, "Occupant name");
+        return updateRoom("allocateRoom", roomNumber, current -> {
+            if (current.getOccupantNames().contains(occupantName)) {
+                throw new IllegalArgumentException(
+                    occupantName + " is already allocated to room " + roomNumber);
+            }
+            return current.withOccupant(occupantName);
+        });
+    }
+    
+    /**
+     * Remote method to remove an occupant from a room
+     */
+    @Override
+    public RoomInfo vacateRoom(String roomNumber, String occupantName) throws RemoteException {
+        requireText(occupantName, "Occupant name");
+        return updateRoom("vacateRoom", roomNumber, current -> {
+            if (!current.getOccupantNames().contains(occupantName)) {
+                throw new IllegalArgumentException(
+                    occupantName + " is not allocated to room " + roomNumber);
+            }
+            return current.withoutOccupant(occupantName);
+        });
+    }
+    
+    /**
+     * Remote method to create or replace a room
+     */
+    @Override
+    public RoomInfo upsertRoom(RoomInfo info) throws RemoteException {
+        requireWritable();
+        if (info == null) {
+            throw new RemoteException("Room info must not be null.");
+        }
+        requireText(info.getRoomNumber(), "Room number");
+        if (!ownsRoom(info.getRoomNumber())) {
+            throw new RemoteException("Room " + info.getRoomNumber() + " belongs to shard "
+                + partitioner.shardFor(info.getRoomNumber()) + ", not shard " + shard + ".");
+        }
+        long start = System.nanoTime();
+        requireSavable("upsertRoom", info.getRoomNumber(), start);
+        RoomInfo stored;
+        try {
+            stored = roomDatabase.put(info);
+        } catch (IllegalArgumentException e) {
+            requestLog.record("upsertRoom", info.getRoomNumber(), 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException(e.getMessage());
+        }
+        awaitDurable();
+        requestLog.record("upsertRoom", stored.getRoomNumber(), 1, RequestLog.Result.OK, start);
+        return stored;
+    }
+    
+    /**
+     * Remote method for the primary to deliver changed rooms to a replica
+     */
+    @Override
+    public void applyChanges(List<RoomInfo> rooms, long primaryVersion) throws RemoteException {
+        if (!replica) {
+            throw new RemoteException("This server is a primary and does not accept replicated changes.");
+        }
+        long start = System.nanoTime();
+        requireSavable("applyChanges", null, start);
+        // Keep the primary's versions, so clients see the same versions on every server
+        try {
+            roomDatabase.restoreAll(rooms);
+        } catch (IllegalArgumentException e) {
+            requestLog.record("applyChanges", null, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException(e.getMessage());
+        }
+        awaitDurable();
+        replicatedVersion = Math.max(replicatedVersion, primaryVersion);
+        roomDatabase.setVisibleVersion(replicatedVersion);
+        requestLog.record("applyChanges", null, rooms.size(), RequestLog.Result.OK, start);
+    }
+    
+    /**
+     * Remote method to report how far this replica has caught up
+     */
+    @Override
+    public long getReplicatedVersion() throws RemoteException {
+        return replicatedVersion;
+    }
+    
+    /**
+     * Remote method to load every room in a bulk file and swap them in at once
+     */
+    @Override
+    public int reloadRooms(String fileName) throws RemoteException {
+        requireWritable();
+        Path file = bulkFile(fileName);
+        long start = System.nanoTime();
+        Collection<RoomInfo> rooms;
+        try {
+            rooms = RoomBulkFile.read(file);
+        } catch (IOException e) {
+            requestLog.record("reloadRooms", fileName, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException("Could not load rooms: " + e.getMessage(), e);
+        }
+        rooms.removeIf(info -> !ownsRoom(info.getRoomNumber()));
+        requireSavable("reloadRooms", fileName, start);
+        try {
+            roomDatabase.replaceAll(rooms);
+        } catch (IllegalArgumentException e) {
+            requestLog.record("reloadRooms", fileName, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException(e.getMessage());
+        }
+        awaitDurable();
+        requestLog.record("reloadRooms", fileName, rooms.size(), RequestLog.Result.OK, start);
+        return rooms.size();
+    }
+    
+    /**
+     * Remote method to write every room to a bulk file
+     */
+    @Override
+    public int exportRooms(String fileName) throws RemoteException {
+        Path file = bulkFile(fileName);
+        long start = System.nanoTime();
+        try (RoomBulkFile.Writer out = RoomBulkFile.write(file)) {
+            for (String roomNumber : roomDatabase.roomNumbers()) {
+                out.write(roomDatabase.get(roomNumber));
+            }
+            out.commit();
+            requestLog.record("exportRooms", fileName, out.getRoomCount(), RequestLog.Result.OK, start);
+            return out.getRoomCount();
+        } catch (IOException e) {
+            requestLog.record("exportRooms", fileName, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException("Could not export rooms: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * @return the named file in the directory given by -Dhostel.bulkDir
+     * @throws RemoteException if the name is empty or leads outside it
+     */
+    private static Path bulkFile(String fileName) throws RemoteException {
+        requireText(fileName, "File name");
+        Path dir = Paths.get(System.getProperty("hostel.bulkDir", ".")).toAbsolutePath().normalize();
+        Path file = dir.resolve(fileName).normalize();
+        if (!file.startsWith(dir) || file.equals(dir)) {
+            throw new RemoteException("File " + fileName + " is not in the bulk directory " + dir + ".");
+        }
+        return file;
+    }
+    
+    /**
+     * Remote method to start pushing changes to a client's listener
+     */
+    @Override
+    public long subscribe(RoomChangeListener listener, RoomFilter filter, long afterSequence)
+            throws RemoteException {
+        if (listener == null || filter == null) {
+            throw new RemoteException("Listener and filter must not be null.");
+        }
+        long start = System.nanoTime();
+        try {
+            long id = feedPublisher().subscribe(listener, filter, afterSequence);
+            requestLog.record("subscribe", filter.toString(), 0, RequestLog.Result.OK, start);
+            return id;
+        } catch (IllegalStateException e) {
+            requestLog.record("subscribe", filter.toString(), 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Remote method to stop pushing changes to a client
+     */
+    @Override
+    public boolean unsubscribe(long subscriptionId) throws RemoteException {
+        long start = System.nanoTime();
+        boolean removed = feedPublisher().unsubscribe(subscriptionId);
+        requestLog.record("unsubscribe", null, 0,
+            removed ? RequestLog.Result.OK : RequestLog.Result.NOT_FOUND, start);
+        return removed;
+    }
+    
+    private synchronized RoomFeedPublisher feedPublisher() {
+        if (feedPublisher == null) {
+            feedPublisher = RoomFeedPublisher.fromProperties(roomDatabase);
+        }
+        return feedPublisher;
+    }
+    
+    /**
+     * Send every change to the replica bound as "RoomService" at host:port,
+     * starting with the rooms it does not have yet
+     */
+    public synchronized void replicateTo(String host, int port) {
+        if (replica) {
+            throw new IllegalStateException("A replica cannot replicate to other servers");
+        }
+        if (replicator == null) {
+            replicator = new RoomReplicator(roomDatabase);
+        }
+        replicator.addReplica(host, port, "RoomService");
+    }
+    
+    private RoomInfo updateRoom(String operation, String roomNumber,
+                                UnaryOperator<RoomInfo> change) throws RemoteException {
+        requireWritable();
+        requireText(roomNumber, "Room number");
+        long start = System.nanoTime();
+        requireSavable(operation, roomNumber, start);
+        RoomInfo updated;
+        try {
+            updated = roomDatabase.update(roomNumber, change);
+        } catch (IllegalArgumentException e) {
+            requestLog.record(operation, roomNumber, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException(e.getMessage());
+        }
+        if (updated == null) {
+            requestLog.record(operation, roomNumber, 0, RequestLog.Result.NOT_FOUND, start);
+            throw new RemoteException("Room not found: " + roomNumber);
+        }
+        awaitDurable();
+        requestLog.record(operation, roomNumber, 1, RequestLog.Result.OK, start);
+        return updated;
+    }
+    
+    /**
+     * Wait for the group commit that covers this thread's change
+     */
+    private void awaitDurable() throws RemoteException {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.awaitDurable();
+        } catch (IOException e) {
+            throw new RemoteException("Change could not be saved: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Refuse a change up front while the journal cannot save changes, so a
+     * change that is reported as failed was never applied
+     */
+    private void requireSavable(String operation, String key, long start) throws RemoteException {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.checkWritable();
+        } catch (IOException e) {
+            requestLog.record(operation, key, 0, RequestLog.Result.ERROR, start);
+            throw new RemoteException("Changes cannot be saved right now: " + e.getMessage(), e);
+        }
+    }
+    
+    private void requireWritable() throws RemoteException {
+        if (replica) {
+            throw new RemoteException("This server is a read-only replica; send changes to the primary.");
+        }
+    }
+    
+    private static void requireText(String value, String what) throws RemoteException {
+        if (value == null || value.trim().isEmpty()) {
+            throw new RemoteException(what + " must not be empty.");
+        }
+    }
+    
+    /**
+     * @return the request log, so the server can switch it on or off
+     */
+    public RequestLog getRequestLog() {
+        return requestLog;
+    }
 }
\ No newline at end of file
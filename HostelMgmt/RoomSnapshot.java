@@ -0,0 +1,79 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compact snapshot of every room, written and read through a memory-mapped
+ * file so loading is a sequential decode straight from the page cache
+ * Layout: magic, format version, room count, then RoomCodec records.
+ */
+public final class RoomSnapshot {
+    
+    private static final int MAGIC = 0x524D534E; // "RMSN"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 12;
+    
+    private RoomSnapshot() {
+    }
+    
+    /**
+     * Write the rooms to a temporary file, force it to disk, and atomically
+     * move it over the target, so a crash never leaves a half-written snapshot
+     */
+    public static void write(Path target, List<RoomInfo> rooms) throws IOException {
+        long size = HEADER_BYTES;
+        for (RoomInfo info : rooms) {
+            size += RoomCodec.encodedSize(info);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot too large to map: " + size + " bytes");
+        }
+        
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(rooms.size());
+            for (RoomInfo info : rooms) {
+                RoomCodec.encode(info, out);
+            }
+            out.force();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Pass every room in the snapshot to the consumer
+     * @return number of rooms read, or 0 if there is no snapshot
+     */
+    public static int read(Path source, Consumer<RoomInfo> consumer) throws IOException {
+        if (!Files.exists(source)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+                throw new IOException("Not a room snapshot: " + source);
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format " + version + ": " + source);
+            }
+            int count = in.getInt();
+            byte[] scratch = RoomCodec.newScratch();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(RoomCodec.decode(in, scratch));
+            }
+            return count;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt room snapshot: " + source, e);
+        }
+    }
+}
@@ -0,0 +1,505 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Thread-safe in-memory room store
+ * Rooms are held in a RoomTable: by default as immutable RoomInfo snapshots
+ * in a ConcurrentHashMap (HeapRoomTable), or with -Dhostel.store=packed
+ * encoded off the heap (PackedRoomTable). Reads never take a lock in either.
+ * A sorted array of room numbers is kept next to the
+ * map and republished (copy-on-write) only when a new room is added, which
+ * means listing or paging rooms never has to sort.
+ * Listeners see every change inside the room's atomic update, so changes to
+ * the same room reach them in the order they were applied.
+ * Every change gets a new, store-wide version number. A skip list from
+ * version to room answers "what changed since version N" without scanning
+ * every room.
+ * replaceAll loads many rooms at once by building a new table next to the
+ * current one and swapping it in, so readers never see half a reload.
+ */
+public class RoomStore {
+    
+    // Rooms per roomsChanged call made by replaceAll
+    private static final int REPLACE_BATCH = 4096;
+    
+    // Replaced as a whole by replaceAll
+    private volatile RoomTable rooms;
+    
+    // Sorted room numbers; replaced as a whole, never modified in place
+    private volatile String[] sortedRoomNumbers = new String[0];
+    
+    // Serializes index updates; readers only read the volatile array
+    private final Object indexLock = new Object();
+    
+    private final List<RoomMutationListener> listeners = new CopyOnWriteArrayList<>();
+    
+    // Run once a change is visible to changedSince
+    private final List<Runnable> versionListeners = new CopyOnWriteArrayList<>();
+    
+    // Writers share the read side; withWritesPaused takes the write side.
+    // Readers never touch it.
+    private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock();
+    
+    // Room numbers keyed by their current version, for changedSince
+    private final ConcurrentSkipListMap<Long, String> roomsByVersion = new ConcurrentSkipListMap<>();
+    
+    // Versions handed out but whose change is not visible yet; guarded by versionLock
+    private final Object versionLock = new Object();
+    private final TreeSet<Long> inFlightVersions = new TreeSet<>();
+    
+    // Highest version changedSince and currentVersion report; see setVisibleVersion
+    private volatile long visibleVersion = Long.MAX_VALUE;
+    private long lastVersion;
+    
+    /**
+     * Store rooms in the table chosen by -Dhostel.store (heap or packed)
+     */
+    public RoomStore() {
+        this(tableFromProperties());
+    }
+    
+    public RoomStore(RoomTable rooms) {
+        this.rooms = rooms;
+    }
+    
+    /**
+     * @return the table named by -Dhostel.store: "heap" (the default) or "packed"
+     */
+    public static RoomTable tableFromProperties() {
+        String kind = System.getProperty("hostel.store", "heap");
+        switch (kind) {
+            case "heap":
+                return new HeapRoomTable();
+            case "packed":
+                return new PackedRoomTable();
+            default:
+                throw new IllegalArgumentException("Unknown room store '" + kind + "', use heap or packed");
+        }
+    }
+    
+    /**
+     * @return the current snapshot of a room, or null if it does not exist
+     */
+    public RoomInfo get(String roomNumber) {
+        return rooms.get(roomNumber);
+    }
+    
+    /**
+     * @return number of rooms in the store
+     */
+    public int size() {
+        return sortedRoomNumbers.length;
+    }
+    
+    /**
+     * @return all room numbers in sorted order (an unmodifiable view)
+     */
+    public List<String> roomNumbers() {
+        return Collections.unmodifiableList(Arrays.asList(sortedRoomNumbers));
+    }
+    
+    /**
+     * @return up to limit rooms starting at offset, ordered by room number
+     */
+    public List<RoomInfo> page(int offset, int limit) {
+        String[] keys = sortedRoomNumbers;
+        int from = Math.min(offset, keys.length);
+        int to = (int) Math.min((long) from + limit, keys.length);
+        List<RoomInfo> page = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            page.add(rooms.get(keys[i]));
+        }
+        return page;
+    }
+    
+    /**
+     * @return a list of every room snapshot (in no particular order)
+     */
+    public List<RoomInfo> snapshot() {
+        return rooms.values();
+    }
+    
+    /**
+     * Register a listener for every later change
+     */
+    public void addListener(RoomMutationListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Register an action to run after each change has become visible to
+     * changedSince. It runs on the writing thread, so it should only
+     * signal other threads.
+     */
+    public void addVersionListener(Runnable listener) {
+        versionListeners.add(listener);
+    }
+    
+    /**
+     * Stop running an action registered with addVersionListener
+     */
+    public void removeVersionListener(Runnable listener) {
+        versionListeners.remove(listener);
+    }
+    
+    /**
+     * Insert or replace a room, giving it a new version
+     * @return the snapshot that was stored
+     */
+    public RoomInfo put(RoomInfo info) {
+        boolean[] created = new boolean[1];
+        RoomInfo stored = apply(info.getRoomNumber(), current -> info, true, false, created);
+        if (created[0]) {
+            addToIndex(stored.getRoomNumber());
+        }
+        return stored;
+    }
+    
+    /**
+     * Insert or replace many rooms, giving each a new version and updating
+     * the sorted index once at the end instead of once per new room
+     */
+    public void putAll(Collection<RoomInfo> infos) {
+        storeAll(infos, false);
+    }
+    
+    /**
+     * Insert or replace many rooms keeping the versions they carry, e.g.
+     * when loading saved rooms; later changes get higher versions
+     */
+    public void restoreAll(Collection<RoomInfo> infos) {
+        storeAll(infos, true);
+    }
+    
+    /**
+     * Insert or replace many rooms in one step: readers see either none or
+     * all of them. Each room gets a new version; rooms not given are kept.
+     * While writes are paused, the given rooms are stored in a new table
+     * next to the current one, the current rooms not among them are copied
+     * over, and the new table is swapped in; reads keep using the current
+     * table until then. infos is iterated twice (to check every room, then
+     * to store it) and listeners hear about the rooms a batch at a time, so
+     * apart from the new table the memory used does not grow with the
+     * number of rooms. If a listener throws, nothing is swapped in and
+     * every listener is told to forget the batches (roomsAborted); once all
+     * batches went through, listeners are told to apply them
+     * (roomsCommitted) just before the swap.
+     * @throws IllegalArgumentException if the table cannot hold one of the
+     *         rooms, before any listener is called
+     */
+    public void replaceAll(Collection<RoomInfo> infos) {
+        if (infos.isEmpty()) {
+            return;
+        }
+        withWritesPaused(() -> {
+            RoomTable current = rooms;
+            for (RoomInfo info : infos) {
+                checkStorable(current, info);
+            }
+            RoomTable next = current.newEmpty(size() + infos.size());
+            long first = reserveVersions(infos.size());
+            // Versions from first up to here are in roomsByVersion
+            long indexed = first;
+            try {
+                long version = first;
+                List<RoomInfo> before = new ArrayList<>(REPLACE_BATCH);
+                List<RoomInfo> after = new ArrayList<>(REPLACE_BATCH);
+                List<String> added = new ArrayList<>();
+                for (RoomInfo info : infos) {
+                    RoomInfo stamped = info.withVersion(version++);
+                    next.compute(stamped.getRoomNumber(), (key, loaded) -> {
+                        before.add(loaded != null ? loaded : current.get(key));
+                        after.add(stamped);
+                        return stamped;
+                    });
+                    if (after.size() == REPLACE_BATCH) {
+                        publishBatch(before, after, added);
+                        indexed = version;
+                    }
+                }
+                publishBatch(before, after, added);
+                indexed = version;
+                current.forEach(info -> next.compute(info.getRoomNumber(),
+                    (key, loaded) -> loaded != null ? loaded : info));
+                for (RoomMutationListener listener : listeners) {
+                    listener.roomsCommitted();
+                }
+                // The table first: every number in the sorted array must be in it
+                rooms = next;
+                addToIndex(added);
+            } catch (RuntimeException e) {
+                // Point roomsByVersion back at the rooms readers still see
+                for (long v = first; v < indexed; v++) {
+                    String key = roomsByVersion.remove(v);
+                    RoomInfo old = key == null ? null : current.get(key);
+                    if (old != null) {
+                        roomsByVersion.put(old.getVersion(), key);
+                    }
+                }
+                for (RoomMutationListener listener : listeners) {
+                    try {
+                        listener.roomsAborted();
+                    } catch (RuntimeException abortFailure) {
+                        e.addSuppressed(abortFailure);
+                    }
+                }
+                throw e;
+            } finally {
+                endVersion(first);
+            }
+        });
+    }
+    
+    /**
+     * Tell listeners about a batch of replaceAll's rooms, then record their
+     * versions; clears the batch
+     */
+    private void publishBatch(List<RoomInfo> before, List<RoomInfo> after, List<String> added) {
+        if (after.isEmpty()) {
+            return;
+        }
+        for (RoomMutationListener listener : listeners) {
+            listener.roomsChanged(before, after);
+        }
+        for (int i = 0; i < after.size(); i++) {
+            String key = after.get(i).getRoomNumber();
+            if (before.get(i) != null) {
+                roomsByVersion.remove(before.get(i).getVersion(), key);
+            } else {
+                added.add(key);
+            }
+            roomsByVersion.put(after.get(i).getVersion(), key);
+        }
+        before.clear();
+        after.clear();
+    }
+    
+    /**
+     * Atomically replace an existing room with change(current)
+     * The change function may throw IllegalArgumentException to reject the
+     * update, in which case the room is left untouched.
+     * @return the new snapshot, or null if the room does not exist
+     */
+    public RoomInfo update(String roomNumber, UnaryOperator<RoomInfo> change) {
+        return apply(roomNumber, change, false, false, new boolean[1]);
+    }
+    
+    /**
+     * @return the highest version such that every change up to it is fully
+     *         visible to readers
+     */
+    public long currentVersion() {
+        long current;
+        synchronized (versionLock) {
+            current = inFlightVersions.isEmpty() ? lastVersion : inFlightVersions.first() - 1;
+        }
+        return Math.min(current, visibleVersion);
+    }
+    
+    /**
+     * Hide changes above version from changedSince and currentVersion, e.g.
+     * on a replica whose batch from the primary is only partly applied, so
+     * no reader moves its cursor past versions that have not arrived yet
+     */
+    public void setVisibleVersion(long version) {
+        visibleVersion = version;
+        for (Runnable listener : versionListeners) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * @return rooms whose version is higher than the given one, at most limit
+     *         of them, oldest change first. When more rooms changed, the
+     *         answer's version is the point to continue from.
+     */
+    public RoomChanges changedSince(long version, int limit) {
+        long visible = visibleVersion;
+        long current = currentVersion();
+        List<RoomInfo> changed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Map<Long, String> newer = version < visible
+            ? roomsByVersion.subMap(version, false, visible, true) : Collections.<Long, String>emptyMap();
+        for (Map.Entry<Long, String> entry : newer.entrySet()) {
+            String roomNumber = entry.getValue();
+            if (!seen.add(roomNumber)) {
+                continue;
+            }
+            if (changed.size() == limit) {
+                // Every change below this entry's version has been returned
+                long resumeFrom = Math.max(version, Math.min(entry.getKey() - 1, current));
+                return new RoomChanges(changed, resumeFrom, false);
+            }
+            RoomInfo info = rooms.get(roomNumber);
+            if (info != null) {
+                changed.add(info);
+            }
+        }
+        return new RoomChanges(changed, current, true);
+    }
+    
+    private void storeAll(Collection<RoomInfo> infos, boolean keepVersions) {
+        List<String> added = new ArrayList<>();
+        boolean[] created = new boolean[1];
+        for (RoomInfo info : infos) {
+            apply(info.getRoomNumber(), current -> info, true, keepVersions, created);
+            if (created[0]) {
+                added.add(info.getRoomNumber());
+            }
+        }
+        addToIndex(added);
+    }
+    
+    /**
+     * The single write path: computes the new snapshot inside the room's
+     * atomic section, stamps its version, tells the listeners and updates the
+     * version index
+     */
+    private RoomInfo apply(String roomNumber, UnaryOperator<RoomInfo> change, boolean mayCreate,
+                           boolean keepVersion, boolean[] created) {
+        long[] version = new long[1];
+        created[0] = false;
+        writeGate.readLock().lock();
+        try {
+            RoomInfo result = rooms.compute(roomNumber, (key, current) -> {
+                if (current == null && !mayCreate) {
+                    return null;
+                }
+                RoomInfo next = change.apply(current);
+                checkStorable(rooms, next);
+                version[0] = beginVersion(keepVersion ? next.getVersion() : 0L);
+                RoomInfo stamped = next.getVersion() == version[0] ? next : next.withVersion(version[0]);
+                notifyListeners(current, stamped);
+                if (current != null) {
+                    roomsByVersion.remove(current.getVersion(), key);
+                }
+                roomsByVersion.put(stamped.getVersion(), key);
+                created[0] = current == null;
+                return stamped;
+            });
+            return result;
+        } finally {
+            if (version[0] != 0) {
+                endVersion(version[0]);
+            }
+            writeGate.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Reject a room that the table, or the snapshot and journal files, could
+     * not hold, before any listener hears of it
+     * @throws IllegalArgumentException if the room cannot be stored
+     */
+    private static void checkStorable(RoomTable table, RoomInfo info) {
+        table.checkStorable(info);
+        RoomCodec.checkEncodable(info);
+    }
+    
+    /**
+     * Reserve a version for a change that is about to be applied
+     * @param keep version to keep, or 0 to take the next one
+     */
+    private long beginVersion(long keep) {
+        synchronized (versionLock) {
+            long version = keep > 0 ? keep : ++lastVersion;
+            lastVersion = Math.max(lastVersion, version);
+            inFlightVersions.add(version);
+            return version;
+        }
+    }
+    
+    /**
+     * Reserve count consecutive versions; changes up to the last of them
+     * stay invisible to changedSince until endVersion(first)
+     * @return the first of them
+     */
+    private long reserveVersions(int count) {
+        synchronized (versionLock) {
+            long first = lastVersion + 1;
+            lastVersion += count;
+            inFlightVersions.add(first);
+            return first;
+        }
+    }
+    
+    private void endVersion(long version) {
+        synchronized (versionLock) {
+            inFlightVersions.remove(version);
+        }
+        for (Runnable listener : versionListeners) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * Run an action while no change is in progress and none can start
+     * Reads carry on as normal.
+     */
+    public void withWritesPaused(Runnable action) {
+        writeGate.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            writeGate.writeLock().unlock();
+        }
+    }
+    
+    private void notifyListeners(RoomInfo before, RoomInfo after) {
+        for (RoomMutationListener listener : listeners) {
+            listener.roomChanged(before, after);
+        }
+    }
+    
+    private void addToIndex(List<String> roomNumbers) {
+        if (roomNumbers.isEmpty()) {
+            return;
+        }
+        String[] added = roomNumbers.toArray(new String[0]);
+        Arrays.sort(added);
+        synchronized (indexLock) {
+            String[] keys = sortedRoomNumbers;
+            String[] merged = new String[keys.length + added.length];
+            int i = 0, j = 0, n = 0;
+            while (i < keys.length || j < added.length) {
+                String next;
+                if (j == added.length || (i < keys.length && keys[i].compareTo(added[j]) <= 0)) {
+                    next = keys[i++];
+                } else {
+                    next = added[j++];
+                }
+                if (n == 0 || !merged[n - 1].equals(next)) {
+                    merged[n++] = next;
+                }
+            }
+            sortedRoomNumbers = n == merged.length ? merged : Arrays.copyOf(merged, n);
+        }
+    }
+    
+    private void addToIndex(String roomNumber) {
+        synchronized (indexLock) {
+            String[] keys = sortedRoomNumbers;
+            int pos = Arrays.binarySearch(keys, roomNumber);
+            if (pos >= 0) {
+                return;
+            }
+            int insertAt = -pos - 1;
+            String[] updated = new String[keys.length + 1];
+            System.arraycopy(keys, 0, updated, 0, insertAt);
+            updated[insertAt] = roomNumber;
+            System.arraycopy(keys, insertAt, updated, insertAt + 1, keys.length - insertAt);
+            sortedRoomNumbers = updated;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Storage behind a RoomStore: the current snapshot of every room, by number
+ * Rooms are only added or replaced, never removed. RoomStore keeps versions,
+ * listeners and the sorted index itself, so a table only has to store rooms
+ * and apply one change to a room atomically.
+ * Implementations: HeapRoomTable (RoomInfo objects in a ConcurrentHashMap)
+ * and PackedRoomTable (rooms encoded off the heap).
+ */
+public interface RoomTable {
+    
+    /**
+     * @return the room, or null if it does not exist
+     */
+    RoomInfo get(String roomNumber);
+    
+    /**
+     * Atomically replace the room with change(roomNumber, current), where
+     * current is null for a room that does not exist yet. If change returns
+     * null (only allowed when current is null) nothing is stored; if it
+     * throws, the room is left untouched. Reads of the room see either the
+     * old or the new snapshot.
+     * @return the snapshot that was stored, or null
+     */
+    RoomInfo compute(String roomNumber, BiFunction<String, RoomInfo, RoomInfo> change);
+    
+    /**
+     * Reject a room this table cannot hold, before anyone is told about the
+     * change; RoomStore calls it inside compute, ahead of its listeners
+     * @throws IllegalArgumentException if the room cannot be stored
+     */
+    default void checkStorable(RoomInfo room) {
+    }
+    
+    /**
+     * @return every room (in no particular order)
+     */
+    List<RoomInfo> values();
+    
+    /**
+     * Pass every room to action, one at a time, without collecting them
+     * first; rooms changed meanwhile may or may not be seen
+     */
+    void forEach(Consumer<RoomInfo> action);
+    
+    /**
+     * @return a new, empty table of the same kind, sized for the given
+     *         number of rooms
+     */
+    RoomTable newEmpty(int expectedRooms);
+}
@@ -0,0 +1,184 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact encoding of RoomInfo for RMI transfers
+ * RoomInfo, RoomPage, RoomChanges and RoomList serialize through small
+ * Externalizable proxies that use this format instead of default Java
+ * serialization, so a room costs a few bytes more than its text instead of
+ * carrying field descriptors and a serialized ArrayList.
+ * Layout of a room: version (varint), room number, warden, occupant count
+ * (varint), occupant names. Strings are a varint of (UTF-8 length + 1),
+ * 0 meaning null, followed by the UTF-8 bytes. The warden is written once
+ * per stream: later rooms with the same warden refer back to it by index.
+ */
+final class RoomWireFormat {
+
+    // Warden markers; any larger value is (index of an earlier warden + 2)
+    private static final int WARDEN_NULL = 0;
+    private static final int WARDEN_NEW = 1;
+
+    private RoomWireFormat() {
+    }
+
+    /**
+     * Writes rooms to one stream, remembering wardens already written
+     */
+    static final class Writer {
+        private final DataOutput out;
+        private final Map<String, Integer> wardens = new HashMap<>();
+
+        Writer(DataOutput out) {
+            this.out = out;
+        }
+
+        void writeRoom(RoomInfo info) throws IOException {
+            writeVarLong(out, info.getVersion());
+            writeString(out, info.getRoomNumber());
+            String warden = info.getWardenContact();
+            if (warden == null) {
+                writeVarLong(out, WARDEN_NULL);
+            } else {
+                Integer index = wardens.get(warden);
+                if (index != null) {
+                    writeVarLong(out, index + 2);
+                } else {
+                    writeVarLong(out, WARDEN_NEW);
+                    writeString(out, warden);
+                    wardens.put(warden, wardens.size());
+                }
+            }
+            List<String> names = info.getOccupantNames();
+            writeVarLong(out, names.size());
+            for (int i = 0; i < names.size(); i++) {
+                writeString(out, names.get(i));
+            }
+        }
+
+        /**
+         * Write a list of rooms (which may contain nulls) with its length
+         */
+        void writeRooms(List<RoomInfo> rooms) throws IOException {
+            writeVarLong(out, rooms == null ? 0 : rooms.size() + 1);
+            if (rooms == null) {
+                return;
+            }
+            for (RoomInfo info : rooms) {
+                out.writeBoolean(info != null);
+                if (info != null) {
+                    writeRoom(info);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads rooms from one stream; rooms sharing a warden share one String
+     */
+    static final class Reader {
+        private final DataInput in;
+        private final List<String> wardens = new ArrayList<>();
+        private byte[] buffer = new byte[64];
+
+        Reader(DataInput in) {
+            this.in = in;
+        }
+
+        RoomInfo readRoom() throws IOException {
+            long version = readVarLong(in);
+            String roomNumber = readString();
+            long marker = readVarLong(in);
+            String warden;
+            if (marker == WARDEN_NULL) {
+                warden = null;
+            } else if (marker == WARDEN_NEW) {
+                warden = readString();
+                wardens.add(warden);
+            } else if (marker - 2 < wardens.size()) {
+                warden = wardens.get((int) (marker - 2));
+            } else {
+                throw new InvalidObjectException("Unknown warden reference: " + marker);
+            }
+            int count = readLength(in);
+            List<String> names = new ArrayList<>(Math.min(count, 64));
+            for (int i = 0; i < count; i++) {
+                names.add(readString());
+            }
+            return new RoomInfo(roomNumber, names, warden, version);
+        }
+
+        List<RoomInfo> readRooms() throws IOException {
+            int size = readLength(in);
+            if (size == 0) {
+                return null;
+            }
+            List<RoomInfo> rooms = new ArrayList<>(Math.min(size - 1, 1024));
+            for (int i = 1; i < size; i++) {
+                rooms.add(in.readBoolean() ? readRoom() : null);
+            }
+            return Collections.unmodifiableList(rooms);
+        }
+
+        private String readString() throws IOException {
+            int length = readLength(in);
+            if (length == 0) {
+                return null;
+            }
+            length--;
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    /**
+     * Unsigned LEB128: 7 bits per byte, high bit set on all but the last
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new InvalidObjectException("Malformed varint");
+    }
+
+    private static int readLength(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new InvalidObjectException("Bad length: " + length);
+        }
+        return (int) length;
+    }
+}
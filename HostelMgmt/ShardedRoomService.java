@@ -0,0 +1,408 @@
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side RoomService over rooms split across several servers
+ * Calls about one room go straight to the shard that holds it, as decided
+ * by the RoomPartitioner. Calls about many rooms are sent to every shard in
+ * parallel and the sorted answers are merged, so callers see one hostel.
+ *
+ * Paging: each shard's rooms are sorted, so a page is a merge of the next
+ * rooms of every shard. Each shard is first asked for an even share of the
+ * page, and only a shard whose share runs out early is asked for more. The
+ * shard positions where a page ended are kept together with the shards'
+ * versions, and only reused while no shard has changed since; reading
+ * pages in order of an unchanging hostel then costs two small calls per
+ * shard per page.
+ *
+ * Versions: every shard numbers its own changes. getRoomsChangedSince
+ * therefore returns a token standing for the current version of every
+ * shard; passing the token back asks each shard for its own changes.
+ * The shards' rooms are taken in turn until the limit is reached, and a
+ * shard that was cut short is resumed just before its first room left out.
+ * Tokens are only understood by the instance that issued them; an unknown
+ * token gets an incomplete answer, which tells a cache to start over.
+ */
+public class ShardedRoomService implements RoomService {
+
+    // How many page positions and version tokens are remembered
+    private static final int MAX_REMEMBERED = 64;
+
+    /**
+     * A call sent to one shard
+     */
+    private interface ShardCall<T> {
+        T call(RoomService shard, int index) throws RemoteException;
+    }
+
+    private static final Comparator<RoomInfo> BY_ROOM_NUMBER = Comparator.comparing(RoomInfo::getRoomNumber);
+
+    private final RoomPartitioner partitioner;
+    private final List<RoomService> shards;
+    private final ExecutorService executor;
+
+    /**
+     * Where each shard's part of the page at a global offset starts, valid
+     * while the shards are at these versions
+     */
+    private static final class PageStart {
+        final long[] versions;
+        final int[] starts;
+
+        PageStart(long[] versions, int[] starts) {
+            this.versions = versions;
+            this.starts = starts;
+        }
+    }
+
+    // Page starts by global offset
+    private final Map<Integer, PageStart> pageStarts = lru();
+    // Per-shard versions behind each token handed out
+    private final Map<Long, long[]> versionTokens = lru();
+    private final AtomicLong lastToken = new AtomicLong();
+
+    /**
+     * @param shards one RoomService per shard, in shard order
+     */
+    public ShardedRoomService(RoomPartitioner partitioner, List<RoomService> shards) {
+        if (shards.size() != partitioner.getShardCount()) {
+            throw new IllegalArgumentException("Expected " + partitioner.getShardCount()
+                + " shards, got " + shards.size());
+        }
+        this.partitioner = partitioner;
+        this.shards = new ArrayList<>(shards);
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "room-shard-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Look up every shard ("host:port", in shard order) in its registry
+     */
+    public static ShardedRoomService connect(RoomPartitioner partitioner, Collection<String> shardAddresses)
+            throws RemoteException, NotBoundException {
+        List<RoomService> shards = new ArrayList<>();
+        for (String address : shardAddresses) {
+            shards.add(ReplicatedRoomService.lookup(address));
+        }
+        return new ShardedRoomService(partitioner, shards);
+    }
+
+    private RoomService shardOf(String roomNumber) {
+        return shards.get(partitioner.shardFor(roomNumber));
+    }
+
+    @Override
+    public RoomInfo getRoomInfo(String roomNumber) throws RemoteException {
+        return shardOf(roomNumber).getRoomInfo(roomNumber);
+    }
+
+    @Override
+    public List<String> getAllRoomNumbers() throws RemoteException {
+        List<List<String>> perShard = fanOut((shard, i) -> shard.getAllRoomNumbers());
+        return Collections.unmodifiableList(
+            merge(perShard, Comparator.naturalOrder(), Integer.MAX_VALUE, new int[shards.size()]));
+    }
+
+    @Override
+    public List<RoomInfo> getRoomInfos(Collection<String> roomNumbers) throws RemoteException {
+        // Ask each shard only for its own rooms, then put the answers back in request order
+        List<String> requested = new ArrayList<>(roomNumbers);
+        List<List<String>> wanted = new ArrayList<>();
+        List<List<Integer>> positions = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            wanted.add(new ArrayList<>());
+            positions.add(new ArrayList<>());
+        }
+        for (int i = 0; i < requested.size(); i++) {
+            int shard = partitioner.shardFor(requested.get(i));
+            wanted.get(shard).add(requested.get(i));
+            positions.get(shard).add(i);
+        }
+        List<List<RoomInfo>> found = fanOut((shard, i) ->
+            wanted.get(i).isEmpty() ? Collections.<RoomInfo>emptyList() : shard.getRoomInfos(wanted.get(i)));
+        RoomInfo[] result = new RoomInfo[requested.size()];
+        for (int shard = 0; shard < shards.size(); shard++) {
+            for (int j = 0; j < positions.get(shard).size(); j++) {
+                result[positions.get(shard).get(j)] = found.get(shard).get(j);
+            }
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    @Override
+    public RoomPage getAllRooms(int offset, int limit) throws RemoteException {
+        if (offset < 0 || limit < 0) {
+            throw new RemoteException("Offset and limit must not be negative.");
+        }
+        long[] versions = shardVersions();
+        int[] starts = pageStarts(offset, versions);
+        int share = (limit + shards.size() - 1) / shards.size();
+        List<RoomPage> pages = fanOut((shard, i) -> shard.getAllRooms(starts[i], share));
+        int total = 0;
+        int[] totals = new int[shards.size()];
+        List<List<RoomInfo>> perShard = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            totals[i] = pages.get(i).getTotalRooms();
+            total += totals[i];
+            perShard.add(new ArrayList<>(pages.get(i).getRooms()));
+        }
+        int[] used = new int[shards.size()];
+        List<RoomInfo> rooms = new ArrayList<>();
+        int ranOut;
+        while ((ranOut = mergePage(perShard, starts, totals, limit, used, rooms)) >= 0) {
+            int from = starts[ranOut] + perShard.get(ranOut).size();
+            List<RoomInfo> more = shards.get(ranOut).getAllRooms(from, limit - rooms.size()).getRooms();
+            if (more.isEmpty()) {
+                totals[ranOut] = from; // rooms were removed meanwhile
+            }
+            perShard.get(ranOut).addAll(more);
+        }
+        int[] next = new int[shards.size()];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = starts[i] + used[i];
+        }
+        synchronized (pageStarts) {
+            pageStarts.put(offset + rooms.size(), new PageStart(versions, next));
+        }
+        return new RoomPage(rooms, Math.min(offset, total), total);
+    }
+
+    /**
+     * @return where each shard's part of the page at this global offset
+     *         starts, while the shards are at these versions
+     */
+    private int[] pageStarts(int offset, long[] versions) throws RemoteException {
+        if (offset == 0) {
+            return new int[shards.size()];
+        }
+        synchronized (pageStarts) {
+            PageStart known = pageStarts.get(offset);
+            if (known != null && Arrays.equals(known.versions, versions)) {
+                return known.starts;
+            }
+        }
+        // Not reached by paging in order, or rooms changed since: count
+        // which shard the first offset room numbers came from
+        List<List<String>> perShard = fanOut((shard, i) -> shard.getAllRoomNumbers());
+        int[] starts = new int[shards.size()];
+        merge(perShard, Comparator.naturalOrder(), offset, starts);
+        return starts;
+    }
+
+    /**
+     * @return the current version of every shard, in shard order
+     */
+    private long[] shardVersions() throws RemoteException {
+        List<Long> versions = fanOut((shard, i) -> shard.getRoomsChangedSince(Long.MAX_VALUE, 0).getCurrentVersion());
+        long[] result = new long[versions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = versions.get(i);
+        }
+        return result;
+    }
+
+    @Override
+    public RoomChanges getRoomsChangedSince(long version, int limit) throws RemoteException {
+        long[] since;
+        if (version == 0 || version == Long.MAX_VALUE) {
+            since = new long[shards.size()];
+            Arrays.fill(since, version);
+        } else {
+            synchronized (versionTokens) {
+                since = versionTokens.get(version);
+            }
+        }
+        if (since == null) {
+            // Unknown token: report everything as possibly changed
+            RoomChanges current = getRoomsChangedSince(Long.MAX_VALUE, 0);
+            return new RoomChanges(new ArrayList<>(), current.getCurrentVersion(), false);
+        }
+        long[] from = since;
+        List<RoomChanges> answers = fanOut((shard, i) -> shard.getRoomsChangedSince(from[i], limit));
+        // Take the shards' rooms in turn, so a busy shard cannot crowd out the others
+        int[] taken = new int[answers.size()];
+        int total = 0;
+        boolean more = true;
+        while (more && total < limit) {
+            more = false;
+            for (int i = 0; i < answers.size() && total < limit; i++) {
+                if (taken[i] < answers.get(i).getRooms().size()) {
+                    taken[i]++;
+                    total++;
+                    more = true;
+                }
+            }
+        }
+        List<RoomInfo> rooms = new ArrayList<>(total);
+        long[] reached = new long[shards.size()];
+        boolean complete = true;
+        for (int i = 0; i < answers.size(); i++) {
+            RoomChanges answer = answers.get(i);
+            List<RoomInfo> shardRooms = answer.getRooms();
+            rooms.addAll(shardRooms.subList(0, taken[i]));
+            reached[i] = answer.getCurrentVersion();
+            complete &= answer.isComplete();
+            if (taken[i] < shardRooms.size()) {
+                // Resume below every room left out, so asking again returns them
+                for (RoomInfo left : shardRooms.subList(taken[i], shardRooms.size())) {
+                    reached[i] = Math.min(reached[i], left.getVersion() - 1);
+                }
+                reached[i] = Math.max(from[i], reached[i]);
+                complete = false;
+            }
+        }
+        long token = lastToken.incrementAndGet();
+        synchronized (versionTokens) {
+            versionTokens.put(token, reached);
+        }
+        return new RoomChanges(rooms, token, complete);
+    }
+
+    @Override
+    public List<RoomInfo> findRoomsByOccupant(String namePrefix, int limit) throws RemoteException {
+        List<List<RoomInfo>> perShard = fanOut((shard, i) -> shard.findRoomsByOccupant(namePrefix, limit));
+        // Each shard returns rooms ordered by the matching name; keep that order overall
+        Comparator<RoomInfo> byMatchingName = Comparator
+            .comparing((RoomInfo info) -> RoomIndex.firstOccupantWithPrefix(info, namePrefix),
+                Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(BY_ROOM_NUMBER);
+        return merge(perShard, byMatchingName, limit, new int[shards.size()]);
+    }
+
+    @Override
+    public List<RoomInfo> findRoomsByWarden(String wardenContact) throws RemoteException {
+        List<List<RoomInfo>> perShard = fanOut((shard, i) -> shard.findRoomsByWarden(wardenContact));
+        return merge(perShard, BY_ROOM_NUMBER, Integer.MAX_VALUE, new int[shards.size()]);
+    }
+
+    @Override
+    public RoomInfo allocateRoom(String roomNumber, String occupantName) throws RemoteException {
+        return shardOf(roomNumber).allocateRoom(roomNumber, occupantName);
+    }
+
+    @Override
+    public RoomInfo vacateRoom(String roomNumber, String occupantName) throws RemoteException {
+        return shardOf(roomNumber).vacateRoom(roomNumber, occupantName);
+    }
+
+    @Override
+    public RoomInfo upsertRoom(RoomInfo info) throws RemoteException {
+        if (info == null) {
+            throw new RemoteException("Room info must not be null.");
+        }
+        return shardOf(info.getRoomNumber()).upsertRoom(info);
+    }
+
+    /**
+     * Run the call on every shard at once
+     * @return the answers in shard order
+     * @throws RemoteException the first failure, if any shard failed
+     */
+    private <T> List<T> fanOut(ShardCall<T> call) throws RemoteException {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return call.call(shards.get(index), index);
+                } catch (RemoteException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RemoteException) {
+                    throw (RemoteException) cause;
+                }
+                throw new RemoteException("Shard call failed: " + cause, cause);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merge sorted lists, taking at most limit elements
+     * @param used receives how many elements were taken from each list
+     */
+    private static <T> List<T> merge(List<? extends List<T>> lists, Comparator<? super T> order,
+                                     int limit, int[] used) {
+        List<T> merged = new ArrayList<>();
+        while (merged.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < lists.size(); i++) {
+                if (used[i] < lists.get(i).size() && (best < 0
+                        || order.compare(lists.get(i).get(used[i]), lists.get(best).get(used[best])) < 0)) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            merged.add(lists.get(best).get(used[best]++));
+        }
+        return merged;
+    }
+
+    /**
+     * Merge the rooms fetched from each shard into page, up to limit rooms
+     * @param starts position in each shard of its first fetched room
+     * @param totals number of rooms in each shard
+     * @param used receives how many rooms were taken from each shard
+     * @return a shard whose fetched rooms ran out although it has more, so
+     *         its next room may belong on the page; -1 once the page is done
+     */
+    private static int mergePage(List<List<RoomInfo>> perShard, int[] starts, int[] totals,
+                                 int limit, int[] used, List<RoomInfo> page) {
+        while (page.size() < limit) {
+            int best = -1;
+            for (int i = 0; i < perShard.size(); i++) {
+                List<RoomInfo> fetched = perShard.get(i);
+                if (used[i] == fetched.size()) {
+                    if (starts[i] + used[i] < totals[i]) {
+                        return i;
+                    }
+                } else if (best < 0 || BY_ROOM_NUMBER.compare(fetched.get(used[i]),
+                        perShard.get(best).get(used[best])) < 0) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            page.add(perShard.get(best).get(used[best]++));
+        }
+        return -1;
+    }
+
+    private static <K, V> Map<K, V> lru() {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_REMEMBERED;
+            }
+        };
+    }
+}